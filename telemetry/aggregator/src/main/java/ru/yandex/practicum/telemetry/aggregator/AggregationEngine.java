@@ -0,0 +1,12 @@
+package ru.yandex.practicum.telemetry.aggregator;
+
+/**
+ * Движок агрегации событий датчиков в снапшоты хабов. Выбирается настройкой aggregator.engine.
+ */
+public interface AggregationEngine {
+
+    /**
+     * Запускает агрегацию и блокирует вызывающий поток до остановки.
+     */
+    void start();
+}
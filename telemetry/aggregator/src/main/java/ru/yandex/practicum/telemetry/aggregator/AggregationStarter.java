@@ -1,81 +1,412 @@
 package ru.yandex.practicum.telemetry.aggregator;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.WakeupException;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
+import ru.practicum.kafka.consumer.PriorityLanes;
+import ru.practicum.kafka.serializer.header.EventHeaders;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
 import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
 import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.telemetry.aggregator.config.AggregatorProperties;
 import ru.yandex.practicum.telemetry.aggregator.kafka.KafkaClient;
+import ru.yandex.practicum.telemetry.aggregator.kafka.OffsetTracker;
+import ru.yandex.practicum.telemetry.aggregator.service.DeviceLifecycleService;
+import ru.yandex.practicum.telemetry.aggregator.service.EventReorderBuffer;
+import ru.yandex.practicum.telemetry.aggregator.service.SnapshotCoalescer;
+import ru.yandex.practicum.telemetry.aggregator.service.SensorTypes;
 import ru.yandex.practicum.telemetry.aggregator.service.SnapshotService;
+import ru.yandex.practicum.telemetry.aggregator.service.SnapshotVersions;
 
 import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
-public class AggregationStarter {
+@ConditionalOnProperty(name = "aggregator.engine", havingValue = "loop", matchIfMissing = true)
+public class AggregationStarter implements AggregationEngine {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
 
     @Value("${aggregator.topics.sensors-events}")
     private String sensorsEventsTopic;
 
+    @Value("${aggregator.topics.hubs-events}")
+    private String hubsEventsTopic;
+
     @Value("${aggregator.topics.snapshots-events}")
     private String snapshotsEventsTopic;
 
+    @Value("${aggregator.topics.sensors-fast-events:}")
+    private String sensorsFastEventsTopic;
+
+    @Value("${aggregator.topics.snapshots-fast-events:}")
+    private String snapshotsFastEventsTopic;
+
     private final KafkaClient kafkaClient;
     private final SnapshotService snapshotService;
+    private final SnapshotCoalescer snapshotCoalescer;
+    private final EventReorderBuffer reorderBuffer;
+    private final DeviceLifecycleService deviceLifecycleService;
+    private final AggregatorProperties aggregatorProperties;
+    private final MeterRegistry meterRegistry;
 
+    @Override
     public void start() {
         Producer<String, SpecificRecordBase> producer = kafkaClient.getProducer();
         Consumer<String, SpecificRecordBase> consumer = kafkaClient.getConsumer();
+        Consumer<String, HubEventAvro> hubConsumer = kafkaClient.getHubConsumer();
+        OffsetTracker offsetTracker = new OffsetTracker();
+        Duration pollTimeout = pollTimeout();
+        PriorityLanes lanes = priorityLanes();
+        Timer fastLaneLatency = laneLatency(PriorityLanes.FAST);
+        Timer slowLaneLatency = laneLatency(PriorityLanes.SLOW);
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             log.info("Shutdown hook - waking up consumer");
             consumer.wakeup();
+            hubConsumer.wakeup();
         }));
 
         try {
-            consumer.subscribe(List.of(sensorsEventsTopic));
+            boolean hubEventsAssigned = catchUpHubEvents(hubConsumer);
+            consumer.subscribe(lanes == null
+                    ? List.of(sensorsEventsTopic)
+                    : List.of(sensorsFastEventsTopic, sensorsEventsTopic),
+                    new ConsumerRebalanceListener() {
+                        // Номера партиций, отозванных в текущем ребалансе
+                        private final Set<Integer> revoked = new HashSet<>();
+
+                        @Override
+                        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                            // Отложенные события и снапшоты партиций публикуются до передачи партиций,
+                            // иначе их offset'ы закоммитит новый владелец без учёта этих обновлений
+                            long now = System.currentTimeMillis();
+                            applyBuffered(producer, offsetTracker, reorderBuffer.drainPartitions(partitions), now);
+                            publishPending(producer, offsetTracker, snapshotCoalescer.drainPartitions(partitions));
+                            try {
+                                producer.flush();
+                                consumer.commitSync(offsetTracker.committable(partitions));
+                            } catch (Exception e) {
+                                log.warn("Failed to commit offsets of revoked partitions {}", partitions, e);
+                            }
+                            offsetTracker.remove(partitions);
+                            if (lanes != null) {
+                                lanes.onPartitionsRevoked(partitions);
+                            }
+                            revoked.addAll(partitionNumbers(partitions));
+                        }
+
+                        @Override
+                        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                            // Партиция, отозванная и назначенная снова в том же ребалансе, всё время была нашей.
+                            // Ушедшая — больше не нужна, а новая могла обрабатываться другим экземпляром,
+                            // и наше состояние её хабов (в памяти или в холодном хранилище) устарело
+                            Set<Integer> assigned = partitionNumbers(partitions);
+                            Set<Integer> stale = new HashSet<>(revoked);
+                            stale.removeAll(assigned);
+                            for (Integer partition : assigned) {
+                                if (!revoked.contains(partition)) {
+                                    stale.add(partition);
+                                }
+                            }
+                            revoked.clear();
+                            if (!stale.isEmpty()) {
+                                snapshotService.dropPartitions(stale);
+                            }
+                        }
+
+                        @Override
+                        public void onPartitionsLost(Collection<TopicPartition> partitions) {
+                            // Партиции уже у другого владельца: он прочитает их события заново.
+                            // Отложенные снапшоты публикуются — их обновления уже в состоянии хаба
+                            reorderBuffer.drainPartitions(partitions);
+                            publishPending(producer, offsetTracker, snapshotCoalescer.drainPartitions(partitions));
+                            offsetTracker.remove(partitions);
+                            if (lanes != null) {
+                                lanes.onPartitionsRevoked(partitions);
+                            }
+                            snapshotService.dropPartitions(partitionNumbers(partitions));
+                        }
+                    });
 
             while (true) {
-                ConsumerRecords<String, SpecificRecordBase> records = consumer.poll(Duration.ofMillis(100));
+                ConsumerRecords<String, SpecificRecordBase> records = consumer.poll(pollTimeout);
+                if (hubEventsAssigned) {
+                    applyHubEvents(producer, offsetTracker, hubConsumer.poll(Duration.ZERO));
+                }
+                long now = System.currentTimeMillis();
+
+                Iterable<ConsumerRecord<String, SpecificRecordBase>> ordered = records;
+                if (lanes != null) {
+                    ordered = lanes.ordered(records);
+                    lanes.afterPoll(consumer, records, now);
+                }
 
-                for (ConsumerRecord<String, SpecificRecordBase> record : records) {
+                for (ConsumerRecord<String, SpecificRecordBase> record : ordered) {
+                    TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                    offsetTracker.consumed(partition, record.offset());
+                    // Задержка от времени события до начала его обработки
+                    Timer latency = lanes != null && PriorityLanes.FAST.equals(lanes.laneOf(record.topic()))
+                            ? fastLaneLatency
+                            : slowLaneLatency;
+                    latency.record(Math.max(0, now - record.timestamp()), TimeUnit.MILLISECONDS);
                     try {
                         SensorEventAvro event = (SensorEventAvro) record.value();
-                        Optional<SensorsSnapshotAvro> updatedSnapshot = snapshotService.updateState(event);
-
-                        if (updatedSnapshot.isPresent()) {
-                            SensorsSnapshotAvro snapshot = updatedSnapshot.get();
-                            producer.send(new ProducerRecord<>(
-                                    snapshotsEventsTopic,
-                                    snapshot.getHubId(),
-                                    snapshot
-                            ));
+                        if (!deviceLifecycleService.isAccepted(event)) {
+                            continue;
+                        }
+                        if (reorderBuffer.offer(event, partition, record.offset(), now)) {
+                            offsetTracker.hold(partition, record.offset());
+                        } else {
+                            applyEvent(producer, offsetTracker, event, partition, record.offset(), now);
                         }
                     } catch (ClassCastException e) {
                         log.warn("Invalid message type, skipping");
+                    } catch (RuntimeException e) {
+                        // Событие, которое нельзя применить (неизвестный тип датчика, не помещается в хранилище),
+                        // пропускается: его offset не удерживается и будет закоммичен вместе с соседними
+                        log.error("Failed to apply sensor event at {}:{}, skipping", partition, record.offset(), e);
                     }
                 }
 
-                consumer.commitAsync();
+                applyBuffered(producer, offsetTracker, reorderBuffer.drainReady(now), now);
+                publishPending(producer, offsetTracker, snapshotCoalescer.drainDue(now));
+                snapshotService.evictIdle(now);
+
+                // Коммитим только offset'ы событий, уже попавших в опубликованный снапшот
+                consumer.commitAsync(offsetTracker.committable(), (offsets, exception) -> {
+                    if (exception != null) {
+                        log.warn("Failed to commit offsets {}", offsets, exception);
+                    }
+                });
             }
         } catch (WakeupException e) {
             log.info("WakeupException - shutting down");
         } catch (Exception e) {
             log.error("Error in aggregation loop", e);
         } finally {
+            applyBuffered(producer, offsetTracker, reorderBuffer.drainAll(), System.currentTimeMillis());
+            publishPending(producer, offsetTracker, snapshotCoalescer.drainAll());
             kafkaClient.close();
             log.info("Aggregator stopped");
         }
     }
+
+    /**
+     * Читает топик событий хабов с начала до текущего конца, восстанавливая состав устройств
+     * до обработки событий датчиков. Возвращает false, если топик недоступен.
+     * <p>
+     * Топик не компактируется: при каждом старте он читается целиком (не дольше catch-up-timeout),
+     * а события, удалённые по retention, потеряны. С enforce-registration это значит, что датчики,
+     * добавленные раньше начала топика, будут считаться незарегистрированными, — об этом пишется в лог.
+     */
+    private boolean catchUpHubEvents(Consumer<String, HubEventAvro> hubConsumer) {
+        List<TopicPartition> partitions = hubConsumer.partitionsFor(hubsEventsTopic).stream()
+                .map(info -> new TopicPartition(info.topic(), info.partition()))
+                .toList();
+        if (partitions.isEmpty()) {
+            log.warn("Topic {} has no partitions, device lifecycle events are ignored", hubsEventsTopic);
+            return false;
+        }
+
+        hubConsumer.assign(partitions);
+        hubConsumer.seekToBeginning(partitions);
+        Map<TopicPartition, Long> endOffsets = hubConsumer.endOffsets(partitions);
+        boolean enforceRegistration = aggregatorProperties.getDevices().isEnforceRegistration();
+        if (enforceRegistration) {
+            warnIfTruncated(hubConsumer.beginningOffsets(partitions));
+        }
+        long deadline = System.currentTimeMillis() + aggregatorProperties.getDevices().getCatchUpTimeout().toMillis();
+
+        while (!isCaughtUp(hubConsumer, endOffsets)) {
+            if (System.currentTimeMillis() >= deadline) {
+                if (enforceRegistration) {
+                    log.error("Hub events catch-up timed out after {}: devices registered in the unread part of {} "
+                                    + "are unknown, and their sensor events will be dropped until they are re-added",
+                            aggregatorProperties.getDevices().getCatchUpTimeout(), hubsEventsTopic);
+                } else {
+                    log.warn("Hub events catch-up timed out, continuing with partial device state");
+                }
+                return true;
+            }
+            // При вычитке снапшоты не публикуются: удаления из истории топика analyzer уже видел
+            for (ConsumerRecord<String, HubEventAvro> record : hubConsumer.poll(POLL_TIMEOUT)) {
+                deviceLifecycleService.apply(record.value());
+            }
+        }
+        log.info("Caught up with hub events in {}", hubsEventsTopic);
+        return true;
+    }
+
+    private void warnIfTruncated(Map<TopicPartition, Long> beginningOffsets) {
+        List<TopicPartition> truncated = beginningOffsets.entrySet().stream()
+                .filter(beginning -> beginning.getValue() > 0)
+                .map(Map.Entry::getKey)
+                .toList();
+        if (!truncated.isEmpty()) {
+            log.error("Partitions {} of {} no longer start at offset 0: hub events older than the retention period "
+                            + "are gone. Devices added before that are unknown, and with enforce-registration "
+                            + "their sensor events will be dropped until the devices are re-added",
+                    truncated, hubsEventsTopic);
+        }
+    }
+
+    private boolean isCaughtUp(Consumer<String, HubEventAvro> hubConsumer, Map<TopicPartition, Long> endOffsets) {
+        for (Map.Entry<TopicPartition, Long> endOffset : endOffsets.entrySet()) {
+            if (hubConsumer.position(endOffset.getKey()) < endOffset.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Применяет новые события хабов и публикует снапшоты хабов, из которых удалён датчик.
+     * Отложенный снапшот такого хаба ещё содержит датчик, поэтому он заменяется новым.
+     */
+    private void applyHubEvents(Producer<String, SpecificRecordBase> producer,
+                                OffsetTracker offsetTracker,
+                                ConsumerRecords<String, HubEventAvro> records) {
+        for (ConsumerRecord<String, HubEventAvro> record : records) {
+            deviceLifecycleService.apply(record.value()).ifPresent(snapshot -> {
+                snapshotCoalescer.discard(snapshot.getHubId())
+                        .forEach(source -> offsetTracker.release(source.partition(), source.offset()));
+                publish(producer, snapshot, false);
+            });
+        }
+    }
+
+    /**
+     * Обновляет состояние хаба событием и публикует снапшот сразу либо откладывает его в окно схлопывания.
+     * Возвращает true, если offset события теперь удерживается отложенным снапшотом.
+     */
+    private boolean applyEvent(Producer<String, SpecificRecordBase> producer,
+                               OffsetTracker offsetTracker,
+                               SensorEventAvro event,
+                               TopicPartition partition,
+                               long offset,
+                               long now) {
+        Optional<SensorsSnapshotAvro> updatedSnapshot = snapshotService.updateState(event, partition.partition());
+        if (updatedSnapshot.isEmpty()) {
+            return false;
+        }
+
+        SensorsSnapshotAvro snapshot = updatedSnapshot.get();
+        if (snapshotCoalescer.isImmediate(event.getPayload())) {
+            // Снапшот уже содержит отложенные обновления хаба — отдельно их не публикуем
+            snapshotCoalescer.discard(snapshot.getHubId())
+                    .forEach(source -> offsetTracker.release(source.partition(), source.offset()));
+            publish(producer, snapshot, isFastLane(event));
+            return false;
+        }
+        offsetTracker.hold(partition, offset);
+        snapshotCoalescer.offer(snapshot, partition, offset, now);
+        return true;
+    }
+
+    private void applyBuffered(Producer<String, SpecificRecordBase> producer,
+                               OffsetTracker offsetTracker,
+                               List<EventReorderBuffer.BufferedEvent> events,
+                               long now) {
+        for (EventReorderBuffer.BufferedEvent buffered : events) {
+            boolean held = false;
+            try {
+                held = applyEvent(producer, offsetTracker, buffered.event(), buffered.partition(), buffered.offset(), now);
+            } catch (RuntimeException e) {
+                log.error("Failed to apply sensor event at {}:{}, skipping",
+                        buffered.partition(), buffered.offset(), e);
+            }
+            if (!held) {
+                offsetTracker.release(buffered.partition(), buffered.offset());
+            }
+        }
+    }
+
+    /**
+     * Номера партиций без топика: с полосами у хаба одинаковый номер партиции в обоих топиках событий.
+     */
+    private static Set<Integer> partitionNumbers(Collection<TopicPartition> partitions) {
+        Set<Integer> numbers = new HashSet<>();
+        for (TopicPartition partition : partitions) {
+            numbers.add(partition.partition());
+        }
+        return numbers;
+    }
+
+    private Duration pollTimeout() {
+        AggregatorProperties.Coalescing coalescing = aggregatorProperties.getCoalescing();
+        if (!coalescing.isEnabled() || coalescing.getWindow().compareTo(POLL_TIMEOUT) >= 0) {
+            return POLL_TIMEOUT;
+        }
+        // Окно короче таймаута poll — иначе снапшоты будут задерживаться дольше окна
+        return coalescing.getWindow();
+    }
+
+    private void publishPending(Producer<String, SpecificRecordBase> producer,
+                                OffsetTracker offsetTracker,
+                                List<SnapshotCoalescer.Pending> pendingSnapshots) {
+        for (SnapshotCoalescer.Pending pending : pendingSnapshots) {
+            publish(producer, pending.getSnapshot(), false);
+            pending.getOffsets().forEach(source -> offsetTracker.release(source.partition(), source.offset()));
+        }
+    }
+
+    /**
+     * Публикует снапшот с версией в заголовке. Снапшоты одного хаба могут идти двумя топиками,
+     * и по версии analyzer отбрасывает снапшот, опубликованный раньше уже обработанного.
+     */
+    private void publish(Producer<String, SpecificRecordBase> producer, SensorsSnapshotAvro snapshot, boolean fastLane) {
+        producer.send(new ProducerRecord<>(
+                fastLane ? snapshotsFastEventsTopic : snapshotsEventsTopic,
+                null,
+                snapshot.getHubId(),
+                snapshot,
+                EventHeaders.ofSnapshotVersion(SnapshotVersions.of(snapshot))
+        ));
+    }
+
+    private boolean isFastLane(SensorEventAvro event) {
+        AggregatorProperties.Lanes properties = aggregatorProperties.getLanes();
+        return properties.isEnabled() && properties.getFastTypes().contains(SensorTypes.of(event.getPayload()));
+    }
+
+    private PriorityLanes priorityLanes() {
+        AggregatorProperties.Lanes properties = aggregatorProperties.getLanes();
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        if (sensorsFastEventsTopic.isBlank() || snapshotsFastEventsTopic.isBlank()) {
+            throw new IllegalStateException("Priority lanes need aggregator.topics.sensors-fast-events and snapshots-fast-events");
+        }
+        return new PriorityLanes(sensorsFastEventsTopic, properties.getMaxSlowPause());
+    }
+
+    private Timer laneLatency(String lane) {
+        return Timer.builder("aggregator.lane.latency")
+                .description("Delay from sensor event time to the start of its aggregation")
+                .tag("lane", lane)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
 }
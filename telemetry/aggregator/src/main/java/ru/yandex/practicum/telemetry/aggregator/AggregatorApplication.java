@@ -17,7 +17,7 @@ public class AggregatorApplication {
             ConfigurableApplicationContext context = SpringApplication.run(AggregatorApplication.class, args);
             log.info("Spring context started successfully");
 
-            AggregationStarter aggregator = context.getBean(AggregationStarter.class);
+            AggregationEngine aggregator = context.getBean(AggregationEngine.class);
             log.info("Starting aggregation service...");
             aggregator.start();
 
@@ -3,6 +3,14 @@ package ru.yandex.practicum.telemetry.aggregator.config;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceTypeAvro;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
 
 @Getter
 @Setter
@@ -11,5 +19,102 @@ public class AggregatorProperties {
     private String inputTopic = "telemetry.sensors.v1";
     private String outputTopic = "telemetry.snapshots.v1";
     private String groupId = "aggregator-group";
-}
 
+    // Движок агрегации: loop — собственный цикл poll, streams — топология Kafka Streams
+    private String engine = "loop";
+
+    private Coalescing coalescing = new Coalescing();
+    private Deadband deadband = new Deadband();
+    private Reordering reordering = new Reordering();
+    private State state = new State();
+    private Devices devices = new Devices();
+    private Streams streams = new Streams();
+    private Lanes lanes = new Lanes();
+
+    @Getter
+    @Setter
+    public static class Coalescing {
+        // Объединять обновления хаба в один снапшот в пределах окна
+        private boolean enabled = false;
+        // Снапшот публикуется, если за это время у хаба не было новых обновлений
+        private Duration window = Duration.ofMillis(50);
+        // Максимальная задержка публикации с момента первого необъединённого обновления
+        private Duration maxDelay = Duration.ofMillis(200);
+        // Типы датчиков, обновления которых публикуются сразу, минуя окно
+        private Set<DeviceTypeAvro> immediateTypes = EnumSet.of(DeviceTypeAvro.MOTION_SENSOR, DeviceTypeAvro.SWITCH_SENSOR);
+    }
+
+    @Getter
+    @Setter
+    public static class Deadband {
+        // Отбрасывать обновления, изменения в которых не превышают порогов
+        private boolean enabled = false;
+        // Минимальное значимое изменение числового поля: тип датчика -> поле -> порог
+        private Map<DeviceTypeAvro, Map<String, Integer>> thresholds = new EnumMap<>(DeviceTypeAvro.class);
+        // Поля, изменения которых не влияют на сценарии и не публикуются
+        private Map<DeviceTypeAvro, Set<String>> ignoredFields = new EnumMap<>(DeviceTypeAvro.class);
+    }
+
+    @Getter
+    @Setter
+    public static class Reordering {
+        // Применять события хаба в порядке их времени, а не в порядке чтения
+        private boolean enabled = false;
+        // На сколько watermark хаба отстаёт от максимального увиденного времени события
+        private Duration allowedLateness = Duration.ofMillis(500);
+        // Через сколько без новых событий буфер хаба сбрасывается целиком
+        private Duration idleFlush = Duration.ofSeconds(1);
+        // Максимум событий в буфере одного хаба; при переполнении раньше выпускаются самые старые
+        private int maxBufferedPerHub = 1000;
+    }
+
+    @Getter
+    @Setter
+    public static class State {
+        // Хаб без событий дольше этого времени выгружается в холодное хранилище
+        private Duration idleTtl = Duration.ofMinutes(30);
+        // Максимум хабов в памяти; при превышении выгружаются давно не обновлявшиеся
+        private int maxResidentHubs = 100_000;
+        // Как часто искать простаивающие хабы
+        private Duration sweepInterval = Duration.ofSeconds(30);
+        // Каталог холодного хранилища снапшотов
+        private Path coldDirectory = Path.of(System.getProperty("java.io.tmpdir"), "aggregator-cold-state");
+        // Где держать состояния датчиков: heap или off-heap
+        private String store = "heap";
+        // Число слотов в одном off-heap слабе, степень двойки
+        private int offHeapSlabSlots = 65_536;
+    }
+
+    @Getter
+    @Setter
+    public static class Devices {
+        // Отбрасывать события датчиков, не зарегистрированных событием DeviceAdded своего хаба
+        private boolean enforceRegistration = false;
+        // Сколько ждать вычитки событий хабов при старте
+        private Duration catchUpTimeout = Duration.ofSeconds(30);
+    }
+
+    @Getter
+    @Setter
+    public static class Streams {
+        private String applicationId = "aggregator-streams";
+        // Каталог локальных хранилищ RocksDB
+        private Path stateDir = Path.of(System.getProperty("java.io.tmpdir"), "aggregator-streams");
+        private int numStreamThreads = 1;
+        // Резервные копии хранилища на других экземплярах для быстрого переключения
+        private int numStandbyReplicas = 1;
+        private Duration commitInterval = Duration.ofMillis(100);
+        private String processingGuarantee = "at_least_once";
+    }
+
+    @Getter
+    @Setter
+    public static class Lanes {
+        // Читать события быстрых типов из отдельного топика раньше остальных и публиковать их снапшоты в отдельный топик
+        private boolean enabled = false;
+        // Типы датчиков быстрой полосы: от них зависят сценарии, заметные пользователю
+        private Set<DeviceTypeAvro> fastTypes = EnumSet.of(DeviceTypeAvro.MOTION_SENSOR, DeviceTypeAvro.SWITCH_SENSOR);
+        // Дольше этого медленная полоса не простаивает, даже если быстрая не успевает опустеть
+        private Duration maxSlowPause = Duration.ofSeconds(1);
+    }
+}
@@ -5,15 +5,19 @@ import lombok.Setter;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import ru.practicum.kafka.serializer.deserializer.BaseAvroDeserializer;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
 
 import java.util.Properties;
 
 @Getter
 @Setter
 @Configuration
+@ConditionalOnProperty(name = "aggregator.engine", havingValue = "loop", matchIfMissing = true)
 @ConfigurationProperties("aggregator.kafka.consumer")
 public class AggregatorConsumerConfig {
 
@@ -23,6 +27,11 @@ public class AggregatorConsumerConfig {
     private boolean enableAutoCommit = false;
     private String keyDeserializer = "org.apache.kafka.common.serialization.StringDeserializer";
     private String valueDeserializer = "ru.yandex.practicum.telemetry.aggregator.deserializer.SensorEventDeserializer";
+    private String hubEventDeserializer = "ru.practicum.kafka.serializer.deserializer.HubEventDeserializer";
+    // Агрегатору нужны только события состава устройств, остальные отбрасываются по заголовку без декодирования
+    private String hubEventTypes = "DeviceAddedEventAvro,DeviceRemovedEventAvro";
+    // Интернирование идентификаторов хабов и датчиков через общий словарь (IdDictionary)
+    private boolean internIds = false;
 
     @Bean
     public KafkaConsumer<String, SpecificRecordBase> kafkaConsumer() {
@@ -33,7 +42,25 @@ public class AggregatorConsumerConfig {
         config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, enableAutoCommit);
         config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, keyDeserializer);
         config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, valueDeserializer);
+        config.put(BaseAvroDeserializer.INTERN_IDS_CONFIG, internIds);
 
         return new KafkaConsumer<>(config);
     }
-}
\ No newline at end of file
+
+    /**
+     * Consumer событий хабов. Работает без группы: партиции назначаются вручную
+     * и каждый запуск читает топик с начала, восстанавливая состав устройств.
+     */
+    @Bean
+    public KafkaConsumer<String, HubEventAvro> hubEventConsumer() {
+        Properties config = new Properties();
+        config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, keyDeserializer);
+        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, hubEventDeserializer);
+        config.put(BaseAvroDeserializer.ACCEPTED_EVENT_TYPES_CONFIG, hubEventTypes);
+
+        return new KafkaConsumer<>(config);
+    }
+}
@@ -5,6 +5,7 @@ import lombok.Setter;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -14,12 +15,15 @@ import java.util.Properties;
 @Getter
 @Setter
 @Configuration
+@ConditionalOnProperty(name = "aggregator.engine", havingValue = "loop", matchIfMissing = true)
 @ConfigurationProperties("aggregator.kafka.producer")
 public class AggregatorProducerConfig {
 
     private String bootstrapServers = "localhost:9092"; // ЗНАЧЕНИЕ ПО УМОЛЧАНИЮ
     private String keySerializer = "org.apache.kafka.common.serialization.StringSerializer";
     private String valueSerializer = "ru.yandex.practicum.telemetry.aggregator.serializer.GeneralAvroSerializer";
+    // Снапшоты одного хаба в пачке повторяют одни и те же идентификаторы — сжатие убирает их с провода
+    private String compressionType = "lz4";
 
     @Bean
     public KafkaProducer<String, SpecificRecordBase> kafkaProducer() {
@@ -29,6 +33,7 @@ public class AggregatorProducerConfig {
         config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, valueSerializer);
         config.put(ProducerConfig.ACKS_CONFIG, "all");
         config.put(ProducerConfig.RETRIES_CONFIG, 3);
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
 
         return new KafkaProducer<>(config);
     }
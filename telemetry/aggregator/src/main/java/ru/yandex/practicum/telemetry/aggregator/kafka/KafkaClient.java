@@ -3,9 +3,11 @@ package ru.yandex.practicum.telemetry.aggregator.kafka;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.producer.Producer;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
 
 public interface KafkaClient extends AutoCloseable {
     Producer<String, SpecificRecordBase> getProducer();
     Consumer<String, SpecificRecordBase> getConsumer();
+    Consumer<String, HubEventAvro> getHubConsumer();
     void close();
 }
\ No newline at end of file
@@ -9,9 +9,11 @@ import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
 
 import java.time.Duration;
 
@@ -19,6 +21,7 @@ import java.time.Duration;
 @Getter
 @Setter
 @Configuration
+@ConditionalOnProperty(name = "aggregator.engine", havingValue = "loop", matchIfMissing = true)
 @ConfigurationProperties("aggregator.kafka")
 public class KafkaConfig {
 
@@ -33,7 +36,8 @@ public class KafkaConfig {
     @Bean
     public KafkaClient kafkaClient(
             KafkaProducer<String, SpecificRecordBase> kafkaProducer,
-            KafkaConsumer<String, SpecificRecordBase> kafkaConsumer) {
+            KafkaConsumer<String, SpecificRecordBase> kafkaConsumer,
+            KafkaConsumer<String, HubEventAvro> hubEventConsumer) {
 
         return new KafkaClient() {
             @Override
@@ -46,6 +50,11 @@ public class KafkaConfig {
                 return kafkaConsumer;
             }
 
+            @Override
+            public Consumer<String, HubEventAvro> getHubConsumer() {
+                return hubEventConsumer;
+            }
+
             @Override
             public void close() {
                 try {
@@ -67,6 +76,15 @@ public class KafkaConfig {
                 } catch (Exception e) {
                     log.warn("Error closing consumer: {}", e.getMessage());
                 }
+
+                try {
+                    if (hubEventConsumer != null) {
+                        hubEventConsumer.close();
+                        log.info("Hub event consumer closed");
+                    }
+                } catch (Exception e) {
+                    log.warn("Error closing hub event consumer: {}", e.getMessage());
+                }
             }
         };
     }
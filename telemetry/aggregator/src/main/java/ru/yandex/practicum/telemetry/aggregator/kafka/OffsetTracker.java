@@ -0,0 +1,66 @@
+package ru.yandex.practicum.telemetry.aggregator.kafka;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Отслеживает offset'ы, которые уже прочитаны, но ещё не отражены в опубликованном снапшоте.
+ * Коммит по партиции не продвигается дальше самой ранней такой записи,
+ * поэтому после перезапуска отложенные события будут прочитаны повторно.
+ */
+public class OffsetTracker {
+
+    private final Map<TopicPartition, PartitionOffsets> partitions = new HashMap<>();
+
+    public void consumed(TopicPartition partition, long offset) {
+        PartitionOffsets offsets = partitions.computeIfAbsent(partition, tp -> new PartitionOffsets());
+        offsets.next = Math.max(offsets.next, offset + 1);
+    }
+
+    public void hold(TopicPartition partition, long offset) {
+        partitions.computeIfAbsent(partition, tp -> new PartitionOffsets()).pending.add(offset);
+    }
+
+    public void release(TopicPartition partition, long offset) {
+        PartitionOffsets offsets = partitions.get(partition);
+        if (offsets != null) {
+            offsets.pending.remove(offset);
+        }
+    }
+
+    public Map<TopicPartition, OffsetAndMetadata> committable() {
+        return committable(partitions.keySet());
+    }
+
+    public Map<TopicPartition, OffsetAndMetadata> committable(Collection<TopicPartition> selected) {
+        Map<TopicPartition, OffsetAndMetadata> result = new HashMap<>();
+        for (TopicPartition partition : selected) {
+            PartitionOffsets offsets = partitions.get(partition);
+            if (offsets == null) {
+                continue;
+            }
+            long offset = offsets.pending.isEmpty() ? offsets.next : offsets.pending.first();
+            if (offset >= 0) {
+                result.put(partition, new OffsetAndMetadata(offset));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Забывает партиции, отобранные у экземпляра: их offset'ы коммитит уже новый владелец.
+     */
+    public void remove(Collection<TopicPartition> removed) {
+        partitions.keySet().removeAll(removed);
+    }
+
+    private static final class PartitionOffsets {
+        private long next = -1;
+        private final TreeSet<Long> pending = new TreeSet<>();
+    }
+}
@@ -0,0 +1,104 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import org.apache.avro.Schema;
+import org.apache.avro.specific.SpecificRecord;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+import ru.yandex.practicum.telemetry.aggregator.config.AggregatorProperties;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Решает, достаточно ли изменились данные датчика, чтобы публиковать новый снапшот.
+ * Для каждого поля задаётся порог: изменения числовых полей в пределах порога
+ * и любые изменения игнорируемых полей не считаются значимыми.
+ */
+@Component
+public class DeadbandFilter {
+
+    // Порог для полей без настройки: значимо любое изменение
+    private static final int ANY_CHANGE = 0;
+    private static final int IGNORED = -1;
+
+    private static final Map<DeviceTypeAvro, Schema> SCHEMAS = new EnumMap<>(Map.of(
+            DeviceTypeAvro.CLIMATE_SENSOR, ClimateSensorAvro.getClassSchema(),
+            DeviceTypeAvro.LIGHT_SENSOR, LightSensorAvro.getClassSchema(),
+            DeviceTypeAvro.MOTION_SENSOR, MotionSensorAvro.getClassSchema(),
+            DeviceTypeAvro.SWITCH_SENSOR, SwitchSensorAvro.getClassSchema(),
+            DeviceTypeAvro.TEMPERATURE_SENSOR, TemperatureSensorAvro.getClassSchema()
+    ));
+
+    private final boolean enabled;
+    // Пороги по позициям полей схемы
+    private final Map<DeviceTypeAvro, int[]> thresholds = new EnumMap<>(DeviceTypeAvro.class);
+
+    public DeadbandFilter(AggregatorProperties aggregatorProperties) {
+        AggregatorProperties.Deadband deadband = aggregatorProperties.getDeadband();
+        this.enabled = deadband.isEnabled();
+        SCHEMAS.forEach((type, schema) -> thresholds.put(type, compile(type, schema,
+                deadband.getThresholds().getOrDefault(type, Map.of()),
+                deadband.getIgnoredFields().getOrDefault(type, Set.of()))));
+    }
+
+    public boolean isSignificant(Object oldData, Object newData) {
+        if (!enabled || oldData == null || newData == null || oldData.getClass() != newData.getClass()) {
+            return !Objects.equals(oldData, newData);
+        }
+
+        SpecificRecord oldRecord = (SpecificRecord) oldData;
+        SpecificRecord newRecord = (SpecificRecord) newData;
+        int[] fieldThresholds = thresholds.get(SensorTypes.of(newData));
+        for (int pos = 0; pos < fieldThresholds.length; pos++) {
+            int threshold = fieldThresholds[pos];
+            if (threshold == IGNORED) {
+                continue;
+            }
+            Object oldValue = oldRecord.get(pos);
+            Object newValue = newRecord.get(pos);
+            if (oldValue instanceof Integer oldInt && newValue instanceof Integer newInt) {
+                if (Math.abs((long) newInt - oldInt) > threshold) {
+                    return true;
+                }
+            } else if (!Objects.equals(oldValue, newValue)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] compile(DeviceTypeAvro type, Schema schema,
+                                 Map<String, Integer> fieldThresholds, Set<String> ignoredFields) {
+        fieldThresholds.forEach((name, threshold) -> {
+            Schema.Field field = requireField(type, schema, name);
+            if (threshold < 0 || field.schema().getType() != Schema.Type.INT) {
+                throw new IllegalArgumentException("Deadband threshold for " + type + "." + name
+                        + " must be a non-negative value on an int field");
+            }
+        });
+        ignoredFields.forEach(name -> requireField(type, schema, name));
+
+        int[] result = new int[schema.getFields().size()];
+        for (Schema.Field field : schema.getFields()) {
+            result[field.pos()] = ignoredFields.contains(field.name())
+                    ? IGNORED
+                    : fieldThresholds.getOrDefault(field.name(), ANY_CHANGE);
+        }
+        return result;
+    }
+
+    private static Schema.Field requireField(DeviceTypeAvro type, Schema schema, String name) {
+        Schema.Field field = schema.getField(name);
+        if (field == null) {
+            throw new IllegalArgumentException("Unknown field '" + name + "' in deadband settings for " + type);
+        }
+        return field;
+    }
+}
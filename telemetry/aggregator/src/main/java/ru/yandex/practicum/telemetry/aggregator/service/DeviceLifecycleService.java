@@ -0,0 +1,89 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceAddedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceRemovedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.telemetry.aggregator.config.AggregatorProperties;
+
+import java.util.Optional;
+
+/**
+ * Применяет события жизненного цикла устройств к состоянию агрегатора:
+ * удалённые датчики вырезаются из снапшота хаба, а при включённой проверке
+ * события незарегистрированных датчиков отбрасываются.
+ * Вызывается только из потока цикла агрегации.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "aggregator.engine", havingValue = "loop", matchIfMissing = true)
+public class DeviceLifecycleService {
+
+    private final SnapshotService snapshotService;
+    private final DeviceRegistry registry = new DeviceRegistry();
+    private final boolean enforceRegistration;
+    private final Counter prunedSensors;
+    private final Counter rejectedEvents;
+    private volatile int registeredDevices;
+
+    public DeviceLifecycleService(SnapshotService snapshotService,
+                                  AggregatorProperties aggregatorProperties,
+                                  MeterRegistry meterRegistry) {
+        this.snapshotService = snapshotService;
+        this.enforceRegistration = aggregatorProperties.getDevices().isEnforceRegistration();
+
+        Gauge.builder("aggregator.devices.registered", this, service -> service.registeredDevices)
+                .description("Devices registered through hub events")
+                .register(meterRegistry);
+        this.prunedSensors = Counter.builder("aggregator.devices.pruned")
+                .description("Removed sensors pruned from hub snapshots")
+                .register(meterRegistry);
+        this.rejectedEvents = Counter.builder("aggregator.devices.rejected")
+                .description("Sensor events dropped because the device is not registered")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Применяет событие хаба. Если удалённый датчик был в состоянии хаба, возвращает снапшот хаба
+     * без него: его нужно опубликовать, иначе analyzer будет видеть датчик до следующего события хаба.
+     */
+    public Optional<SensorsSnapshotAvro> apply(HubEventAvro event) {
+        if (event == null || event.getHubId() == null) {
+            return Optional.empty();
+        }
+
+        Optional<SensorsSnapshotAvro> pruned = Optional.empty();
+        if (event.getPayload() instanceof DeviceAddedEventAvro added) {
+            registry.add(event.getHubId(), added.getId());
+        } else if (event.getPayload() instanceof DeviceRemovedEventAvro removed) {
+            registry.remove(event.getHubId(), removed.getId());
+            pruned = snapshotService.removeSensor(event.getHubId(), removed.getId());
+            if (pruned.isPresent()) {
+                prunedSensors.increment();
+                log.debug("Pruned removed sensor {} from hub {}", removed.getId(), event.getHubId());
+            }
+        } else {
+            return pruned;
+        }
+        registeredDevices = registry.size();
+        return pruned;
+    }
+
+    public boolean isAccepted(SensorEventAvro event) {
+        if (!enforceRegistration || event == null || event.getHubId() == null || event.getId() == null) {
+            return true;
+        }
+        if (registry.contains(event.getHubId(), event.getId())) {
+            return true;
+        }
+        rejectedEvents.increment();
+        return false;
+    }
+}
@@ -0,0 +1,61 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Состав устройств хабов. Идентификаторы устройств хаба хранятся отсортированным массивом:
+ * без узлов и обёрток на каждое устройство, поиск — бинарный.
+ */
+class DeviceRegistry {
+
+    private static final String[] EMPTY = new String[0];
+
+    private final Map<String, String[]> devicesByHub = new HashMap<>();
+    private int size;
+
+    void add(String hubId, String deviceId) {
+        String[] devices = devicesByHub.getOrDefault(hubId, EMPTY);
+        int index = Arrays.binarySearch(devices, deviceId);
+        if (index >= 0) {
+            return;
+        }
+        int insertAt = -index - 1;
+        String[] updated = new String[devices.length + 1];
+        System.arraycopy(devices, 0, updated, 0, insertAt);
+        updated[insertAt] = deviceId;
+        System.arraycopy(devices, insertAt, updated, insertAt + 1, devices.length - insertAt);
+        devicesByHub.put(hubId, updated);
+        size++;
+    }
+
+    void remove(String hubId, String deviceId) {
+        String[] devices = devicesByHub.get(hubId);
+        if (devices == null) {
+            return;
+        }
+        int index = Arrays.binarySearch(devices, deviceId);
+        if (index < 0) {
+            return;
+        }
+        size--;
+        if (devices.length == 1) {
+            devicesByHub.remove(hubId);
+            return;
+        }
+        String[] updated = new String[devices.length - 1];
+        System.arraycopy(devices, 0, updated, 0, index);
+        System.arraycopy(devices, index + 1, updated, index, devices.length - index - 1);
+        devicesByHub.put(hubId, updated);
+    }
+
+    boolean contains(String hubId, String deviceId) {
+        String[] devices = devicesByHub.get(hubId);
+        return devices != null && Arrays.binarySearch(devices, deviceId) >= 0;
+    }
+
+    int size() {
+        return size;
+    }
+}
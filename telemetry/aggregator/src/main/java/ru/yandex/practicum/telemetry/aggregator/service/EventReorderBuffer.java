@@ -0,0 +1,208 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.telemetry.aggregator.config.AggregatorProperties;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Буфер переупорядочивания событий хаба по времени события.
+ * Watermark хаба — максимальное увиденное время события минус allowed-lateness:
+ * события не позже watermark выпускаются в порядке времени. Если новых событий хаба
+ * нет дольше idle-flush, буфер хаба выпускается целиком. События старше уже выпущенных
+ * считаются опоздавшими и применяются сразу, без буферизации.
+ * Опустевший буфер хаба, простоявший дольше idle-flush, удаляется вместе со своим watermark:
+ * опоздавшее событие такого хаба снова попадёт в буфер, а устаревшее состояние отбросит
+ * сравнение времени в {@link SensorStateUpdater}.
+ * Вызывается только из потока цикла агрегации.
+ */
+@Component
+@ConditionalOnProperty(name = "aggregator.engine", havingValue = "loop", matchIfMissing = true)
+public class EventReorderBuffer {
+
+    private static final Comparator<BufferedEvent> EVENT_TIME_ORDER = Comparator
+            .comparingLong(BufferedEvent::eventTimeMillis)
+            .thenComparingLong(BufferedEvent::sequence);
+
+    private final AggregatorProperties.Reordering properties;
+    // В порядке последнего обращения: в начале — хабы, дольше всех не присылавшие событий
+    private final Map<String, HubBuffer> buffers = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<HubBuffer> activeBuffers = new LinkedHashSet<>();
+    private final long allowedLatenessMillis;
+    private final long idleFlushMillis;
+    private long sequence;
+    private int buffered;
+
+    private final Counter lateEvents;
+    private final Counter overflowEvents;
+    private final Timer holdTime;
+
+    public EventReorderBuffer(AggregatorProperties aggregatorProperties, MeterRegistry meterRegistry) {
+        this.properties = aggregatorProperties.getReordering();
+        this.allowedLatenessMillis = properties.getAllowedLateness().toMillis();
+        this.idleFlushMillis = properties.getIdleFlush().toMillis();
+
+        Gauge.builder("aggregator.reorder.buffered", this, buffer -> buffer.buffered)
+                .description("Sensor events waiting in the reorder buffer")
+                .register(meterRegistry);
+        this.lateEvents = Counter.builder("aggregator.reorder.late")
+                .description("Events older than already applied events of the same hub")
+                .register(meterRegistry);
+        this.overflowEvents = Counter.builder("aggregator.reorder.overflow")
+                .description("Events released before the watermark because the hub buffer was full")
+                .register(meterRegistry);
+        this.holdTime = Timer.builder("aggregator.reorder.hold")
+                .description("Time events spend in the reorder buffer")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Помещает событие в буфер хаба. Возвращает false, если событие нужно применить сразу:
+     * буфер выключен или событие опоздало.
+     */
+    public boolean offer(SensorEventAvro event, TopicPartition partition, long offset, long nowMillis) {
+        if (!properties.isEnabled() || event == null || event.getHubId() == null || event.getTimestamp() == null) {
+            return false;
+        }
+
+        HubBuffer buffer = buffers.computeIfAbsent(event.getHubId(), hubId -> new HubBuffer());
+        buffer.lastArrivalMillis = nowMillis;
+        long eventTime = event.getTimestamp().toEpochMilli();
+        if (eventTime < buffer.releasedUpTo) {
+            lateEvents.increment();
+            return false;
+        }
+
+        buffer.queue.add(new BufferedEvent(event, partition, offset, eventTime, sequence++, nowMillis));
+        buffer.maxEventTime = Math.max(buffer.maxEventTime, eventTime);
+        activeBuffers.add(buffer);
+        buffered++;
+        return true;
+    }
+
+    /**
+     * Забирает события, которые прошли watermark своего хаба, в порядке времени события.
+     */
+    public List<BufferedEvent> drainReady(long nowMillis) {
+        List<BufferedEvent> ready = drain(nowMillis, false);
+        evictIdle(nowMillis);
+        return ready;
+    }
+
+    public List<BufferedEvent> drainAll() {
+        return drain(System.currentTimeMillis(), true);
+    }
+
+    /**
+     * Забирает все события из указанных партиций, в порядке времени события.
+     * Нужно при отзыве партиций: буфер не должен держать события, offset'ы которых коммитит другой экземпляр.
+     */
+    public List<BufferedEvent> drainPartitions(Collection<TopicPartition> partitions) {
+        if (activeBuffers.isEmpty()) {
+            return List.of();
+        }
+        List<BufferedEvent> drained = new ArrayList<>();
+        Iterator<HubBuffer> iterator = activeBuffers.iterator();
+        while (iterator.hasNext()) {
+            HubBuffer buffer = iterator.next();
+            buffer.queue.removeIf(event -> {
+                if (!partitions.contains(event.partition())) {
+                    return false;
+                }
+                drained.add(event);
+                buffer.releasedUpTo = Math.max(buffer.releasedUpTo, event.eventTimeMillis());
+                return true;
+            });
+            if (buffer.queue.isEmpty()) {
+                iterator.remove();
+            }
+        }
+        buffered -= drained.size();
+        drained.sort(EVENT_TIME_ORDER);
+        return drained;
+    }
+
+    private List<BufferedEvent> drain(long nowMillis, boolean all) {
+        if (activeBuffers.isEmpty()) {
+            return List.of();
+        }
+        List<BufferedEvent> ready = new ArrayList<>();
+        Iterator<HubBuffer> iterator = activeBuffers.iterator();
+        while (iterator.hasNext()) {
+            HubBuffer buffer = iterator.next();
+            boolean flush = all || nowMillis - buffer.lastArrivalMillis >= idleFlushMillis;
+            long watermark = buffer.maxEventTime - allowedLatenessMillis;
+
+            PriorityQueue<BufferedEvent> queue = buffer.queue;
+            while (!queue.isEmpty()) {
+                boolean overflow = queue.size() > properties.getMaxBufferedPerHub();
+                if (!flush && !overflow && queue.peek().eventTimeMillis() > watermark) {
+                    break;
+                }
+                if (overflow && !flush && queue.peek().eventTimeMillis() > watermark) {
+                    overflowEvents.increment();
+                }
+                BufferedEvent event = queue.poll();
+                buffer.releasedUpTo = Math.max(buffer.releasedUpTo, event.eventTimeMillis());
+                holdTime.record(nowMillis - event.bufferedAtMillis(), TimeUnit.MILLISECONDS);
+                ready.add(event);
+                buffered--;
+            }
+            if (queue.isEmpty()) {
+                iterator.remove();
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * Удаляет опустевшие буферы хабов, у которых не было событий дольше idle-flush.
+     * Просматривает только начало очереди обращений, поэтому стоит столько, сколько хабов удалено.
+     */
+    private void evictIdle(long nowMillis) {
+        Iterator<HubBuffer> iterator = buffers.values().iterator();
+        while (iterator.hasNext()) {
+            HubBuffer buffer = iterator.next();
+            if (nowMillis - buffer.lastArrivalMillis < idleFlushMillis || !buffer.queue.isEmpty()) {
+                return;
+            }
+            iterator.remove();
+        }
+    }
+
+    public record BufferedEvent(SensorEventAvro event,
+                                TopicPartition partition,
+                                long offset,
+                                long eventTimeMillis,
+                                long sequence,
+                                long bufferedAtMillis) {
+    }
+
+    private static final class HubBuffer {
+        private final PriorityQueue<BufferedEvent> queue = new PriorityQueue<>(EVENT_TIME_ORDER);
+        private long maxEventTime = Long.MIN_VALUE;
+        private long releasedUpTo = Long.MIN_VALUE;
+        private long lastArrivalMillis;
+    }
+}
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+
+/**
+ * Правила обновления состояния датчика событием, общие для всех движков агрегации.
+ * Не хранит состояния и потокобезопасен.
+ */
+@Component
+@RequiredArgsConstructor
+public class SensorStateUpdater {
+
+    private final DeadbandFilter deadbandFilter;
+
+    /**
+     * Нужно ли заменить текущее состояние датчика данными события.
+     * Событие старше текущего состояния и изменения в пределах порогов не применяются.
+     * Состояние внутри порога не сохраняем, чтобы мелкие изменения не накапливались незаметно.
+     */
+    public boolean shouldApply(SensorStateAvro oldState, SensorEventAvro event) {
+        if (oldState == null) {
+            return true;
+        }
+        return !oldState.getTimestamp().isAfter(event.getTimestamp())
+                && deadbandFilter.isSignificant(oldState.getData(), event.getPayload());
+    }
+
+    public SensorStateAvro toState(SensorEventAvro event) {
+        return SensorStateAvro.newBuilder()
+                .setTimestamp(event.getTimestamp())
+                .setData(event.getPayload())
+                .build();
+    }
+}
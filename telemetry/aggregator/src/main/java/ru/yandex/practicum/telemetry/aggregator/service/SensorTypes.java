@@ -0,0 +1,33 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+
+public final class SensorTypes {
+
+    private SensorTypes() {
+    }
+
+    /**
+     * Определяет тип датчика по payload'у события или данным состояния.
+     */
+    public static DeviceTypeAvro of(Object payload) {
+        if (payload instanceof ClimateSensorAvro) {
+            return DeviceTypeAvro.CLIMATE_SENSOR;
+        } else if (payload instanceof LightSensorAvro) {
+            return DeviceTypeAvro.LIGHT_SENSOR;
+        } else if (payload instanceof MotionSensorAvro) {
+            return DeviceTypeAvro.MOTION_SENSOR;
+        } else if (payload instanceof SwitchSensorAvro) {
+            return DeviceTypeAvro.SWITCH_SENSOR;
+        } else if (payload instanceof TemperatureSensorAvro) {
+            return DeviceTypeAvro.TEMPERATURE_SENSOR;
+        }
+        throw new IllegalArgumentException("Unknown sensor payload: "
+                + (payload == null ? "null" : payload.getClass().getSimpleName()));
+    }
+}
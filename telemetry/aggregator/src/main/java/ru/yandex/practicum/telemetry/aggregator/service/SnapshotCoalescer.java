@@ -0,0 +1,133 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.telemetry.aggregator.config.AggregatorProperties;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Схлопывает обновления снапшота хаба в пределах окна: публикуется только последний снапшот,
+ * когда у хаба не было обновлений в течение window, но не позже maxDelay с первого
+ * необъединённого обновления. Вызывается только из потока цикла агрегации.
+ */
+@Component
+@ConditionalOnProperty(name = "aggregator.engine", havingValue = "loop", matchIfMissing = true)
+public class SnapshotCoalescer {
+
+    private final AggregatorProperties.Coalescing properties;
+    private final Map<String, Pending> pendingByHub = new LinkedHashMap<>();
+
+    public SnapshotCoalescer(AggregatorProperties aggregatorProperties) {
+        this.properties = aggregatorProperties.getCoalescing();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Нужно ли публиковать обновление датчика сразу, минуя окно.
+     */
+    public boolean isImmediate(Object payload) {
+        return !properties.isEnabled() || properties.getImmediateTypes().contains(SensorTypes.of(payload));
+    }
+
+    /**
+     * Откладывает снапшот хаба до конца окна, заменяя ранее отложенный.
+     */
+    public void offer(SensorsSnapshotAvro snapshot, TopicPartition partition, long offset, long nowMillis) {
+        Pending pending = pendingByHub.computeIfAbsent(snapshot.getHubId(), hubId -> new Pending(nowMillis));
+        pending.snapshot = snapshot;
+        pending.lastUpdateMillis = nowMillis;
+        pending.offsets.add(new SourceOffset(partition, offset));
+    }
+
+    /**
+     * Снимает отложенный снапшот хаба, когда его обновление уходит в публикацию раньше окна.
+     * Возвращает offset'ы событий, уже учтённых в публикуемом снапшоте.
+     */
+    public List<SourceOffset> discard(String hubId) {
+        Pending pending = pendingByHub.remove(hubId);
+        return pending == null ? List.of() : pending.offsets;
+    }
+
+    /**
+     * Забирает снапшоты, окно которых закрылось к моменту nowMillis.
+     */
+    public List<Pending> drainDue(long nowMillis) {
+        if (pendingByHub.isEmpty()) {
+            return List.of();
+        }
+        long window = properties.getWindow().toMillis();
+        long maxDelay = properties.getMaxDelay().toMillis();
+        List<Pending> due = new ArrayList<>();
+        Iterator<Pending> iterator = pendingByHub.values().iterator();
+        while (iterator.hasNext()) {
+            Pending pending = iterator.next();
+            if (nowMillis - pending.lastUpdateMillis >= window || nowMillis - pending.firstUpdateMillis >= maxDelay) {
+                due.add(pending);
+                iterator.remove();
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Забирает отложенные снапшоты, удерживающие offset'ы указанных партиций.
+     */
+    public List<Pending> drainPartitions(Collection<TopicPartition> partitions) {
+        if (pendingByHub.isEmpty()) {
+            return List.of();
+        }
+        List<Pending> drained = new ArrayList<>();
+        Iterator<Pending> iterator = pendingByHub.values().iterator();
+        while (iterator.hasNext()) {
+            Pending pending = iterator.next();
+            for (SourceOffset source : pending.offsets) {
+                if (partitions.contains(source.partition())) {
+                    drained.add(pending);
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+        return drained;
+    }
+
+    public List<Pending> drainAll() {
+        List<Pending> all = new ArrayList<>(pendingByHub.values());
+        pendingByHub.clear();
+        return all;
+    }
+
+    public static final class Pending {
+        private final long firstUpdateMillis;
+        private long lastUpdateMillis;
+        private SensorsSnapshotAvro snapshot;
+        private final List<SourceOffset> offsets = new ArrayList<>();
+
+        private Pending(long firstUpdateMillis) {
+            this.firstUpdateMillis = firstUpdateMillis;
+            this.lastUpdateMillis = firstUpdateMillis;
+        }
+
+        public SensorsSnapshotAvro getSnapshot() {
+            return snapshot;
+        }
+
+        public List<SourceOffset> getOffsets() {
+            return offsets;
+        }
+    }
+
+    public record SourceOffset(TopicPartition partition, long offset) {
+    }
+}
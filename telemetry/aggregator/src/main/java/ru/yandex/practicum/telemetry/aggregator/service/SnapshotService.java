@@ -1,21 +1,82 @@
 package ru.yandex.practicum.telemetry.aggregator.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.kafka.telemetry.event.*;
+import ru.yandex.practicum.telemetry.aggregator.config.AggregatorProperties;
+import ru.yandex.practicum.telemetry.aggregator.state.HubStateStore;
+import ru.yandex.practicum.telemetry.aggregator.state.SnapshotColdStore;
 
-import java.time.Instant;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.OptionalInt;
 
+/**
+ * Держит в памяти состояния датчиков активных хабов. Хабы без событий дольше idle-ttl и самые давние
+ * сверх max-resident-hubs выгружаются в холодное хранилище и загружаются обратно при следующем событии.
+ * Сами состояния лежат в {@link HubStateStore}, снапшоты собираются из него при публикации.
+ * Вызывается только из потока цикла агрегации.
+ */
 @Slf4j
 @Service
+@ConditionalOnProperty(name = "aggregator.engine", havingValue = "loop", matchIfMissing = true)
 public class SnapshotService {
-    private final Map<String, SensorsSnapshotAvro> snapshots = new ConcurrentHashMap<>();
 
-    public Optional<SensorsSnapshotAvro> updateState(SensorEventAvro event) {
+    private final SensorStateUpdater stateUpdater;
+    private final HubStateStore stateStore;
+    private final SnapshotColdStore coldStore;
+    private final AggregatorProperties.State properties;
+    // Порядок доступа: первыми идут дольше всех не обновлявшиеся хабы
+    private final Map<String, ResidentHub> residents = new LinkedHashMap<>(16, 0.75f, true);
+    private final Counter evictedHubs;
+    private final Counter reloadedHubs;
+    private volatile int residentHubs;
+    private long nextSweepMillis;
+
+    public SnapshotService(SensorStateUpdater stateUpdater,
+                           HubStateStore stateStore,
+                           SnapshotColdStore coldStore,
+                           AggregatorProperties aggregatorProperties,
+                           MeterRegistry meterRegistry) {
+        this.stateUpdater = stateUpdater;
+        this.stateStore = stateStore;
+        this.coldStore = coldStore;
+        this.properties = aggregatorProperties.getState();
+
+        Gauge.builder("aggregator.state.resident.hubs", this, service -> service.residentHubs)
+                .description("Hub snapshots held in memory")
+                .register(meterRegistry);
+        Gauge.builder("aggregator.state.resident.bytes", stateStore, HubStateStore::sizeInBytes)
+                .description("Estimated size of hub state held in memory")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("aggregator.state.cold.hubs", coldStore, SnapshotColdStore::size)
+                .description("Hub snapshots evicted to the cold store")
+                .register(meterRegistry);
+        Gauge.builder("aggregator.state.cold.bytes", coldStore, SnapshotColdStore::sizeInBytes)
+                .description("Size of the cold snapshot store")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.evictedHubs = Counter.builder("aggregator.state.evicted")
+                .description("Hub snapshots evicted from memory")
+                .register(meterRegistry);
+        this.reloadedHubs = Counter.builder("aggregator.state.reloaded")
+                .description("Hub snapshots reloaded from the cold store")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Применяет событие к состоянию хаба. partition — номер партиции, из которой прочитано событие:
+     * по нему состояние хаба сбрасывается, когда партиция уходит к другому экземпляру.
+     */
+    public Optional<SensorsSnapshotAvro> updateState(SensorEventAvro event, int partition) {
         if (event == null || event.getHubId() == null || event.getId() == null) {
             return Optional.empty();
         }
@@ -23,50 +84,137 @@ public class SnapshotService {
         String hubId = event.getHubId();
         String sensorId = event.getId();
 
-        // Получаем или создаем снапшот
-        SensorsSnapshotAvro snapshot = snapshots.computeIfAbsent(hubId, id ->
-                SensorsSnapshotAvro.newBuilder()
-                        .setHubId(hubId)
-                        .setTimestamp(event.getTimestamp())
-                        .setSensorsState(new HashMap<>())
-                        .build()
-        );
+        // Поднимаем хаб в память из холодного хранилища, если он был выгружен
+        long now = System.currentTimeMillis();
+        ResidentHub resident = residentOf(event, partition, now);
+        SensorStateAvro oldState = stateStore.getSensorState(hubId, sensorId);
 
-        // Копируем текущие состояния
-        Map<String, SensorStateAvro> sensorStates = new HashMap<>(snapshot.getSensorsState());
-        SensorStateAvro oldState = sensorStates.get(sensorId);
+        // Проверяем, нужно ли обновлять
+        if (!stateUpdater.shouldApply(oldState, event)) {
+            return Optional.empty();
+        }
 
-        Instant newTimestamp = event.getTimestamp();
+        // Сохраняем новое состояние датчика
+        stateStore.putSensorState(hubId, sensorId, stateUpdater.toState(event));
+        resident.timestampMillis = event.getTimestamp().toEpochMilli();
 
-        // Проверяем, нужно ли обновлять
-        if (oldState != null) {
-            Instant oldTimestamp = oldState.getTimestamp();
+        // Собираем снапшот для публикации
+        return Optional.of(stateStore.snapshot(hubId, resident.timestampMillis));
+    }
 
-            // Если старое событие более новое или данные не изменились
-            if (oldTimestamp.isAfter(newTimestamp) ||
-                    oldState.getData().equals(event.getPayload())) {
+    /**
+     * Удаляет датчик из состояния хаба — в памяти или в холодном хранилище.
+     * Возвращает снапшот хаба без датчика или пустой Optional, если состояния датчика не было.
+     */
+    public Optional<SensorsSnapshotAvro> removeSensor(String hubId, String sensorId) {
+        ResidentHub resident = residents.get(hubId);
+        if (resident == null) {
+            OptionalInt partition = coldStore.partitionOf(hubId);
+            Optional<SensorsSnapshotAvro> cold = partition.isPresent()
+                    ? coldStore.take(hubId, partition.getAsInt())
+                    : Optional.empty();
+            if (cold.isEmpty()) {
                 return Optional.empty();
             }
+            SensorsSnapshotAvro snapshot = cold.get();
+            boolean removed = snapshot.getSensorsState().remove(sensorId) != null;
+            coldStore.save(snapshot, partition.getAsInt());
+            return removed ? Optional.of(snapshot) : Optional.empty();
         }
 
-        // Создаем новое состояние
-        SensorStateAvro newState = SensorStateAvro.newBuilder()
-                .setTimestamp(event.getTimestamp())
-                .setData(event.getPayload())
-                .build();
+        resident.lastAccessMillis = System.currentTimeMillis();
+        if (!stateStore.removeSensor(hubId, sensorId)) {
+            return Optional.empty();
+        }
+        return Optional.of(stateStore.snapshot(hubId, resident.timestampMillis));
+    }
 
-        // Обновляем состояния
-        sensorStates.put(sensorId, newState);
+    /**
+     * Забывает состояние хабов партиций, которые переходят к другому экземпляру или возвращаются от него:
+     * пока партицией владел другой, наше состояние её хабов устарело. Хабы будут собраны заново из новых событий.
+     */
+    public void dropPartitions(Collection<Integer> partitions) {
+        int dropped = 0;
+        Iterator<Map.Entry<String, ResidentHub>> iterator = residents.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, ResidentHub> entry = iterator.next();
+            if (partitions.contains(entry.getValue().partition)) {
+                stateStore.removeHub(entry.getKey());
+                iterator.remove();
+                dropped++;
+            }
+        }
+        residentHubs = residents.size();
+        coldStore.dropPartitions(partitions);
+        if (dropped > 0) {
+            log.info("Dropped state of {} hubs of partitions {}", dropped, partitions);
+        }
+    }
 
-        // Создаем обновленный снапшот (копируя старый)
-        SensorsSnapshotAvro updatedSnapshot = SensorsSnapshotAvro.newBuilder(snapshot)
-                .setTimestamp(event.getTimestamp())
-                .setSensorsState(sensorStates)
-                .build();
+    /**
+     * Выгружает хабы, не получавшие событий дольше idle-ttl. Проверка выполняется не чаще sweep-interval.
+     */
+    public void evictIdle(long nowMillis) {
+        if (nowMillis < nextSweepMillis) {
+            return;
+        }
+        nextSweepMillis = nowMillis + properties.getSweepInterval().toMillis();
+
+        long idleTtl = properties.getIdleTtl().toMillis();
+        Iterator<Map.Entry<String, ResidentHub>> iterator = residents.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, ResidentHub> entry = iterator.next();
+            if (nowMillis - entry.getValue().lastAccessMillis < idleTtl) {
+                break;
+            }
+            evict(entry.getKey(), entry.getValue());
+            iterator.remove();
+        }
+        residentHubs = residents.size();
+    }
 
-        // Сохраняем
-        snapshots.put(hubId, updatedSnapshot);
+    private ResidentHub residentOf(SensorEventAvro event, int partition, long now) {
+        ResidentHub resident = residents.get(event.getHubId());
+        if (resident == null) {
+            resident = new ResidentHub(event.getTimestamp().toEpochMilli(), partition);
+            Optional<SensorsSnapshotAvro> cold = coldStore.take(event.getHubId(), partition);
+            if (cold.isPresent()) {
+                stateStore.putHub(cold.get());
+                resident.timestampMillis = cold.get().getTimestamp().toEpochMilli();
+                reloadedHubs.increment();
+            }
+            residents.put(event.getHubId(), resident);
+            evictOverLimit();
+        }
+        resident.lastAccessMillis = now;
+        return resident;
+    }
 
-        return Optional.of(updatedSnapshot);
+    private void evictOverLimit() {
+        Iterator<Map.Entry<String, ResidentHub>> iterator = residents.entrySet().iterator();
+        while (residents.size() > properties.getMaxResidentHubs() && iterator.hasNext()) {
+            Map.Entry<String, ResidentHub> entry = iterator.next();
+            evict(entry.getKey(), entry.getValue());
+            iterator.remove();
+        }
+        residentHubs = residents.size();
+    }
+
+    private void evict(String hubId, ResidentHub resident) {
+        coldStore.save(stateStore.snapshot(hubId, resident.timestampMillis), resident.partition);
+        stateStore.removeHub(hubId);
+        evictedHubs.increment();
+        log.debug("Evicted hub {} to the cold store", hubId);
+    }
+
+    private static final class ResidentHub {
+        private final int partition;
+        private long timestampMillis;
+        private long lastAccessMillis;
+
+        private ResidentHub(long timestampMillis, int partition) {
+            this.timestampMillis = timestampMillis;
+            this.partition = partition;
+        }
     }
 }
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.telemetry.aggregator.service;
+
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+public final class SnapshotVersions {
+
+    private SnapshotVersions() {
+    }
+
+    /**
+     * Версия снапшота для заголовка snapshot-version — самое позднее время показания среди датчиков хаба
+     * в микросекундах. Она выводится из состояния хаба, поэтому не убывает и после перезапуска
+     * или переезда партиции на другой экземпляр.
+     */
+    public static long of(SensorsSnapshotAvro snapshot) {
+        Instant latest = snapshot.getTimestamp();
+        for (SensorStateAvro state : snapshot.getSensorsState().values()) {
+            if (state.getTimestamp().isAfter(latest)) {
+                latest = state.getTimestamp();
+            }
+        }
+        return TimeUnit.SECONDS.toMicros(latest.getEpochSecond()) + TimeUnit.NANOSECONDS.toMicros(latest.getNano());
+    }
+}
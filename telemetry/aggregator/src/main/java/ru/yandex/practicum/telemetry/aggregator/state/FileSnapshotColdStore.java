@@ -0,0 +1,182 @@
+package ru.yandex.practicum.telemetry.aggregator.state;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.telemetry.aggregator.config.AggregatorProperties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Хранит каждый выгруженный снапшот отдельным файлом в бинарном формате Avro, в каталоге своей партиции.
+ * Имя файла — hubId в URL-safe Base64, поэтому любые идентификаторы хабов безопасны для файловой системы.
+ * <p>
+ * Файлы, оставшиеся от прошлого запуска, удаляются при старте: пока экземпляр не работал, партиции
+ * могли обрабатываться другим экземпляром, и снапшот из файла был бы старее событий после коммита.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "aggregator.engine", havingValue = "loop", matchIfMissing = true)
+public class FileSnapshotColdStore implements SnapshotColdStore {
+
+    private static final String SUFFIX = ".avro";
+
+    private final Path directory;
+    private final SpecificDatumWriter<SensorsSnapshotAvro> writer = new SpecificDatumWriter<>(SensorsSnapshotAvro.class);
+    private final SpecificDatumReader<SensorsSnapshotAvro> reader = new SpecificDatumReader<>(SensorsSnapshotAvro.class);
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    private BinaryEncoder encoder;
+    private BinaryDecoder decoder;
+
+    public FileSnapshotColdStore(AggregatorProperties aggregatorProperties) throws IOException {
+        this.directory = aggregatorProperties.getState().getColdDirectory();
+        Files.createDirectories(directory);
+        Deleted stale = deleteContents(directory);
+        log.info("Cold snapshot store at {}, dropped {} snapshots left from the previous run", directory, stale.files());
+    }
+
+    @Override
+    public void save(SensorsSnapshotAvro snapshot, int partition) {
+        Path file = fileOf(snapshot.getHubId(), partition);
+        try {
+            Files.createDirectories(file.getParent());
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+            encoder = EncoderFactory.get().binaryEncoder(out, encoder);
+            writer.write(snapshot, encoder);
+            encoder.flush();
+
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, out.toByteArray());
+            long previous = Files.exists(file) ? Files.size(file) : -1;
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (previous < 0) {
+                files.incrementAndGet();
+                bytes.addAndGet(out.size());
+            } else {
+                bytes.addAndGet(out.size() - previous);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to save snapshot of hub " + snapshot.getHubId(), e);
+        }
+    }
+
+    @Override
+    public Optional<SensorsSnapshotAvro> take(String hubId, int partition) {
+        Path file = fileOf(hubId, partition);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try {
+            byte[] data = Files.readAllBytes(file);
+            decoder = DecoderFactory.get().binaryDecoder(data, decoder);
+            SensorsSnapshotAvro snapshot = reader.read(null, decoder);
+            Files.delete(file);
+            files.decrementAndGet();
+            bytes.addAndGet(-data.length);
+            return Optional.of(snapshot);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load snapshot of hub " + hubId, e);
+        }
+    }
+
+    @Override
+    public OptionalInt partitionOf(String hubId) {
+        String name = fileNameOf(hubId);
+        try (Stream<Path> partitions = Files.list(directory)) {
+            return partitions
+                    .filter(partition -> Files.exists(partition.resolve(name)))
+                    .mapToInt(partition -> Integer.parseInt(partition.getFileName().toString()))
+                    .findFirst();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list cold snapshot partitions", e);
+        }
+    }
+
+    @Override
+    public void dropPartitions(Collection<Integer> partitions) {
+        for (Integer partition : partitions) {
+            Path partitionDirectory = directory.resolve(Integer.toString(partition));
+            if (!Files.isDirectory(partitionDirectory)) {
+                continue;
+            }
+            try {
+                Deleted dropped = deleteContents(partitionDirectory);
+                Files.deleteIfExists(partitionDirectory);
+                files.addAndGet(-dropped.files());
+                bytes.addAndGet(-dropped.bytes());
+                if (dropped.files() > 0) {
+                    log.debug("Dropped {} cold snapshots of partition {}", dropped.files(), partition);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to drop cold snapshots of partition {}", partition, e);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) files.get();
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return bytes.get();
+    }
+
+    private Path fileOf(String hubId, int partition) {
+        return directory.resolve(Integer.toString(partition)).resolve(fileNameOf(hubId));
+    }
+
+    private static String fileNameOf(String hubId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hubId.getBytes(StandardCharsets.UTF_8)) + SUFFIX;
+    }
+
+    /**
+     * Удаляет всё содержимое каталога, сам каталог остаётся.
+     */
+    private static Deleted deleteContents(Path root) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(root)) {
+            // Вложенные пути идут раньше своих каталогов
+            paths = walk.filter(path -> !path.equals(root))
+                    .sorted(Comparator.reverseOrder())
+                    .toList();
+        }
+        int snapshots = 0;
+        long size = 0;
+        for (Path path : paths) {
+            if (path.toString().endsWith(SUFFIX)) {
+                snapshots++;
+                size += Files.size(path);
+            }
+            Files.delete(path);
+        }
+        return new Deleted(snapshots, size);
+    }
+
+    private record Deleted(int files, long bytes) {
+    }
+}
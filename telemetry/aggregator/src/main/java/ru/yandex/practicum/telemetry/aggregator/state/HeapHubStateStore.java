@@ -0,0 +1,89 @@
+package ru.yandex.practicum.telemetry.aggregator.state;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Хранит состояния датчиков объектами Avro в куче.
+ */
+@Component
+@ConditionalOnProperty(name = "aggregator.state.store", havingValue = "heap", matchIfMissing = true)
+public class HeapHubStateStore implements HubStateStore {
+
+    // Приблизительный размер в куче записи хаба и состояния одного датчика
+    private static final int HUB_OVERHEAD_BYTES = 128;
+    private static final int SENSOR_STATE_OVERHEAD_BYTES = 192;
+
+    private final Map<String, Map<String, SensorStateAvro>> hubs = new HashMap<>();
+    private volatile long sizeInBytes;
+
+    @Override
+    public SensorStateAvro getSensorState(String hubId, String sensorId) {
+        Map<String, SensorStateAvro> sensors = hubs.get(hubId);
+        return sensors == null ? null : sensors.get(sensorId);
+    }
+
+    @Override
+    public void putSensorState(String hubId, String sensorId, SensorStateAvro state) {
+        Map<String, SensorStateAvro> sensors = hubs.computeIfAbsent(hubId, id -> {
+            sizeInBytes += HUB_OVERHEAD_BYTES + 2L * id.length();
+            return new HashMap<>();
+        });
+        if (sensors.put(sensorId, state) == null) {
+            sizeInBytes += sensorSize(sensorId);
+        }
+    }
+
+    @Override
+    public boolean removeSensor(String hubId, String sensorId) {
+        Map<String, SensorStateAvro> sensors = hubs.get(hubId);
+        if (sensors == null || sensors.remove(sensorId) == null) {
+            return false;
+        }
+        sizeInBytes -= sensorSize(sensorId);
+        return true;
+    }
+
+    @Override
+    public SensorsSnapshotAvro snapshot(String hubId, long timestampMillis) {
+        Map<String, SensorStateAvro> sensors = hubs.getOrDefault(hubId, Map.of());
+        return SensorsSnapshotAvro.newBuilder()
+                .setHubId(hubId)
+                .setTimestamp(Instant.ofEpochMilli(timestampMillis))
+                .setSensorsState(new HashMap<>(sensors))
+                .build();
+    }
+
+    @Override
+    public void putHub(SensorsSnapshotAvro snapshot) {
+        removeHub(snapshot.getHubId());
+        snapshot.getSensorsState().forEach((sensorId, state) -> putSensorState(snapshot.getHubId(), sensorId, state));
+    }
+
+    @Override
+    public void removeHub(String hubId) {
+        Map<String, SensorStateAvro> sensors = hubs.remove(hubId);
+        if (sensors == null) {
+            return;
+        }
+        sizeInBytes -= HUB_OVERHEAD_BYTES + 2L * hubId.length();
+        for (String sensorId : sensors.keySet()) {
+            sizeInBytes -= sensorSize(sensorId);
+        }
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    private static long sensorSize(String sensorId) {
+        return SENSOR_STATE_OVERHEAD_BYTES + 2L * sensorId.length();
+    }
+}
@@ -0,0 +1,38 @@
+package ru.yandex.practicum.telemetry.aggregator.state;
+
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+/**
+ * Хранилище состояний датчиков хабов, находящихся в памяти.
+ * Снапшоты, которые возвращает хранилище, независимы от него и не меняются при последующих обновлениях.
+ * Реализации не потокобезопасны: вызываются только из потока цикла агрегации.
+ */
+public interface HubStateStore {
+
+    /**
+     * Текущее состояние датчика или null, если датчика нет.
+     */
+    SensorStateAvro getSensorState(String hubId, String sensorId);
+
+    void putSensorState(String hubId, String sensorId, SensorStateAvro state);
+
+    boolean removeSensor(String hubId, String sensorId);
+
+    /**
+     * Собирает снапшот хаба с указанным временем из текущих состояний датчиков.
+     */
+    SensorsSnapshotAvro snapshot(String hubId, long timestampMillis);
+
+    /**
+     * Загружает снапшот хаба целиком, заменяя текущие состояния его датчиков.
+     */
+    void putHub(SensorsSnapshotAvro snapshot);
+
+    void removeHub(String hubId);
+
+    /**
+     * Приблизительный объём памяти, занятый состояниями.
+     */
+    long sizeInBytes();
+}
@@ -0,0 +1,275 @@
+package ru.yandex.practicum.telemetry.aggregator.state;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+import ru.yandex.practicum.telemetry.aggregator.config.AggregatorProperties;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Хранит состояния датчиков вне кучи: каждому датчику выделяется слот фиксированного размера
+ * в direct-буферах (слабах). В куче остаётся только индекс — идентификаторы датчиков хаба
+ * отсортированным массивом и номера их слотов, поэтому объём кучи и паузы GC не растут вместе с парком.
+ * Объекты Avro создаются только при сборке снапшота.
+ * <p>
+ * Раскладка слота: время события (long), тип данных (int) и до трёх целочисленных полей данных,
+ * логические значения хранятся как 0/1.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "aggregator.state.store", havingValue = "off-heap")
+public class OffHeapHubStateStore implements HubStateStore {
+
+    private static final int SLOT_BYTES = 24;
+    private static final int TIMESTAMP_OFFSET = 0;
+    private static final int TYPE_OFFSET = 8;
+    private static final int FIELDS_OFFSET = 12;
+
+    private static final int CLIMATE = 1;
+    private static final int LIGHT = 2;
+    private static final int MOTION = 3;
+    private static final int SWITCH = 4;
+    private static final int TEMPERATURE = 5;
+
+    // Приблизительный размер в куче записи индекса хаба и одного датчика
+    private static final int HUB_INDEX_OVERHEAD_BYTES = 96;
+    private static final int SENSOR_INDEX_OVERHEAD_BYTES = 56;
+
+    private static final String[] NO_SENSORS = new String[0];
+    private static final int[] NO_SLOTS = new int[0];
+
+    private final int slabShift;
+    private final int slabMask;
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private final Map<String, HubSlots> hubs = new HashMap<>();
+
+    private int nextSlot;
+    private int[] freeSlots = new int[1024];
+    private int freeCount;
+    private volatile long sizeInBytes;
+
+    public OffHeapHubStateStore(AggregatorProperties aggregatorProperties) {
+        int slabSlots = aggregatorProperties.getState().getOffHeapSlabSlots();
+        if (slabSlots <= 0 || Integer.bitCount(slabSlots) != 1) {
+            throw new IllegalArgumentException("aggregator.state.off-heap-slab-slots must be a power of two");
+        }
+        this.slabShift = Integer.numberOfTrailingZeros(slabSlots);
+        this.slabMask = slabSlots - 1;
+        log.info("Using off-heap hub state store with {} KiB slabs", (slabSlots * SLOT_BYTES) >> 10);
+    }
+
+    @Override
+    public SensorStateAvro getSensorState(String hubId, String sensorId) {
+        HubSlots hub = hubs.get(hubId);
+        if (hub == null) {
+            return null;
+        }
+        int index = Arrays.binarySearch(hub.sensorIds, sensorId);
+        return index < 0 ? null : read(hub.slots[index]);
+    }
+
+    @Override
+    public void putSensorState(String hubId, String sensorId, SensorStateAvro state) {
+        HubSlots hub = hubs.get(hubId);
+        if (hub == null) {
+            hub = new HubSlots();
+            hubs.put(hubId, hub);
+            sizeInBytes += HUB_INDEX_OVERHEAD_BYTES + 2L * hubId.length();
+        }
+
+        int index = Arrays.binarySearch(hub.sensorIds, sensorId);
+        if (index >= 0) {
+            write(hub.slots[index], state);
+            return;
+        }
+
+        int slot = allocateSlot();
+        write(slot, state);
+        hub.insert(-index - 1, sensorId, slot);
+        sizeInBytes += SENSOR_INDEX_OVERHEAD_BYTES + 2L * sensorId.length();
+    }
+
+    @Override
+    public boolean removeSensor(String hubId, String sensorId) {
+        HubSlots hub = hubs.get(hubId);
+        if (hub == null) {
+            return false;
+        }
+        int index = Arrays.binarySearch(hub.sensorIds, sensorId);
+        if (index < 0) {
+            return false;
+        }
+        releaseSlot(hub.slots[index]);
+        hub.remove(index);
+        sizeInBytes -= SENSOR_INDEX_OVERHEAD_BYTES + 2L * sensorId.length();
+        return true;
+    }
+
+    @Override
+    public SensorsSnapshotAvro snapshot(String hubId, long timestampMillis) {
+        HubSlots hub = hubs.get(hubId);
+        Map<String, SensorStateAvro> sensorStates = new HashMap<>();
+        if (hub != null) {
+            for (int i = 0; i < hub.sensorIds.length; i++) {
+                sensorStates.put(hub.sensorIds[i], read(hub.slots[i]));
+            }
+        }
+        return SensorsSnapshotAvro.newBuilder()
+                .setHubId(hubId)
+                .setTimestamp(Instant.ofEpochMilli(timestampMillis))
+                .setSensorsState(sensorStates)
+                .build();
+    }
+
+    @Override
+    public void putHub(SensorsSnapshotAvro snapshot) {
+        removeHub(snapshot.getHubId());
+        snapshot.getSensorsState().forEach((sensorId, state) -> putSensorState(snapshot.getHubId(), sensorId, state));
+    }
+
+    @Override
+    public void removeHub(String hubId) {
+        HubSlots hub = hubs.remove(hubId);
+        if (hub == null) {
+            return;
+        }
+        sizeInBytes -= HUB_INDEX_OVERHEAD_BYTES + 2L * hubId.length();
+        for (int i = 0; i < hub.sensorIds.length; i++) {
+            releaseSlot(hub.slots[i]);
+            sizeInBytes -= SENSOR_INDEX_OVERHEAD_BYTES + 2L * hub.sensorIds[i].length();
+        }
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        int slot = nextSlot++;
+        if ((slot >>> slabShift) == slabs.size()) {
+            int slabBytes = (slabMask + 1) * SLOT_BYTES;
+            slabs.add(ByteBuffer.allocateDirect(slabBytes));
+            sizeInBytes += slabBytes;
+        }
+        return slot;
+    }
+
+    private void releaseSlot(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void write(int slot, SensorStateAvro state) {
+        ByteBuffer slab = slabs.get(slot >>> slabShift);
+        int base = (slot & slabMask) * SLOT_BYTES;
+        int f0 = 0;
+        int f1 = 0;
+        int f2 = 0;
+        int type;
+
+        Object data = state.getData();
+        if (data instanceof ClimateSensorAvro climate) {
+            type = CLIMATE;
+            f0 = climate.getTemperatureC();
+            f1 = climate.getHumidity();
+            f2 = climate.getCo2Level();
+        } else if (data instanceof LightSensorAvro light) {
+            type = LIGHT;
+            f0 = light.getLinkQuality();
+            f1 = light.getLuminosity();
+        } else if (data instanceof MotionSensorAvro motion) {
+            type = MOTION;
+            f0 = motion.getLinkQuality();
+            f1 = motion.getMotion() ? 1 : 0;
+            f2 = motion.getVoltage();
+        } else if (data instanceof SwitchSensorAvro switchSensor) {
+            type = SWITCH;
+            f0 = switchSensor.getState() ? 1 : 0;
+        } else if (data instanceof TemperatureSensorAvro temperature) {
+            type = TEMPERATURE;
+            f0 = temperature.getTemperatureC();
+            f1 = temperature.getTemperatureF();
+        } else {
+            throw new IllegalArgumentException("Unsupported sensor data: "
+                    + (data == null ? "null" : data.getClass().getSimpleName()));
+        }
+
+        slab.putLong(base + TIMESTAMP_OFFSET, state.getTimestamp().toEpochMilli());
+        slab.putInt(base + TYPE_OFFSET, type);
+        slab.putInt(base + FIELDS_OFFSET, f0);
+        slab.putInt(base + FIELDS_OFFSET + 4, f1);
+        slab.putInt(base + FIELDS_OFFSET + 8, f2);
+    }
+
+    private SensorStateAvro read(int slot) {
+        ByteBuffer slab = slabs.get(slot >>> slabShift);
+        int base = (slot & slabMask) * SLOT_BYTES;
+        int f0 = slab.getInt(base + FIELDS_OFFSET);
+        int f1 = slab.getInt(base + FIELDS_OFFSET + 4);
+        int f2 = slab.getInt(base + FIELDS_OFFSET + 8);
+
+        Object data = switch (slab.getInt(base + TYPE_OFFSET)) {
+            case CLIMATE -> new ClimateSensorAvro(f0, f1, f2);
+            case LIGHT -> new LightSensorAvro(f0, f1);
+            case MOTION -> new MotionSensorAvro(f0, f1 != 0, f2);
+            case SWITCH -> new SwitchSensorAvro(f0 != 0);
+            case TEMPERATURE -> new TemperatureSensorAvro(f0, f1);
+            default -> throw new IllegalStateException("Corrupted state slot " + slot);
+        };
+        return new SensorStateAvro(Instant.ofEpochMilli(slab.getLong(base + TIMESTAMP_OFFSET)), data);
+    }
+
+    /**
+     * Индекс датчиков хаба: отсортированные идентификаторы и номера слотов на тех же позициях.
+     */
+    private static final class HubSlots {
+        private String[] sensorIds = NO_SENSORS;
+        private int[] slots = NO_SLOTS;
+
+        private void insert(int index, String sensorId, int slot) {
+            int length = sensorIds.length;
+            String[] ids = new String[length + 1];
+            int[] slotIds = new int[length + 1];
+            System.arraycopy(sensorIds, 0, ids, 0, index);
+            System.arraycopy(slots, 0, slotIds, 0, index);
+            ids[index] = sensorId;
+            slotIds[index] = slot;
+            System.arraycopy(sensorIds, index, ids, index + 1, length - index);
+            System.arraycopy(slots, index, slotIds, index + 1, length - index);
+            sensorIds = ids;
+            slots = slotIds;
+        }
+
+        private void remove(int index) {
+            int length = sensorIds.length;
+            String[] ids = new String[length - 1];
+            int[] slotIds = new int[length - 1];
+            System.arraycopy(sensorIds, 0, ids, 0, index);
+            System.arraycopy(slots, 0, slotIds, 0, index);
+            System.arraycopy(sensorIds, index + 1, ids, index, length - index - 1);
+            System.arraycopy(slots, index + 1, slotIds, index, length - index - 1);
+            sensorIds = ids;
+            slots = slotIds;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ru.yandex.practicum.telemetry.aggregator.state;
+
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+/**
+ * Холодное хранилище снапшотов хабов, выгруженных из памяти. Снапшоты сгруппированы по номеру партиции
+ * событий хаба: когда партиция уходит к другому экземпляру, её снапшоты устаревают и удаляются целиком.
+ */
+public interface SnapshotColdStore {
+
+    void save(SensorsSnapshotAvro snapshot, int partition);
+
+    /**
+     * Забирает снапшот хаба из хранилища: после загрузки хаб снова живёт в памяти.
+     */
+    Optional<SensorsSnapshotAvro> take(String hubId, int partition);
+
+    /**
+     * Партиция, под которой сохранён снапшот хаба, если он есть в хранилище.
+     */
+    OptionalInt partitionOf(String hubId);
+
+    /**
+     * Удаляет снапшоты хабов указанных партиций.
+     */
+    void dropPartitions(Collection<Integer> partitions);
+
+    int size();
+
+    long sizeInBytes();
+}
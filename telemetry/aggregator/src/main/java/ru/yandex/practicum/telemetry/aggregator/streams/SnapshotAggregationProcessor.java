@@ -0,0 +1,69 @@
+package ru.yandex.practicum.telemetry.aggregator.streams;
+
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueStore;
+import ru.practicum.kafka.serializer.header.EventHeaders;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.telemetry.aggregator.service.SensorStateUpdater;
+import ru.yandex.practicum.telemetry.aggregator.service.SnapshotVersions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Обновляет снапшот хаба в хранилище состояния и передаёт дальше только изменившиеся снапшоты
+ * с версией в заголовке snapshot-version.
+ */
+class SnapshotAggregationProcessor implements Processor<String, SensorEventAvro, String, SensorsSnapshotAvro> {
+
+    private final String storeName;
+    private final SensorStateUpdater stateUpdater;
+
+    private ProcessorContext<String, SensorsSnapshotAvro> context;
+    private KeyValueStore<String, SensorsSnapshotAvro> snapshots;
+
+    SnapshotAggregationProcessor(String storeName, SensorStateUpdater stateUpdater) {
+        this.storeName = storeName;
+        this.stateUpdater = stateUpdater;
+    }
+
+    @Override
+    public void init(ProcessorContext<String, SensorsSnapshotAvro> context) {
+        this.context = context;
+        this.snapshots = context.getStateStore(storeName);
+    }
+
+    @Override
+    public void process(Record<String, SensorEventAvro> record) {
+        SensorEventAvro event = record.value();
+        if (event == null || event.getHubId() == null || event.getId() == null) {
+            return;
+        }
+
+        SensorsSnapshotAvro snapshot = snapshots.get(event.getHubId());
+        SensorStateAvro oldState = snapshot == null ? null : snapshot.getSensorsState().get(event.getId());
+        if (!stateUpdater.shouldApply(oldState, event)) {
+            return;
+        }
+
+        Map<String, SensorStateAvro> sensorStates = snapshot == null
+                ? new HashMap<>()
+                : new HashMap<>(snapshot.getSensorsState());
+        sensorStates.put(event.getId(), stateUpdater.toState(event));
+        SensorsSnapshotAvro updatedSnapshot = SensorsSnapshotAvro.newBuilder()
+                .setHubId(event.getHubId())
+                .setTimestamp(event.getTimestamp())
+                .setSensorsState(sensorStates)
+                .build();
+
+        snapshots.put(event.getHubId(), updatedSnapshot);
+        // Заголовки события (тип, схема) к снапшоту не относятся — заменяем их версией снапшота
+        context.forward(record.withKey(event.getHubId())
+                .withValue(updatedSnapshot)
+                .withHeaders(EventHeaders.ofSnapshotVersion(SnapshotVersions.of(updatedSnapshot))));
+    }
+}
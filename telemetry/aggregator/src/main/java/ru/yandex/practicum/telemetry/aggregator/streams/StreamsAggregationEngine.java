@@ -0,0 +1,144 @@
+package ru.yandex.practicum.telemetry.aggregator.streams;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.processor.TopicNameExtractor;
+import org.apache.kafka.streams.state.Stores;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.kafka.serializer.deserializer.SensorEventDeserializer;
+import ru.practicum.kafka.serializer.deserializer.SensorsSnapshotDeserializer;
+import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.telemetry.aggregator.AggregationEngine;
+import ru.yandex.practicum.telemetry.aggregator.config.AggregatorProperties;
+import ru.yandex.practicum.telemetry.aggregator.serializer.GeneralAvroSerializer;
+import ru.yandex.practicum.telemetry.aggregator.service.SensorStateUpdater;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Агрегация на Kafka Streams: снапшоты хабов хранятся в персистентном хранилище RocksDB
+ * с changelog-топиком, партиции топика событий распределяются между экземплярами и потоками,
+ * а резервные реплики хранилища ускоряют переключение при падении экземпляра.
+ * События датчиков должны иметь ключ hubId — так их публикует collector, поэтому
+ * топология не перераспределяет поток.
+ * <p>
+ * С включёнными полосами топология читает и топик быстрых событий. Партиции обоих топиков с одним номером
+ * попадают в одну задачу и делят хранилище, поэтому снапшот хаба остаётся единым, а снапшоты по событиям
+ * быстрого топика уходят в топик быстрых снапшотов. Приоритета чтения, как в цикле poll, здесь нет:
+ * Kafka Streams выбирает записи по времени, — но ни одно событие не теряется, а analyzer упорядочивает
+ * снапшоты двух топиков по версии.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "aggregator.engine", havingValue = "streams")
+public class StreamsAggregationEngine implements AggregationEngine {
+
+    static final String SNAPSHOT_STORE = "hub-snapshots";
+
+    private final SensorStateUpdater stateUpdater;
+    private final AggregatorProperties.Streams properties;
+    private final AggregatorProperties.Lanes lanes;
+
+    @Value("${aggregator.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+
+    @Value("${aggregator.topics.sensors-events}")
+    private String sensorsEventsTopic;
+
+    @Value("${aggregator.topics.snapshots-events}")
+    private String snapshotsEventsTopic;
+
+    @Value("${aggregator.topics.sensors-fast-events:}")
+    private String sensorsFastEventsTopic;
+
+    @Value("${aggregator.topics.snapshots-fast-events:}")
+    private String snapshotsFastEventsTopic;
+
+    public StreamsAggregationEngine(SensorStateUpdater stateUpdater, AggregatorProperties aggregatorProperties) {
+        this.stateUpdater = stateUpdater;
+        this.properties = aggregatorProperties.getStreams();
+        this.lanes = aggregatorProperties.getLanes();
+    }
+
+    @Override
+    public void start() {
+        KafkaStreams streams = new KafkaStreams(buildTopology(), streamsConfig());
+        CountDownLatch stopped = new CountDownLatch(1);
+
+        streams.setStateListener((newState, oldState) -> {
+            log.info("Kafka Streams state {} -> {}", oldState, newState);
+            if (newState == KafkaStreams.State.NOT_RUNNING || newState == KafkaStreams.State.ERROR) {
+                stopped.countDown();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            log.info("Shutdown hook - closing Kafka Streams");
+            streams.close();
+            stopped.countDown();
+        }));
+
+        streams.start();
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            streams.close();
+            log.info("Aggregator stopped");
+        }
+    }
+
+    Topology buildTopology() {
+        Serde<SensorEventAvro> eventSerde =
+                Serdes.serdeFrom(new GeneralAvroSerializer<>(), new SensorEventDeserializer());
+        Serde<SensorsSnapshotAvro> snapshotSerde =
+                Serdes.serdeFrom(new GeneralAvroSerializer<>(), new SensorsSnapshotDeserializer());
+
+        StreamsBuilder builder = new StreamsBuilder();
+        builder.addStateStore(Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(SNAPSHOT_STORE), Serdes.String(), snapshotSerde));
+
+        if (!lanes.isEnabled()) {
+            builder.stream(sensorsEventsTopic, Consumed.with(Serdes.String(), eventSerde))
+                    .process(() -> new SnapshotAggregationProcessor(SNAPSHOT_STORE, stateUpdater), SNAPSHOT_STORE)
+                    .to(snapshotsEventsTopic, Produced.with(Serdes.String(), snapshotSerde));
+            return builder.build();
+        }
+
+        if (sensorsFastEventsTopic.isBlank() || snapshotsFastEventsTopic.isBlank()) {
+            throw new IllegalStateException("Priority lanes need aggregator.topics.sensors-fast-events and snapshots-fast-events");
+        }
+        // Топик снапшота определяется топиком события, из которого он получен
+        TopicNameExtractor<String, SensorsSnapshotAvro> snapshotTopic = (hubId, snapshot, context) ->
+                sensorsFastEventsTopic.equals(context.topic()) ? snapshotsFastEventsTopic : snapshotsEventsTopic;
+        builder.stream(List.of(sensorsEventsTopic, sensorsFastEventsTopic), Consumed.with(Serdes.String(), eventSerde))
+                .process(() -> new SnapshotAggregationProcessor(SNAPSHOT_STORE, stateUpdater), SNAPSHOT_STORE)
+                .to(snapshotTopic, Produced.with(Serdes.String(), snapshotSerde));
+
+        return builder.build();
+    }
+
+    private Properties streamsConfig() {
+        Properties config = new Properties();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, properties.getApplicationId());
+        config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(StreamsConfig.STATE_DIR_CONFIG, properties.getStateDir().toString());
+        config.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, properties.getNumStreamThreads());
+        config.put(StreamsConfig.NUM_STANDBY_REPLICAS_CONFIG, properties.getNumStandbyReplicas());
+        config.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, properties.getCommitInterval().toMillis());
+        config.put(StreamsConfig.PROCESSING_GUARANTEE_CONFIG, properties.getProcessingGuarantee());
+        return config;
+    }
+}
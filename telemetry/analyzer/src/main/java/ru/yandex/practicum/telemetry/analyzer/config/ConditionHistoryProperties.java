@@ -0,0 +1,19 @@
+package ru.yandex.practicum.telemetry.analyzer.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "analyzer.condition-history")
+public class ConditionHistoryProperties {
+    // Сколько последних показаний хранится на значение датчика; память — 12 байт на показание
+    private int capacity = 64;
+    // История хаба без снапшотов дольше этого срока удаляется (например, после переезда его партиции)
+    private Duration idleTtl = Duration.ofHours(1);
+    // Как часто искать такие хабы
+    private Duration sweepInterval = Duration.ofMinutes(1);
+}
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.telemetry.analyzer.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "analyzer.scenarios")
+public class ScenarioSourceProperties {
+    // Откуда брать правила при проверке снапшотов: database — запросы в Postgres, changelog — память,
+    // восстановленная из compacted-топика сценариев
+    private String source = "database";
+    // Сколько source: database держит скомпилированные правила хаба: изменение сценариев,
+    // применённое другим экземпляром анализатора, видно не позже этого срока
+    private Duration cacheTtl = Duration.ofSeconds(30);
+    // Публиковать изменения сценариев в compacted-топик после коммита в Postgres
+    private boolean publishChangelog = false;
+    // Один раз при старте опубликовать все сценарии из Postgres, чтобы заполнить новый топик
+    private boolean seedChangelog = false;
+    private String bootstrapServer = "localhost:9092";
+    // Пауза перед повторной публикацией изменения, которое Kafka не приняла
+    private Duration publishRetryBackoff = Duration.ofSeconds(1);
+    // Сколько ждать вычитки назначенных партиций топика сценариев
+    private Duration restoreTimeout = Duration.ofSeconds(60);
+}
@@ -0,0 +1,42 @@
+package ru.yandex.practicum.telemetry.analyzer.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "analyzer.snapshot-processing")
+public class SnapshotProcessingProperties {
+    // Количество воркеров; снапшоты одного хаба всегда попадают в один и тот же воркер
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    private Conflation conflation = new Conflation();
+    private Lanes lanes = new Lanes();
+
+    @Getter
+    @Setter
+    public static class Conflation {
+        // Оценивать только последний снапшот хаба в пачке для всех хабов
+        private boolean enabled = false;
+        // Хабы, для которых схлопывание включено, даже если оно выключено глобально
+        private Set<String> hubIds = new HashSet<>();
+
+        public boolean isEnabledFor(String hubId) {
+            return enabled || hubIds.contains(hubId);
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Lanes {
+        // Читать топик снапшотов быстрой полосы раньше основного
+        private boolean enabled = false;
+        // Дольше этого основной топик не простаивает, даже если быстрая полоса не успевает опустеть
+        private Duration maxSlowPause = Duration.ofSeconds(1);
+    }
+}
@@ -3,10 +3,12 @@ package ru.yandex.practicum.telemetry.analyzer.handler.hub;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;  // ← ДОБАВЬТЕ!
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.kafka.telemetry.event.DeviceRemovedEventAvro;
 import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
 import ru.yandex.practicum.telemetry.analyzer.handler.HubEventHandler;
 import ru.yandex.practicum.telemetry.analyzer.repository.SensorRepository;
+import ru.yandex.practicum.telemetry.analyzer.service.ScenarioRuleSource;
 
 @Slf4j  // ← ДОБАВЬТЕ!
 @Component
@@ -14,6 +16,7 @@ import ru.yandex.practicum.telemetry.analyzer.repository.SensorRepository;
 public class DeviceRemovedEventHandler implements HubEventHandler {
 
     private final SensorRepository repository;
+    private final ScenarioRuleSource scenarioRuleSource;
 
     @Override
     public String getEventType() {
@@ -21,6 +24,7 @@ public class DeviceRemovedEventHandler implements HubEventHandler {
     }
 
     @Override
+    @Transactional
     public void handle(HubEventAvro event) {
         log.info("🔴 DEVICE_REMOVED EVENT START");
 
@@ -30,6 +34,8 @@ public class DeviceRemovedEventHandler implements HubEventHandler {
                 event.getHubId());
 
         repository.deleteByIdAndHubId(deviceRemovedEventAvro.getId(), event.getHubId());
+        // Условия и действия сценариев на этом датчике больше не действуют
+        scenarioRuleSource.onScenariosChanged(event.getHubId());
 
         log.info("✅ Sensor removed");
         log.info("🔴 DEVICE_REMOVED EVENT END");
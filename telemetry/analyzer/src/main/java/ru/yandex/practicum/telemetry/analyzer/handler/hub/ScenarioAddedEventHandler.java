@@ -3,12 +3,22 @@ package ru.yandex.practicum.telemetry.analyzer.handler.hub;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.kafka.telemetry.event.*;
 import ru.yandex.practicum.telemetry.analyzer.handler.HubEventHandler;
 import ru.yandex.practicum.telemetry.analyzer.model.*;
 import ru.yandex.practicum.telemetry.analyzer.repository.*;
+import ru.yandex.practicum.telemetry.analyzer.service.ScenarioChangelogPublisher;
+import ru.yandex.practicum.telemetry.analyzer.service.ScenarioRuleSource;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
@@ -19,8 +29,8 @@ public class ScenarioAddedEventHandler implements HubEventHandler {
     private final ScenarioRepository scenarioRepository;
     private final ConditionRepository conditionRepository;
     private final ActionRepository actionRepository;
-    private final ScenarioActionRepository scenarioActionRepository;
-    private final ScenarioConditionRepository scenarioConditionRepository;
+    private final ScenarioChangelogPublisher scenarioChangelogPublisher;
+    private final ScenarioRuleSource scenarioRuleSource;
 
     @Override
     public String getEventType() {
@@ -28,6 +38,7 @@ public class ScenarioAddedEventHandler implements HubEventHandler {
     }
 
     @Override
+    @Transactional
     public void handle(HubEventAvro event) {
         log.info("=== SCENARIO_ADDED EVENT START ===");
         log.info("Hub: {}", event.getHubId());
@@ -38,81 +49,124 @@ public class ScenarioAddedEventHandler implements HubEventHandler {
                 scenarioAddedEventAvro.getConditions().size(),
                 scenarioAddedEventAvro.getActions().size());
 
+        // Все датчики сценария загружаем одним запросом
+        Map<String, Sensor> sensors = loadSensors(event.getHubId(), scenarioAddedEventAvro);
+
         // Проверяем существование сценария
         Optional<Scenario> existingScenario = scenarioRepository.findByHubIdAndName(
                 event.getHubId(), scenarioAddedEventAvro.getName());
 
+        Scenario scenario;
         if (existingScenario.isPresent()) {
             log.info("Updating existing scenario: {}", scenarioAddedEventAvro.getName());
-            Scenario prevScenario = existingScenario.get();
-            scenarioActionRepository.deleteByScenario(prevScenario);
-            scenarioConditionRepository.deleteByScenario(prevScenario);
-            scenarioRepository.deleteByHubIdAndName(
-                    prevScenario.getHubId(),
-                    prevScenario.getName()
-            );
+            scenario = existingScenario.get();
+            // Старые связи удаляются через orphanRemoval, затем — их условия и действия
+            List<Long> conditionIds = scenario.getConditions().stream().map(link -> link.getId().getCondition()).toList();
+            List<Long> actionIds = scenario.getActions().stream().map(link -> link.getId().getAction()).toList();
+            scenario.getConditions().clear();
+            scenario.getActions().clear();
+            scenarioRepository.flush();
+            conditionRepository.deleteAllByIdInBatch(conditionIds);
+            actionRepository.deleteAllByIdInBatch(actionIds);
         } else {
             log.info("Creating new scenario: {}", scenarioAddedEventAvro.getName());
+            // id выдаётся из последовательности сразу, сама вставка откладывается до flush
+            scenario = scenarioRepository.save(Scenario.builder()
+                    .name(scenarioAddedEventAvro.getName())
+                    .hubId(event.getHubId())
+                    .build());
         }
 
-        Scenario scenarioToUpload = Scenario.builder()
-                .name(scenarioAddedEventAvro.getName())
-                .hubId(event.getHubId())
-                .build();
-
-        Scenario savedScenario = scenarioRepository.save(scenarioToUpload);
-        log.info("✅ Scenario saved with ID: {}", savedScenario.getId());
+        saveConditions(scenario, sensors, scenarioAddedEventAvro);
+        saveActions(scenario, sensors, scenarioAddedEventAvro);
+        log.info("✅ Scenario saved with ID: {}", scenario.getId());
 
-        saveConditions(savedScenario, event, scenarioAddedEventAvro);
-        saveActions(savedScenario, event, scenarioAddedEventAvro);
+        scenarioRuleSource.onScenariosChanged(event.getHubId());
+        if (scenarioChangelogPublisher.isEnabled()) {
+            scenarioChangelogPublisher.publishAfterCommit(toDefinition(event.getHubId(), scenarioAddedEventAvro));
+        }
 
         log.info("=== SCENARIO_ADDED EVENT END ===");
     }
 
-    private void saveConditions(Scenario scenario, HubEventAvro event, ScenarioAddedEventAvro avro) {
+    private Map<String, Sensor> loadSensors(String hubId, ScenarioAddedEventAvro avro) {
+        Set<String> sensorIds = new HashSet<>();
+        avro.getConditions().forEach(condition -> sensorIds.add(condition.getSensorId()));
+        avro.getActions().forEach(action -> sensorIds.add(action.getSensorId()));
+
+        Map<String, Sensor> sensors = sensorRepository.findAllByIdInAndHubId(sensorIds, hubId).stream()
+                .collect(Collectors.toMap(Sensor::getId, Function.identity()));
+
+        for (String sensorId : sensorIds) {
+            if (!sensors.containsKey(sensorId)) {
+                throw new IllegalArgumentException("Sensor not found: " + sensorId + " for hub: " + hubId);
+            }
+        }
+        return sensors;
+    }
+
+    private void saveConditions(Scenario scenario, Map<String, Sensor> sensors, ScenarioAddedEventAvro avro) {
         log.info("Saving {} conditions...", avro.getConditions().size());
 
+        List<Condition> conditions = new ArrayList<>(avro.getConditions().size());
         for (ScenarioConditionAvro conditionAvro : avro.getConditions()) {
-            // Ищем сенсор
-            Sensor sensor = sensorRepository.findByIdAndHubId(
-                            conditionAvro.getSensorId(), event.getHubId())
-                    .orElseThrow(() -> new IllegalArgumentException(
-                            "Sensor not found: " + conditionAvro.getSensorId() +
-                                    " for hub: " + event.getHubId()));
-
             // ПРАВИЛЬНОЕ ПРЕОБРАЗОВАНИЕ (убираем toString() и valueOf()!)
             ConditionTypeAvro typeAvro = conditionAvro.getType();  // Уже правильный тип!
             ConditionOperationAvro operationAvro = conditionAvro.getOperation();  // Уже правильный тип!
             Integer value = extractConditionValue(conditionAvro.getValue());
 
-            log.info("Saving condition: sensor={}, type={}, operation={}, value={} (original: {})",
-                    sensor.getId(), typeAvro, operationAvro, value, conditionAvro.getValue());
-
-            Condition condition = conditionRepository.save(
-                    Condition.builder()
-                            .type(typeAvro)
-                            .operation(operationAvro)
-                            .value(value)
-                            .build()
-            );
-
-            scenarioConditionRepository.save(
-                    ScenarioCondition.builder()
-                            .scenario(scenario)
-                            .sensor(sensor)
-                            .condition(condition)
-                            .id(new ScenarioConditionId(
-                                    scenario.getId(),
-                                    sensor.getId(),
-                                    condition.getId()
-                            ))
-                            .build()
-            );
-
-            log.info("✅ Condition saved with ID: {}", condition.getId());
+            log.debug("Saving condition: sensor={}, type={}, operation={}, value={} (original: {}), window={}",
+                    conditionAvro.getSensorId(), typeAvro, operationAvro, value, conditionAvro.getValue(),
+                    conditionAvro.getWindowSeconds());
+
+            conditions.add(Condition.builder()
+                    .type(typeAvro)
+                    .operation(operationAvro)
+                    .value(value)
+                    .windowSeconds(conditionAvro.getWindowSeconds())
+                    .build());
+        }
+
+        // Вставки уходят одним JDBC batch при flush
+        List<Condition> savedConditions = conditionRepository.saveAll(conditions);
+
+        for (int i = 0; i < savedConditions.size(); i++) {
+            Sensor sensor = sensors.get(avro.getConditions().get(i).getSensorId());
+            Condition condition = savedConditions.get(i);
+
+            // Связь сохраняется каскадом от сценария
+            scenario.getConditions().add(ScenarioCondition.builder()
+                    .scenario(scenario)
+                    .sensor(sensor)
+                    .condition(condition)
+                    .id(new ScenarioConditionId(
+                            scenario.getId(),
+                            sensor.getId(),
+                            condition.getId()
+                    ))
+                    .build());
         }
     }
 
+    private ScenarioDefinitionAvro toDefinition(String hubId, ScenarioAddedEventAvro avro) {
+        List<ScenarioConditionDefinitionAvro> conditions = new ArrayList<>(avro.getConditions().size());
+        for (ScenarioConditionAvro conditionAvro : avro.getConditions()) {
+            conditions.add(ScenarioConditionDefinitionAvro.newBuilder()
+                    .setSensorId(conditionAvro.getSensorId())
+                    .setType(conditionAvro.getType())
+                    .setOperation(conditionAvro.getOperation())
+                    .setValue(extractConditionValue(conditionAvro.getValue()))
+                    .setWindowSeconds(conditionAvro.getWindowSeconds())
+                    .build());
+        }
+        return ScenarioDefinitionAvro.newBuilder()
+                .setHubId(hubId)
+                .setName(avro.getName())
+                .setConditions(conditions)
+                .setActions(avro.getActions())
+                .build();
+    }
+
     private Integer extractConditionValue(Object value) {
         if (value == null) {
             log.info("Condition value is null, returning null");
@@ -158,44 +212,39 @@ public class ScenarioAddedEventHandler implements HubEventHandler {
         }
     }
 
-    private void saveActions(Scenario scenario, HubEventAvro event, ScenarioAddedEventAvro avro) {
+    private void saveActions(Scenario scenario, Map<String, Sensor> sensors, ScenarioAddedEventAvro avro) {
         log.info("Saving {} actions...", avro.getActions().size());
 
+        List<Action> actions = new ArrayList<>(avro.getActions().size());
         for (DeviceActionAvro actionAvro : avro.getActions()) {
-            // Ищем сенсор
-            Sensor sensor = sensorRepository.findByIdAndHubId(
-                            actionAvro.getSensorId(), event.getHubId())
-                    .orElseThrow(() -> new IllegalArgumentException(
-                            "Sensor not found: " + actionAvro.getSensorId() +
-                                    " for hub: " + event.getHubId()));
-
             // ПРАВИЛЬНОЕ ПРЕОБРАЗОВАНИЕ
             ActionTypeAvro typeAvro = actionAvro.getType();  // Уже правильный тип!
 
-            log.info("Saving action: sensor={}, type={}, value={}",
-                    sensor.getId(), typeAvro, actionAvro.getValue());
-
-            Action action = actionRepository.save(
-                    Action.builder()
-                            .type(typeAvro)
-                            .value(actionAvro.getValue())
-                            .build()
-            );
-
-            scenarioActionRepository.save(
-                    ScenarioAction.builder()
-                            .scenario(scenario)
-                            .sensor(sensor)
-                            .action(action)
-                            .id(new ScenarioActionId(
-                                    scenario.getId(),
-                                    sensor.getId(),
-                                    action.getId()
-                            ))
-                            .build()
-            );
-
-            log.info("✅ Action saved with ID: {}", action.getId());
+            log.debug("Saving action: sensor={}, type={}, value={}",
+                    actionAvro.getSensorId(), typeAvro, actionAvro.getValue());
+
+            actions.add(Action.builder()
+                    .type(typeAvro)
+                    .value(actionAvro.getValue())
+                    .build());
+        }
+
+        List<Action> savedActions = actionRepository.saveAll(actions);
+
+        for (int i = 0; i < savedActions.size(); i++) {
+            Sensor sensor = sensors.get(avro.getActions().get(i).getSensorId());
+            Action action = savedActions.get(i);
+
+            scenario.getActions().add(ScenarioAction.builder()
+                    .scenario(scenario)
+                    .sensor(sensor)
+                    .action(action)
+                    .id(new ScenarioActionId(
+                            scenario.getId(),
+                            sensor.getId(),
+                            action.getId()
+                    ))
+                    .build());
         }
     }
 }
\ No newline at end of file
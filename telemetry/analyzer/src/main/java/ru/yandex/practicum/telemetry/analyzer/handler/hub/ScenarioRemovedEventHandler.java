@@ -3,14 +3,18 @@ package ru.yandex.practicum.telemetry.analyzer.handler.hub;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;  // ← ДОБАВЬТЕ!
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
 import ru.yandex.practicum.kafka.telemetry.event.ScenarioRemovedEventAvro;
 import ru.yandex.practicum.telemetry.analyzer.handler.HubEventHandler;
 import ru.yandex.practicum.telemetry.analyzer.model.Scenario;
-import ru.yandex.practicum.telemetry.analyzer.repository.ScenarioActionRepository;
-import ru.yandex.practicum.telemetry.analyzer.repository.ScenarioConditionRepository;
+import ru.yandex.practicum.telemetry.analyzer.repository.ActionRepository;
+import ru.yandex.practicum.telemetry.analyzer.repository.ConditionRepository;
 import ru.yandex.practicum.telemetry.analyzer.repository.ScenarioRepository;
+import ru.yandex.practicum.telemetry.analyzer.service.ScenarioChangelogPublisher;
+import ru.yandex.practicum.telemetry.analyzer.service.ScenarioRuleSource;
 
+import java.util.List;
 import java.util.Optional;
 
 @Slf4j  // ← ДОБАВЬТЕ!
@@ -19,8 +23,10 @@ import java.util.Optional;
 public class ScenarioRemovedEventHandler implements HubEventHandler {
 
     private final ScenarioRepository scenarioRepository;
-    private final ScenarioActionRepository scenarioActionRepository;
-    private final ScenarioConditionRepository scenarioConditionRepository;
+    private final ConditionRepository conditionRepository;
+    private final ActionRepository actionRepository;
+    private final ScenarioChangelogPublisher scenarioChangelogPublisher;
+    private final ScenarioRuleSource scenarioRuleSource;
 
     @Override
     public String getEventType() {
@@ -28,6 +34,7 @@ public class ScenarioRemovedEventHandler implements HubEventHandler {
     }
 
     @Override
+    @Transactional
     public void handle(HubEventAvro event) {
         log.info("🔴 SCENARIO_REMOVED EVENT START");
 
@@ -41,10 +48,16 @@ public class ScenarioRemovedEventHandler implements HubEventHandler {
 
         if (scenarioOpt.isPresent()) {
             Scenario scenario = scenarioOpt.get();
-            scenarioActionRepository.deleteByScenario(scenario);
-            scenarioConditionRepository.deleteByScenario(scenario);
-            scenarioRepository.deleteByHubIdAndName(event.getHubId(), scenario.getName());
+            List<Long> conditionIds = scenario.getConditions().stream().map(link -> link.getId().getCondition()).toList();
+            List<Long> actionIds = scenario.getActions().stream().map(link -> link.getId().getAction()).toList();
+            // Связи с условиями и действиями удаляются каскадом, после них — сами условия и действия
+            scenarioRepository.delete(scenario);
+            scenarioRepository.flush();
+            conditionRepository.deleteAllByIdInBatch(conditionIds);
+            actionRepository.deleteAllByIdInBatch(actionIds);
             log.info("✅ Scenario removed: {}", scenario.getName());
+            scenarioRuleSource.onScenariosChanged(event.getHubId());
+            scenarioChangelogPublisher.removeAfterCommit(event.getHubId(), scenario.getName());
         } else {
             log.warn("Scenario not found: {}", scenarioRemovedEventAvro.getName());
         }
@@ -2,15 +2,21 @@ package ru.yandex.practicum.telemetry.analyzer.kafka;
 
 import lombok.Getter;
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.CooperativeStickyAssignor;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.RangeAssignor;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import ru.practicum.kafka.serializer.deserializer.BaseAvroDeserializer;
 import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.telemetry.analyzer.config.SnapshotProcessingProperties;
 
 import java.util.Properties;
 
+@Slf4j
 @Getter
 @Setter
 @Configuration
@@ -24,9 +30,23 @@ public class SnapshotConsumerConfig {
     private Boolean enableAutoCommit;
     private Integer timeOut;
     private String autoOffsetReset;
+    // Поля payload'ов, которые анализатор не читает и которые можно не декодировать
+    private String skipFields;
+    // Интернирование идентификаторов хабов и датчиков через общий словарь (IdDictionary)
+    private boolean internIds;
+    // Пусто — по режиму полос. Без полос cooperative-sticky: при ребалансировке отбираются только
+    // переезжающие партиции, остальные обрабатываются без остановки. С полосами range: он назначает
+    // экземпляру одинаковые номера партиций обоих топиков снапшотов, и снапшоты хаба из быстрой
+    // и медленной полосы попадают в одно состояние хаба (история условий, версии, правила)
+    private String partitionAssignmentStrategy;
+    // Статическое членство: перезапуск экземпляра с тем же id в пределах session-timeout
+    // не вызывает ребалансировку. Должен быть уникальным и постоянным для экземпляра; пусто — выключено
+    private String groupInstanceId;
+    // Сколько группа ждёт перезапускающийся статический экземпляр, прежде чем отдать его партиции
+    private Integer sessionTimeoutMs;
 
     @Bean("snapshotKafkaConsumer")
-    public KafkaConsumer<String, SensorsSnapshotAvro> snapshotKafkaConsumer() {
+    public KafkaConsumer<String, SensorsSnapshotAvro> snapshotKafkaConsumer(SnapshotProcessingProperties processing) {
         Properties config = new Properties();
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServer);
         config.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
@@ -34,7 +54,30 @@ public class SnapshotConsumerConfig {
         config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, keyDeserializer);
         config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, valueDeserializer);
         config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, autoOffsetReset);
+        config.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG,
+                assignmentStrategy(processing.getLanes().isEnabled()));
+        if (groupInstanceId != null && !groupInstanceId.isBlank()) {
+            config.put(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG, groupInstanceId);
+        }
+        if (sessionTimeoutMs != null) {
+            config.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, sessionTimeoutMs);
+        }
+        config.put(BaseAvroDeserializer.INTERN_IDS_CONFIG, internIds);
+        if (skipFields != null && !skipFields.isBlank()) {
+            config.put(BaseAvroDeserializer.SKIP_FIELDS_CONFIG, skipFields);
+        }
 
         return new KafkaConsumer<>(config);
     }
+
+    private String assignmentStrategy(boolean lanes) {
+        if (partitionAssignmentStrategy == null || partitionAssignmentStrategy.isBlank()) {
+            return lanes ? RangeAssignor.class.getName() : CooperativeStickyAssignor.class.getName();
+        }
+        if (lanes && !partitionAssignmentStrategy.contains(RangeAssignor.class.getSimpleName())) {
+            log.warn("{} may give fast and slow partitions of a hub to different instances; "
+                    + "per-hub state is then split between them", partitionAssignmentStrategy);
+        }
+        return partitionAssignmentStrategy;
+    }
 }
\ No newline at end of file
@@ -14,7 +14,8 @@ import ru.yandex.practicum.kafka.telemetry.event.ActionTypeAvro;
 public class Action {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "actions_id_gen")
+    @SequenceGenerator(name = "actions_id_gen", sequenceName = "actions_seq", allocationSize = 50)
     @Column(name = "id")
     private Long id;
 
@@ -15,7 +15,8 @@ import ru.yandex.practicum.kafka.telemetry.event.ConditionTypeAvro;
 public class Condition {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "conditions_id_gen")
+    @SequenceGenerator(name = "conditions_id_gen", sequenceName = "conditions_seq", allocationSize = 50)
     @Column(name = "id")
     private Long id;
 
@@ -29,4 +30,7 @@ public class Condition {
 
     @Column(name = "value", nullable = true)
     private Integer value;
+
+    @Column(name = "window_seconds", nullable = true)
+    private Integer windowSeconds;
 }
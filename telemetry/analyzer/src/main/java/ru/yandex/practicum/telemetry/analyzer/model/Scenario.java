@@ -17,7 +17,8 @@ import java.util.Set;
 public class Scenario {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "scenarios_id_gen")
+    @SequenceGenerator(name = "scenarios_id_gen", sequenceName = "scenarios_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "hub_id")
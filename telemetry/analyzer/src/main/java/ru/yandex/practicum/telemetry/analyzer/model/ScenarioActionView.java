@@ -0,0 +1,15 @@
+package ru.yandex.practicum.telemetry.analyzer.model;
+
+import ru.yandex.practicum.kafka.telemetry.event.ActionTypeAvro;
+
+/**
+ * Плоская строка действия сценария для горячего пути: без управляемых сущностей и ленивых связей.
+ */
+public record ScenarioActionView(
+        Long scenarioId,
+        String scenarioName,
+        String sensorId,
+        ActionTypeAvro type,
+        Integer value
+) {
+}
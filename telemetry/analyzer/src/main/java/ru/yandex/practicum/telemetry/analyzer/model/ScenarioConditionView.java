@@ -0,0 +1,18 @@
+package ru.yandex.practicum.telemetry.analyzer.model;
+
+import ru.yandex.practicum.kafka.telemetry.event.ConditionOperationAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionTypeAvro;
+
+/**
+ * Плоская строка условия сценария для горячего пути: без управляемых сущностей и ленивых связей.
+ */
+public record ScenarioConditionView(
+        Long scenarioId,
+        String scenarioName,
+        String sensorId,
+        ConditionTypeAvro type,
+        ConditionOperationAvro operation,
+        Integer value,
+        Integer windowSeconds
+) {
+}
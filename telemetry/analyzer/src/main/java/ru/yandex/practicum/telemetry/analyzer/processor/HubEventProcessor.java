@@ -7,11 +7,13 @@ import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.common.errors.WakeupException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
 import ru.yandex.practicum.telemetry.analyzer.handler.HubEventHandler;
 import ru.yandex.practicum.telemetry.analyzer.kafka.KafkaClient;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
@@ -23,12 +25,20 @@ public class HubEventProcessor implements Runnable {
 
     private final Consumer<String, HubEventAvro> hubConsumer;
     private final Map<Class<?>, HubEventHandler> hubEventHandlers;
+    private final TransactionTemplate transactionTemplate;
 
     @Value("${analyzer.kafka.topics.hub-events}")
     private String hubEventsTopic;
 
-    public HubEventProcessor(KafkaClient kafkaClient, List<HubEventHandler> hubEventHandlers) {
+    // Сколько событий пачки применяется в одной транзакции
+    @Value("${analyzer.hub-events.transaction-size:500}")
+    private int transactionSize;
+
+    public HubEventProcessor(KafkaClient kafkaClient,
+                             List<HubEventHandler> hubEventHandlers,
+                             TransactionTemplate transactionTemplate) {
         this.hubConsumer = kafkaClient.getHubConsumer();
+        this.transactionTemplate = transactionTemplate;
         this.hubEventHandlers = hubEventHandlers.stream()
                 .collect(Collectors.toMap(
                         handler -> getPayloadClass(handler.getEventType()),
@@ -68,24 +78,7 @@ public class HubEventProcessor implements Runnable {
                 ConsumerRecords<String, HubEventAvro> records = hubConsumer.poll(Duration.ofMillis(1000));
                 if (!records.isEmpty()) {
                     log.info("Received {} hub event records", records.count());
-                    for (ConsumerRecord<String, HubEventAvro> record : records) {
-                        try {
-                            HubEventAvro event = record.value();
-                            Object payload = event.getPayload();
-                            HubEventHandler eventHandler = hubEventHandlers.get(payload.getClass());
-
-                            if (eventHandler != null) {
-                                log.debug("Processing event with handler: {}", eventHandler.getClass().getSimpleName());
-                                eventHandler.handle(event);
-                            } else {
-                                log.warn("No handler found for event type: {}", payload.getClass().getSimpleName());
-                                // Просто логируем, не бросаем исключение
-                            }
-                        } catch (Exception e) {
-                            log.error("Error processing Kafka record: {}", e.getMessage(), e);
-                            // Продолжаем обработку следующих сообщений
-                        }
-                    }
+                    processBatch(records);
                     hubConsumer.commitAsync();
                 }
             }
@@ -101,4 +94,58 @@ public class HubEventProcessor implements Runnable {
             }
         }
     }
+
+    private void processBatch(ConsumerRecords<String, HubEventAvro> records) {
+        List<HubEventAvro> chunk = new ArrayList<>(Math.min(records.count(), transactionSize));
+        for (ConsumerRecord<String, HubEventAvro> record : records) {
+            if (record.value() == null) {
+                continue;
+            }
+            chunk.add(record.value());
+            if (chunk.size() >= transactionSize) {
+                applyInTransaction(chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            applyInTransaction(chunk);
+        }
+    }
+
+    /**
+     * Применяет группу событий в одной транзакции, чтобы вставки ушли JDBC batch'ами.
+     * Если группа не применилась, она откатывается целиком и события повторяются
+     * по одному, каждое в своей транзакции: ошибочное событие логируется и пропускается,
+     * как и раньше.
+     */
+    private void applyInTransaction(List<HubEventAvro> events) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> events.forEach(this::dispatch));
+            log.debug("Applied {} hub events in one transaction", events.size());
+        } catch (Exception e) {
+            log.warn("Failed to apply {} hub events in one transaction, retrying one by one: {}",
+                    events.size(), e.getMessage());
+            for (HubEventAvro event : events) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> dispatch(event));
+                } catch (Exception ex) {
+                    log.error("Error processing hub event for hub {}: {}", event.getHubId(), ex.getMessage(), ex);
+                    // Продолжаем обработку следующих сообщений
+                }
+            }
+        }
+    }
+
+    private void dispatch(HubEventAvro event) {
+        Object payload = event.getPayload();
+        HubEventHandler eventHandler = hubEventHandlers.get(payload.getClass());
+
+        if (eventHandler != null) {
+            log.debug("Processing event with handler: {}", eventHandler.getClass().getSimpleName());
+            eventHandler.handle(event);
+        } else {
+            log.warn("No handler found for event type: {}", payload.getClass().getSimpleName());
+            // Просто логируем, не бросаем исключение
+        }
+    }
 }
\ No newline at end of file
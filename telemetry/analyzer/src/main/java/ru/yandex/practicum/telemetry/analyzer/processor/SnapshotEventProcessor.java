@@ -1,32 +1,93 @@
 package ru.yandex.practicum.telemetry.analyzer.processor;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.WakeupException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import ru.practicum.kafka.consumer.PriorityLanes;
+import ru.practicum.kafka.serializer.header.EventHeaders;
 import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.telemetry.analyzer.config.SnapshotProcessingProperties;
 import ru.yandex.practicum.telemetry.analyzer.kafka.KafkaClient;
+import ru.yandex.practicum.telemetry.analyzer.service.ScenarioRuleSource;
 import ru.yandex.practicum.telemetry.analyzer.service.SnapshotHandler; // ← ПРАВИЛЬНЫЙ импорт!
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Component
 public class SnapshotEventProcessor {
 
     private final SnapshotHandler snapshotHandler;
+    private final ScenarioRuleSource scenarioRuleSource;
     private final Consumer<String, SensorsSnapshotAvro> snapshotConsumer;
+    private final SnapshotProcessingProperties properties;
+    private final Counter conflatedSnapshots;
+    private final Counter staleSnapshots;
+    private final Timer fastLaneLatency;
+    private final Timer slowLaneLatency;
+    private final Timer partitionWarmup;
+    // Ниже — состояние потока poll, его же меняет слушатель ребалансировки
+    // Версия и партиция последнего отправленного на обработку снапшота хаба
+    private final Map<String, HubVersion> lastVersionByHub = new HashMap<>();
+    // Offset'ы обработанных записей для коммита
+    private final Map<TopicPartition, OffsetAndMetadata> processedOffsets = new HashMap<>();
+    // Назначенные партиции на паузе до загрузки правил их хабов
+    private final Map<TopicPartition, CompletableFuture<Void>> warmingPartitions = new HashMap<>();
+    private PriorityLanes lanes;
 
     @Value("${analyzer.kafka.topics.snapshots-events}")
     private String snapshotEventsTopic;
 
-    public SnapshotEventProcessor(SnapshotHandler snapshotHandler, KafkaClient kafkaClient) {
+    @Value("${analyzer.kafka.topics.snapshots-fast-events:}")
+    private String snapshotFastEventsTopic;
+
+    public SnapshotEventProcessor(SnapshotHandler snapshotHandler,
+                                  ScenarioRuleSource scenarioRuleSource,
+                                  KafkaClient kafkaClient,
+                                  SnapshotProcessingProperties properties,
+                                  MeterRegistry meterRegistry) {
         this.snapshotHandler = snapshotHandler;
+        this.scenarioRuleSource = scenarioRuleSource;
         this.snapshotConsumer = kafkaClient.getSnapshotConsumer();
+        this.properties = properties;
+        this.conflatedSnapshots = Counter.builder("analyzer.snapshots.conflated")
+                .description("Snapshots skipped because a newer snapshot of the same hub was in the batch")
+                .register(meterRegistry);
+        this.staleSnapshots = Counter.builder("analyzer.snapshots.stale")
+                .description("Snapshots skipped because a later published snapshot of the same hub was already processed")
+                .register(meterRegistry);
+        this.fastLaneLatency = laneLatency(PriorityLanes.FAST, meterRegistry);
+        this.slowLaneLatency = laneLatency(PriorityLanes.SLOW, meterRegistry);
+        this.partitionWarmup = Timer.builder("analyzer.partitions.warmup")
+                .description("Time newly assigned snapshot partitions stay paused while hub rules are loaded")
+                .register(meterRegistry);
+    }
+
+    private static Timer laneLatency(String lane, MeterRegistry meterRegistry) {
+        return Timer.builder("analyzer.lane.latency")
+                .description("Delay from the sensor event behind a snapshot to the end of its scenario evaluation")
+                .tag("lane", lane)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
     }
 
     public void start() {
@@ -37,30 +98,32 @@ public class SnapshotEventProcessor {
             snapshotConsumer.wakeup();
         }));
 
+        SnapshotWorkerPool workerPool = new SnapshotWorkerPool(properties.getWorkers());
+        lanes = priorityLanes();
         try {
-            snapshotConsumer.subscribe(List.of(snapshotEventsTopic));
-            log.info("Subscribed to topic: {}", snapshotEventsTopic);
+            List<String> topics = lanes == null
+                    ? List.of(snapshotEventsTopic)
+                    : List.of(snapshotFastEventsTopic, snapshotEventsTopic);
+            snapshotConsumer.subscribe(topics, new RebalanceListener());
+            log.info("Subscribed to topics: {}", topics);
 
             while (true) {
                 ConsumerRecords<String, SensorsSnapshotAvro> records =
                         snapshotConsumer.poll(Duration.ofMillis(1000));
+                resumeWarmedPartitions();
+                if (lanes != null) {
+                    lanes.afterPoll(snapshotConsumer, records, System.currentTimeMillis());
+                }
 
                 if (!records.isEmpty()) {
                     log.info("Received {} snapshot records", records.count());
 
-                    for (ConsumerRecord<String, SensorsSnapshotAvro> record : records) {
-                        SensorsSnapshotAvro sensorsSnapshot = record.value();
-                        log.debug("Processing snapshot for hub: {}", sensorsSnapshot.getHubId());
-
-                        try {
-                            snapshotHandler.handle(sensorsSnapshot);
-                        } catch (Exception e) {
-                            log.error("Error handling snapshot for hub {}",
-                                    sensorsSnapshot.getHubId(), e);
+                    processedOffsets.putAll(processBatch(records, workerPool, lanes));
+                    snapshotConsumer.commitAsync(Map.copyOf(processedOffsets), (offsets, exception) -> {
+                        if (exception != null) {
+                            log.warn("Failed to commit snapshot offsets {}", offsets, exception);
                         }
-                    }
-
-                    snapshotConsumer.commitAsync();
+                    });
                 }
             }
         } catch (WakeupException ignored) {
@@ -69,7 +132,9 @@ public class SnapshotEventProcessor {
             log.error("❌ Error processing snapshots", e);
         } finally {
             try {
-                snapshotConsumer.commitSync();
+                workerPool.close();
+                // Коммитим только offset'ы полностью обработанных пачек
+                snapshotConsumer.commitSync(processedOffsets);
                 log.info("Offsets committed synchronously");
             } finally {
                 snapshotConsumer.close();
@@ -77,4 +142,195 @@ public class SnapshotEventProcessor {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Снимает паузу с партиций, правила хабов которых уже загружены.
+     */
+    private void resumeWarmedPartitions() {
+        if (warmingPartitions.isEmpty()) {
+            return;
+        }
+        List<TopicPartition> warmed = new ArrayList<>();
+        Iterator<Map.Entry<TopicPartition, CompletableFuture<Void>>> iterator = warmingPartitions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<TopicPartition, CompletableFuture<Void>> entry = iterator.next();
+            if (entry.getValue().isDone()) {
+                warmed.add(entry.getKey());
+                iterator.remove();
+            }
+        }
+        if (!warmed.isEmpty()) {
+            snapshotConsumer.resume(warmed);
+            log.info("Resumed warmed partitions {}", warmed);
+        }
+    }
+
+    /**
+     * Забывает состояние хабов отозванных или потерянных партиций и освобождает их правила.
+     */
+    private void evict(Collection<TopicPartition> partitions) {
+        warmingPartitions.keySet().removeAll(partitions);
+        lastVersionByHub.values().removeIf(hubVersion -> partitions.contains(hubVersion.partition()));
+        if (lanes != null) {
+            lanes.onPartitionsRevoked(partitions);
+        }
+        scenarioRuleSource.onPartitionsRevoked(partitions);
+    }
+
+    /**
+     * Слушатель ребалансировки. При cooperative-sticky назначении сюда приходят только
+     * добавленные и отобранные партиции, остальные продолжают обрабатываться без остановки.
+     * Вызывается из потока poll, когда пачки уже обработаны.
+     */
+    private class RebalanceListener implements ConsumerRebalanceListener {
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            if (partitions.isEmpty()) {
+                return;
+            }
+            // Новые партиции не читаются, пока источник правил не загрузит сценарии их хабов
+            snapshotConsumer.pause(partitions);
+            Timer.Sample sample = Timer.start();
+            CompletableFuture<Void> warmed = scenarioRuleSource.onPartitionsAssigned(partitions)
+                    .whenComplete((ignored, exception) -> sample.stop(partitionWarmup));
+            for (TopicPartition partition : partitions) {
+                warmingPartitions.put(partition, warmed);
+            }
+            log.info("Assigned partitions {}, paused until hub rules are loaded", partitions);
+        }
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            if (partitions.isEmpty()) {
+                return;
+            }
+            // Новый владелец продолжит с offset'ов, обработанных здесь
+            Map<TopicPartition, OffsetAndMetadata> revokedOffsets = new HashMap<>();
+            for (TopicPartition partition : partitions) {
+                OffsetAndMetadata offset = processedOffsets.remove(partition);
+                if (offset != null) {
+                    revokedOffsets.put(partition, offset);
+                }
+            }
+            try {
+                if (!revokedOffsets.isEmpty()) {
+                    snapshotConsumer.commitSync(revokedOffsets);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to commit offsets of revoked partitions {}", revokedOffsets, e);
+            }
+            evict(partitions);
+            log.info("Revoked partitions {}", partitions);
+        }
+
+        @Override
+        public void onPartitionsLost(Collection<TopicPartition> partitions) {
+            // Партиции уже у другого владельца — коммитить их offset'ы нельзя
+            processedOffsets.keySet().removeAll(partitions);
+            evict(partitions);
+            log.warn("Lost partitions {}", partitions);
+        }
+    }
+
+    /**
+     * Раздаёт записи пачки по воркерам (снапшоты одного хаба — в один воркер, в порядке offset'ов)
+     * и дожидается их обработки. Возвращает offset'ы, которые можно коммитить: к этому моменту
+     * все записи пачки обработаны, поэтому коммит не опережает обработку.
+     * Для хабов со схлопыванием оценивается только последний снапшот хаба в пачке,
+     * offset'ы пропущенных снапшотов всё равно коммитятся.
+     * При включённых полосах снапшоты быстрой полосы отдаются воркерам первыми. Снапшот хаба,
+     * опубликованный раньше уже отправленного на обработку (по версии из заголовка), пропускается:
+     * более поздний снапшот уже содержит его состояние.
+     */
+    private Map<TopicPartition, OffsetAndMetadata> processBatch(ConsumerRecords<String, SensorsSnapshotAvro> records,
+                                                                SnapshotWorkerPool workerPool,
+                                                                PriorityLanes lanes) {
+        List<CompletableFuture<Void>> tasks = new ArrayList<>(records.count());
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        Map<String, ConsumerRecord<String, SensorsSnapshotAvro>> latestByHub = new LinkedHashMap<>();
+        SnapshotProcessingProperties.Conflation conflation = properties.getConflation();
+
+        Iterable<ConsumerRecord<String, SensorsSnapshotAvro>> ordered = lanes == null ? records : lanes.ordered(records);
+        for (ConsumerRecord<String, SensorsSnapshotAvro> record : ordered) {
+            SensorsSnapshotAvro sensorsSnapshot = record.value();
+            offsets.put(new TopicPartition(record.topic(), record.partition()),
+                    new OffsetAndMetadata(record.offset() + 1));
+
+            if (sensorsSnapshot == null) {
+                continue;
+            }
+            if (conflation.isEnabledFor(sensorsSnapshot.getHubId())) {
+                ConsumerRecord<String, SensorsSnapshotAvro> previous = latestByHub.get(sensorsSnapshot.getHubId());
+                if (previous == null || versionOf(record) >= versionOf(previous)) {
+                    latestByHub.put(sensorsSnapshot.getHubId(), record);
+                }
+                if (previous != null) {
+                    conflatedSnapshots.increment();
+                }
+                continue;
+            }
+            submit(record, workerPool, lanes, tasks);
+        }
+
+        for (ConsumerRecord<String, SensorsSnapshotAvro> record : latestByHub.values()) {
+            submit(record, workerPool, lanes, tasks);
+        }
+
+        CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).join();
+        return offsets;
+    }
+
+    private void submit(ConsumerRecord<String, SensorsSnapshotAvro> record,
+                        SnapshotWorkerPool workerPool,
+                        PriorityLanes lanes,
+                        List<CompletableFuture<Void>> tasks) {
+        SensorsSnapshotAvro sensorsSnapshot = record.value();
+        // Версии сравниваются только между полосами: без них снапшоты хаба идут одной партицией по порядку
+        long version = lanes == null ? -1 : versionOf(record);
+        if (version >= 0) {
+            HubVersion lastVersion = lastVersionByHub.get(sensorsSnapshot.getHubId());
+            if (lastVersion != null && version < lastVersion.version()) {
+                staleSnapshots.increment();
+                return;
+            }
+            lastVersionByHub.put(sensorsSnapshot.getHubId(),
+                    new HubVersion(new TopicPartition(record.topic(), record.partition()), version));
+        }
+        Timer latency = lanes != null && PriorityLanes.FAST.equals(lanes.laneOf(record.topic()))
+                ? fastLaneLatency
+                : slowLaneLatency;
+        tasks.add(workerPool.submit(sensorsSnapshot.getHubId(), () -> handleSnapshot(sensorsSnapshot, latency)));
+    }
+
+    private static long versionOf(ConsumerRecord<String, SensorsSnapshotAvro> record) {
+        return EventHeaders.snapshotVersion(record.headers());
+    }
+
+    private PriorityLanes priorityLanes() {
+        SnapshotProcessingProperties.Lanes lanes = properties.getLanes();
+        if (!lanes.isEnabled()) {
+            return null;
+        }
+        if (snapshotFastEventsTopic.isBlank()) {
+            throw new IllegalStateException("Priority lanes need analyzer.kafka.topics.snapshots-fast-events");
+        }
+        return new PriorityLanes(snapshotFastEventsTopic, lanes.getMaxSlowPause());
+    }
+
+    private void handleSnapshot(SensorsSnapshotAvro sensorsSnapshot, Timer latency) {
+        log.debug("Processing snapshot for hub: {}", sensorsSnapshot.getHubId());
+
+        try {
+            snapshotHandler.handle(sensorsSnapshot);
+        } catch (Exception e) {
+            log.error("Error handling snapshot for hub {}",
+                    sensorsSnapshot.getHubId(), e);
+        }
+        latency.record(Math.max(0, System.currentTimeMillis() - sensorsSnapshot.getTimestamp().toEpochMilli()),
+                TimeUnit.MILLISECONDS);
+    }
+
+    private record HubVersion(TopicPartition partition, long version) {
+    }
+}
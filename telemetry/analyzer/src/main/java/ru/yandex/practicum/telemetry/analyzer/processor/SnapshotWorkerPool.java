@@ -0,0 +1,61 @@
+package ru.yandex.practicum.telemetry.analyzer.processor;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пул однопоточных воркеров, шардированный по hubId.
+ * Задачи одного хаба выполняются строго последовательно и в порядке отправки,
+ * задачи разных хабов — параллельно.
+ */
+@Slf4j
+public class SnapshotWorkerPool implements AutoCloseable {
+
+    private final ExecutorService[] workers;
+
+    public SnapshotWorkerPool(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Snapshot worker pool size must be positive: " + size);
+        }
+        this.workers = new ExecutorService[size];
+        for (int i = 0; i < size; i++) {
+            String threadName = "snapshot-worker-" + i;
+            workers[i] = Executors.newSingleThreadExecutor(task -> new Thread(task, threadName));
+        }
+        log.info("Snapshot worker pool started with {} workers", size);
+    }
+
+    public CompletableFuture<Void> submit(String hubId, Runnable task) {
+        return CompletableFuture.runAsync(task, workers[shardOf(hubId)]);
+    }
+
+    public int size() {
+        return workers.length;
+    }
+
+    private int shardOf(String hubId) {
+        return hubId == null ? 0 : Math.floorMod(hubId.hashCode(), workers.length);
+    }
+
+    @Override
+    public void close() {
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+        for (ExecutorService worker : workers) {
+            try {
+                if (!worker.awaitTermination(10, TimeUnit.SECONDS)) {
+                    worker.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                worker.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.info("Snapshot worker pool stopped");
+    }
+}
@@ -1,10 +1,13 @@
 package ru.yandex.practicum.telemetry.analyzer.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.telemetry.analyzer.model.Scenario;
 import ru.yandex.practicum.telemetry.analyzer.model.ScenarioAction;
 import ru.yandex.practicum.telemetry.analyzer.model.ScenarioActionId;
+import ru.yandex.practicum.telemetry.analyzer.model.ScenarioActionView;
 
 import java.util.List;
 
@@ -12,4 +15,10 @@ import java.util.List;
 public interface ScenarioActionRepository extends JpaRepository<ScenarioAction, ScenarioActionId> {
     List<ScenarioAction> findByScenario(Scenario scenario);
     void deleteByScenario(Scenario scenario);
+
+    @Query("select new ru.yandex.practicum.telemetry.analyzer.model.ScenarioActionView(" +
+            "s.id, s.name, sa.id.sensor, a.type, a.value) " +
+            "from ScenarioAction sa join sa.scenario s join sa.action a " +
+            "where s.hubId = :hubId")
+    List<ScenarioActionView> findViewsByHubId(@Param("hubId") String hubId);
 }
\ No newline at end of file
@@ -1,10 +1,13 @@
 package ru.yandex.practicum.telemetry.analyzer.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.telemetry.analyzer.model.Scenario;
 import ru.yandex.practicum.telemetry.analyzer.model.ScenarioCondition;
 import ru.yandex.practicum.telemetry.analyzer.model.ScenarioConditionId;
+import ru.yandex.practicum.telemetry.analyzer.model.ScenarioConditionView;
 
 import java.util.List;
 
@@ -12,4 +15,10 @@ import java.util.List;
 public interface ScenarioConditionRepository extends JpaRepository<ScenarioCondition, ScenarioConditionId> {
     List<ScenarioCondition> findByScenario(Scenario scenario);
     void deleteByScenario(Scenario scenario);
+
+    @Query("select new ru.yandex.practicum.telemetry.analyzer.model.ScenarioConditionView(" +
+            "s.id, s.name, sc.id.sensor, c.type, c.operation, c.value, c.windowSeconds) " +
+            "from ScenarioCondition sc join sc.scenario s join sc.condition c " +
+            "where s.hubId = :hubId")
+    List<ScenarioConditionView> findViewsByHubId(@Param("hubId") String hubId);
 }
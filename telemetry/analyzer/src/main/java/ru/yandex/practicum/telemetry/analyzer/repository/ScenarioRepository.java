@@ -1,6 +1,7 @@
 package ru.yandex.practicum.telemetry.analyzer.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.telemetry.analyzer.model.Scenario;
 
@@ -12,4 +13,7 @@ public interface ScenarioRepository extends JpaRepository<Scenario, Long> {
     List<Scenario> findByHubId(String hubId);
     Optional<Scenario> findByHubIdAndName(String hubId, String name);
     void deleteByHubIdAndName(String hubId, String name);
+
+    @Query("select distinct s.hubId from Scenario s")
+    List<String> findDistinctHubIds();
 }
@@ -5,11 +5,13 @@ import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.telemetry.analyzer.model.Sensor;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface SensorRepository extends JpaRepository<Sensor, String> {
     boolean existsByIdInAndHubId(Collection<String> ids, String hubId);
     Optional<Sensor> findByIdAndHubId(String id, String hubId);
+    List<Sensor> findAllByIdInAndHubId(Collection<String> ids, String hubId);
     void deleteByIdAndHubId(String id, String hubId);
 }
\ No newline at end of file
@@ -0,0 +1,349 @@
+package ru.yandex.practicum.telemetry.analyzer.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.kafka.serializer.deserializer.ScenarioDefinitionDeserializer;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceActionAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioConditionDefinitionAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioDefinitionAvro;
+import ru.yandex.practicum.telemetry.analyzer.config.ScenarioSourceProperties;
+import ru.yandex.practicum.telemetry.analyzer.model.ScenarioActionView;
+import ru.yandex.practicum.telemetry.analyzer.service.condition.CompiledCondition;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Правила в памяти, восстановленные из compacted-топика сценариев. Читаются только партиции
+ * с теми же номерами, что и назначенные экземпляру партиции снапшотов обеих полос: издатель кладёт
+ * сценарий в партицию хаба. Если число партиций у топиков разное, читается весь топик.
+ * Вычитку выполняет фоновый поток: он дочитывает новые партиции до конца, завершает ожидающие
+ * этого future и дальше продолжает читать топик и применять изменения.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "analyzer.scenarios.source", havingValue = "changelog")
+public class ChangelogScenarioRuleSource implements ScenarioRuleSource {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+
+    private final ScenarioSourceProperties properties;
+    private final Map<String, List<ScenarioRule>> rulesByHub = new ConcurrentHashMap<>();
+    // Ниже — состояние, которое меняется только под lock
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Map<String, Map<String, ScenarioDefinitionAvro>> definitionsByHub = new HashMap<>();
+    // Ключи записей партиции и их хабы: по ним находятся сценарии для tombstone и при отзыве партиции
+    private final Map<TopicPartition, Map<String, String>> hubByKey = new HashMap<>();
+    private final List<PendingRestore> pendingRestores = new ArrayList<>();
+    // Назначенные партиции снапшотов обеих полос: партиция сценариев нужна, пока назначена хоть одна из них
+    private final Set<TopicPartition> snapshotPartitions = new HashSet<>();
+    private KafkaConsumer<String, ScenarioDefinitionAvro> consumer;
+    private Thread tailer;
+    private volatile boolean running;
+    private volatile boolean assigned;
+
+    @Value("${analyzer.kafka.topics.scenarios}")
+    private String scenariosTopic;
+
+    @Value("${analyzer.kafka.topics.snapshots-events}")
+    private String snapshotsTopic;
+
+    @Value("${analyzer.kafka.topics.snapshots-fast-events:}")
+    private String snapshotsFastTopic;
+
+    public ChangelogScenarioRuleSource(ScenarioSourceProperties properties) {
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void start() {
+        Properties config = new Properties();
+        config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, properties.getBootstrapServer());
+        config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ScenarioDefinitionDeserializer.class);
+        config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        consumer = new KafkaConsumer<>(config);
+
+        running = true;
+        tailer = new Thread(this::tail, "scenario-changelog");
+        tailer.setDaemon(true);
+        tailer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        consumer.wakeup();
+        try {
+            tailer.join(Duration.ofSeconds(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            consumer.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<ScenarioRule> rulesFor(String hubId) {
+        return rulesByHub.getOrDefault(hubId, List.of());
+    }
+
+    /**
+     * Добавляет партиции сценариев, соответствующие назначенным партициям снапшотов, и запоминает их
+     * конечные offset'ы. Future завершается, когда фоновый поток дочитает партиции до этих offset'ов
+     * или истечёт restore-timeout. Если новых партиций нет, future ждёт ещё не законченные вычитки.
+     */
+    @Override
+    public CompletableFuture<Void> onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        lock.lock();
+        try {
+            snapshotPartitions.addAll(partitions);
+            Set<TopicPartition> added = new HashSet<>(scenarioPartitionsFor(partitions));
+            added.removeAll(consumer.assignment());
+            if (added.isEmpty()) {
+                return CompletableFuture.allOf(pendingRestores.stream()
+                        .map(PendingRestore::done)
+                        .toArray(CompletableFuture[]::new));
+            }
+            Set<TopicPartition> assignment = new HashSet<>(consumer.assignment());
+            assignment.addAll(added);
+            consumer.assign(assignment);
+            consumer.seekToBeginning(added);
+            PendingRestore restore = new PendingRestore(consumer.endOffsets(added),
+                    System.currentTimeMillis(), new CompletableFuture<>());
+            pendingRestores.add(restore);
+            assigned = true;
+            return restore.done();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        lock.lock();
+        try {
+            snapshotPartitions.removeAll(partitions);
+            if (!isCoPartitioned()) {
+                // Читается весь топик — правила нужны при любом наборе партиций снапшотов
+                return;
+            }
+            Set<TopicPartition> removed = new HashSet<>(scenarioPartitionsFor(partitions));
+            // Партиция другой полосы с тем же номером ещё назначена — её хабам правила нужны
+            removed.removeAll(scenarioPartitionsFor(snapshotPartitions));
+            removed.retainAll(consumer.assignment());
+            if (removed.isEmpty()) {
+                return;
+            }
+            Set<TopicPartition> assignment = new HashSet<>(consumer.assignment());
+            assignment.removeAll(removed);
+            consumer.assign(assignment);
+            assigned = !assignment.isEmpty();
+            // Вычитка отозванных партиций больше не нужна
+            completeRestores();
+            Set<String> changedHubs = new HashSet<>();
+            for (TopicPartition partition : removed) {
+                Map<String, String> keys = hubByKey.remove(partition);
+                if (keys == null) {
+                    continue;
+                }
+                keys.forEach((key, hubId) -> {
+                    Map<String, ScenarioDefinitionAvro> definitions = definitionsByHub.get(hubId);
+                    if (definitions != null) {
+                        definitions.remove(key);
+                    }
+                    changedHubs.add(hubId);
+                });
+            }
+            changedHubs.forEach(this::rebuild);
+            log.info("Dropped scenarios of partitions {}", removed);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Завершает вычитки, дошедшие до конечных offset'ов или просроченные. Вызывается под lock.
+     */
+    private void completeRestores() {
+        long now = System.currentTimeMillis();
+        long timeout = properties.getRestoreTimeout().toMillis();
+        Iterator<PendingRestore> iterator = pendingRestores.iterator();
+        while (iterator.hasNext()) {
+            PendingRestore restore = iterator.next();
+            if (isCaughtUp(restore.endOffsets())) {
+                log.info("Restored scenarios of partitions {} in {} ms", restore.endOffsets().keySet(),
+                        now - restore.startedMillis());
+            } else if (now - restore.startedMillis() >= timeout) {
+                log.warn("Scenario restore timed out for {}, continuing with partial rules",
+                        restore.endOffsets().keySet());
+            } else {
+                continue;
+            }
+            restore.done().complete(null);
+            iterator.remove();
+        }
+    }
+
+    private boolean isCaughtUp(Map<TopicPartition, Long> endOffsets) {
+        Set<TopicPartition> assignment = consumer.assignment();
+        for (Map.Entry<TopicPartition, Long> endOffset : endOffsets.entrySet()) {
+            // Отозванную до окончания вычитки партицию не ждём
+            if (assignment.contains(endOffset.getKey())
+                    && consumer.position(endOffset.getKey()) < endOffset.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void tail() {
+        while (running) {
+            if (assigned) {
+                lock.lock();
+                try {
+                    apply(consumer.poll(POLL_TIMEOUT));
+                    if (!pendingRestores.isEmpty()) {
+                        completeRestores();
+                    }
+                } catch (WakeupException e) {
+                    return;
+                } catch (Exception e) {
+                    log.error("Failed to read scenario changelog", e);
+                } finally {
+                    lock.unlock();
+                }
+            } else {
+                try {
+                    Thread.sleep(POLL_TIMEOUT.toMillis());
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private int apply(ConsumerRecords<String, ScenarioDefinitionAvro> records) {
+        Set<String> changedHubs = new HashSet<>();
+        for (ConsumerRecord<String, ScenarioDefinitionAvro> record : records) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            Map<String, String> keys = hubByKey.computeIfAbsent(partition, p -> new HashMap<>());
+            ScenarioDefinitionAvro definition = record.value();
+            if (definition != null) {
+                keys.put(record.key(), definition.getHubId());
+                definitionsByHub.computeIfAbsent(definition.getHubId(), hubId -> new LinkedHashMap<>())
+                        .put(record.key(), definition);
+                changedHubs.add(definition.getHubId());
+                continue;
+            }
+            // Tombstone — сценарий удалён; хаб узнаём по ключу прежней записи
+            String hubId = keys.remove(record.key());
+            Map<String, ScenarioDefinitionAvro> definitions = hubId == null ? null : definitionsByHub.get(hubId);
+            if (definitions != null) {
+                definitions.remove(record.key());
+                changedHubs.add(hubId);
+            }
+        }
+        for (String hubId : changedHubs) {
+            rebuild(hubId);
+        }
+        return records.count();
+    }
+
+    private void rebuild(String hubId) {
+        Map<String, ScenarioDefinitionAvro> definitions = definitionsByHub.get(hubId);
+        if (definitions == null || definitions.isEmpty()) {
+            definitionsByHub.remove(hubId);
+            rulesByHub.remove(hubId);
+            return;
+        }
+        List<ScenarioRule> rules = new ArrayList<>(definitions.size());
+        for (ScenarioDefinitionAvro definition : definitions.values()) {
+            // Сценарий без условий срабатывал бы на каждом снапшоте хаба
+            if (definition.getConditions().isEmpty()) {
+                log.warn("Skipping scenario '{}' of hub {} without conditions", definition.getName(), hubId);
+                continue;
+            }
+            rules.add(toRule(definition));
+        }
+        rulesByHub.put(hubId, List.copyOf(rules));
+    }
+
+    private static ScenarioRule toRule(ScenarioDefinitionAvro definition) {
+        List<CompiledCondition> conditions = new ArrayList<>(definition.getConditions().size());
+        for (ScenarioConditionDefinitionAvro condition : definition.getConditions()) {
+            conditions.add(CompiledCondition.compile(
+                    condition.getSensorId(), condition.getType(), condition.getOperation(), condition.getValue(),
+                    condition.getWindowSeconds()));
+        }
+        List<ScenarioActionView> actions = new ArrayList<>(definition.getActions().size());
+        for (DeviceActionAvro action : definition.getActions()) {
+            actions.add(new ScenarioActionView(null, definition.getName(), action.getSensorId(), action.getType(), action.getValue()));
+        }
+        return new ScenarioRule(definition.getHubId(), definition.getName(), List.copyOf(conditions), List.copyOf(actions));
+    }
+
+    private boolean isCoPartitioned() {
+        int scenarioPartitions = consumer.partitionsFor(scenariosTopic).size();
+        return scenarioPartitions == consumer.partitionsFor(snapshotsTopic).size()
+                && (snapshotsFastTopic.isBlank() || scenarioPartitions == consumer.partitionsFor(snapshotsFastTopic).size());
+    }
+
+    private Set<TopicPartition> scenarioPartitionsFor(Collection<TopicPartition> snapshotPartitions) {
+        Set<TopicPartition> result = new HashSet<>();
+        if (!isCoPartitioned()) {
+            log.warn("{} and snapshot topics have different partition counts, reading all scenarios", scenariosTopic);
+            int scenarioPartitions = consumer.partitionsFor(scenariosTopic).size();
+            for (int i = 0; i < scenarioPartitions; i++) {
+                result.add(new TopicPartition(scenariosTopic, i));
+            }
+            return result;
+        }
+        for (int partition : partitionsOfSnapshots(snapshotPartitions)) {
+            result.add(new TopicPartition(scenariosTopic, partition));
+        }
+        return result;
+    }
+
+    private Set<Integer> partitionsOfSnapshots(Collection<TopicPartition> partitions) {
+        Set<Integer> numbers = new HashSet<>();
+        for (TopicPartition partition : partitions) {
+            if (partition.topic().equals(snapshotsTopic) || partition.topic().equals(snapshotsFastTopic)) {
+                numbers.add(partition.partition());
+            }
+        }
+        return numbers;
+    }
+
+    private record PendingRestore(Map<TopicPartition, Long> endOffsets,
+                                  long startedMillis,
+                                  CompletableFuture<Void> done) {
+    }
+}
@@ -0,0 +1,70 @@
+package ru.yandex.practicum.telemetry.analyzer.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.telemetry.analyzer.config.ScenarioSourceProperties;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Правила читаются из Postgres и кешируются скомпилированными по хабу. Запись сбрасывается после
+ * коммита изменения сценариев хаба на этом экземпляре. События хабов может обрабатывать другой
+ * экземпляр анализатора, поэтому запись живёт не дольше cache-ttl.
+ */
+@Component
+@ConditionalOnProperty(name = "analyzer.scenarios.source", havingValue = "database", matchIfMissing = true)
+public class DatabaseScenarioRuleSource implements ScenarioRuleSource {
+
+    private final ScenarioRuleLoader scenarioRuleLoader;
+    private final long cacheTtlMillis;
+    private final Map<String, CachedRules> rulesByHub = new ConcurrentHashMap<>();
+    // Растёт при каждом сбросе: загрузка, во время которой был сброс, в кеш не кладётся
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public DatabaseScenarioRuleSource(ScenarioRuleLoader scenarioRuleLoader, ScenarioSourceProperties properties) {
+        this.scenarioRuleLoader = scenarioRuleLoader;
+        this.cacheTtlMillis = properties.getCacheTtl().toMillis();
+    }
+
+    @Override
+    public List<ScenarioRule> rulesFor(String hubId) {
+        long now = System.currentTimeMillis();
+        CachedRules cached = rulesByHub.get(hubId);
+        if (cached != null && now < cached.expiresAtMillis()) {
+            return cached.rules();
+        }
+        long invalidationsBefore = invalidations.get();
+        List<ScenarioRule> rules = scenarioRuleLoader.loadRules(hubId);
+        if (invalidations.get() == invalidationsBefore) {
+            rulesByHub.put(hubId, new CachedRules(rules, now + cacheTtlMillis));
+        }
+        return rules;
+    }
+
+    @Override
+    public void onScenariosChanged(String hubId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate(hubId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalidate(hubId);
+            }
+        });
+    }
+
+    private void invalidate(String hubId) {
+        invalidations.incrementAndGet();
+        rulesByHub.remove(hubId);
+    }
+
+    private record CachedRules(List<ScenarioRule> rules, long expiresAtMillis) {
+    }
+}
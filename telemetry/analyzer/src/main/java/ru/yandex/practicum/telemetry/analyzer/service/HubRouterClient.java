@@ -10,10 +10,7 @@ import ru.yandex.practicum.grpc.telemetry.event.DeviceActionProto;
 import ru.yandex.practicum.grpc.telemetry.event.DeviceActionRequest;
 import ru.yandex.practicum.grpc.telemetry.hubrouter.HubRouterControllerGrpc;
 import ru.yandex.practicum.kafka.telemetry.event.ActionTypeAvro;
-import ru.yandex.practicum.telemetry.analyzer.model.Action;
-import ru.yandex.practicum.telemetry.analyzer.model.Scenario;
-import ru.yandex.practicum.telemetry.analyzer.model.ScenarioAction;
-import ru.yandex.practicum.telemetry.analyzer.model.Sensor;
+import ru.yandex.practicum.telemetry.analyzer.model.ScenarioActionView;
 
 import java.time.Instant;
 import java.util.concurrent.TimeUnit;
@@ -30,14 +27,12 @@ public class HubRouterClient {
         log.info("HubRouterClient initialized");
     }
 
-    public void sendDeviceRequest(ScenarioAction scenarioAction) {
+    public void sendDeviceRequest(String hubId, String scenarioName, ScenarioActionView action) {
         log.info("🚀 Sending device request for scenario: '{}', hub: {}, sensor: {}",
-                scenarioAction.getScenario().getName(),
-                scenarioAction.getScenario().getHubId(),
-                scenarioAction.getSensor().getId());
+                scenarioName, hubId, action.sensorId());
 
         try {
-            DeviceActionRequest request = toDeviceActionRequest(scenarioAction);
+            DeviceActionRequest request = toDeviceActionRequest(hubId, scenarioName, action);
 
             log.debug("gRPC request: hubId={}, scenarioName={}, actionType={}, value={}",
                     request.getHubId(),
@@ -72,22 +67,18 @@ public class HubRouterClient {
         };
     }
 
-    private DeviceActionRequest toDeviceActionRequest(ScenarioAction scenarioAction) {
-        Scenario scenario = scenarioAction.getScenario();
-        Sensor sensor = scenarioAction.getSensor();
-        Action action = scenarioAction.getAction();
-
+    private DeviceActionRequest toDeviceActionRequest(String hubId, String scenarioName, ScenarioActionView action) {
         DeviceActionProto.Builder actionBuilder = DeviceActionProto.newBuilder()
-                .setSensorId(sensor.getId())
-                .setType(toActionTypeProto(action.getType()));
+                .setSensorId(action.sensorId())
+                .setType(toActionTypeProto(action.type()));
 
-        if (action.getValue() != null) {
-            actionBuilder.setValue(action.getValue());
+        if (action.value() != null) {
+            actionBuilder.setValue(action.value());
         }
 
         return DeviceActionRequest.newBuilder()
-                .setHubId(scenario.getHubId())
-                .setScenarioName(scenario.getName())
+                .setHubId(hubId)
+                .setScenarioName(scenarioName)
                 .setAction(actionBuilder.build())
                 .setTimestamp(currentTimestamp())
                 .build();
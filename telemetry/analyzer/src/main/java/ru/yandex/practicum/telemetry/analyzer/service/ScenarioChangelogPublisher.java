@@ -0,0 +1,209 @@
+package ru.yandex.practicum.telemetry.analyzer.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.RetriableException;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.kafka.serializer.header.EventHeaders;
+import ru.yandex.practicum.kafka.telemetry.event.DeviceActionAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioConditionDefinitionAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioDefinitionAvro;
+import ru.yandex.practicum.telemetry.analyzer.config.ScenarioSourceProperties;
+import ru.yandex.practicum.telemetry.analyzer.model.ScenarioActionView;
+import ru.yandex.practicum.telemetry.analyzer.repository.ScenarioRepository;
+import ru.yandex.practicum.telemetry.analyzer.serializer.GeneralAvroSerializer;
+import ru.yandex.practicum.telemetry.analyzer.service.condition.CompiledCondition;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Публикует определения сценариев в compacted-топик после коммита транзакции, изменившей их в Postgres.
+ * Запись сценария кладётся в ту же по номеру партицию, что и снапшоты его хаба, поэтому экземпляр
+ * анализатора восстанавливает только сценарии хабов из своих партиций снапшотов.
+ * Отправка синхронная: поток событий хабов не идёт дальше, пока изменение не подтверждено Kafka,
+ * а временные ошибки повторяются, чтобы топик не разошёлся с Postgres.
+ */
+@Slf4j
+@Component
+public class ScenarioChangelogPublisher {
+
+    private final ScenarioSourceProperties properties;
+    private final ScenarioRepository scenarioRepository;
+    private final ScenarioRuleLoader scenarioRuleLoader;
+    private Producer<String, ScenarioDefinitionAvro> producer;
+    private volatile boolean closing;
+
+    @Value("${analyzer.kafka.topics.scenarios}")
+    private String scenariosTopic;
+
+    public ScenarioChangelogPublisher(ScenarioSourceProperties properties,
+                                      ScenarioRepository scenarioRepository,
+                                      ScenarioRuleLoader scenarioRuleLoader) {
+        this.properties = properties;
+        this.scenarioRepository = scenarioRepository;
+        this.scenarioRuleLoader = scenarioRuleLoader;
+    }
+
+    public boolean isEnabled() {
+        return properties.isPublishChangelog();
+    }
+
+    /**
+     * Ключ записи: сценарий хаба однозначно определяется парой hubId и имени.
+     */
+    public static String keyOf(String hubId, String name) {
+        return hubId + "/" + name;
+    }
+
+    /**
+     * Та же партиция, что выбирает партиционер по умолчанию для снапшота с ключом hubId.
+     */
+    public static int partitionOf(String hubId, int partitions) {
+        return Utils.toPositive(Utils.murmur2(hubId.getBytes(StandardCharsets.UTF_8))) % partitions;
+    }
+
+    public void publishAfterCommit(ScenarioDefinitionAvro definition) {
+        afterCommit(() -> send(definition.getHubId(), definition.getName(), definition));
+    }
+
+    public void removeAfterCommit(String hubId, String name) {
+        afterCommit(() -> send(hubId, name, null));
+    }
+
+    /**
+     * Заполняет топик сценариями, которые уже лежат в Postgres. Повторный запуск безопасен:
+     * compaction оставит по последней записи на сценарий.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        if (!isEnabled() || !properties.isSeedChangelog()) {
+            return;
+        }
+        int published = 0;
+        for (String hubId : scenarioRepository.findDistinctHubIds()) {
+            for (ScenarioRule rule : scenarioRuleLoader.loadRules(hubId)) {
+                send(hubId, rule.name(), toDefinition(rule));
+                published++;
+            }
+        }
+        producer().flush();
+        log.info("Seeded {} with {} scenarios from the database", scenariosTopic, published);
+    }
+
+    public static ScenarioDefinitionAvro toDefinition(ScenarioRule rule) {
+        List<ScenarioConditionDefinitionAvro> conditions = new ArrayList<>(rule.conditions().size());
+        for (CompiledCondition condition : rule.conditions()) {
+            conditions.add(ScenarioConditionDefinitionAvro.newBuilder()
+                    .setSensorId(condition.getSensorId())
+                    .setType(condition.getType())
+                    .setOperation(condition.getOperation())
+                    .setValue(condition.getValue())
+                    .setWindowSeconds(condition.getWindowSeconds())
+                    .build());
+        }
+        List<DeviceActionAvro> actions = new ArrayList<>(rule.actions().size());
+        for (ScenarioActionView action : rule.actions()) {
+            actions.add(DeviceActionAvro.newBuilder()
+                    .setSensorId(action.sensorId())
+                    .setType(action.type())
+                    .setValue(action.value())
+                    .build());
+        }
+        return ScenarioDefinitionAvro.newBuilder()
+                .setHubId(rule.hubId())
+                .setName(rule.name())
+                .setConditions(conditions)
+                .setActions(actions)
+                .build();
+    }
+
+    private void afterCommit(Runnable send) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            send.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                send.run();
+            }
+        });
+    }
+
+    private synchronized void send(String hubId, String name, ScenarioDefinitionAvro definition) {
+        Producer<String, ScenarioDefinitionAvro> producer = producer();
+        int partition = partitionOf(hubId, producer.partitionsFor(scenariosTopic).size());
+        ProducerRecord<String, ScenarioDefinitionAvro> record =
+                new ProducerRecord<>(scenariosTopic, partition, keyOf(hubId, name), definition,
+                        EventHeaders.ofSchema(ScenarioDefinitionAvro.getClassSchema()));
+        while (true) {
+            try {
+                producer.send(record).get();
+                log.debug("Published scenario {} of hub {} to partition {}: {}",
+                        name, hubId, partition, definition == null ? "removed" : "updated");
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Interrupted while publishing scenario {} of hub {} to {}", name, hubId, scenariosTopic);
+                return;
+            } catch (ExecutionException e) {
+                if (closing || !(e.getCause() instanceof RetriableException)) {
+                    log.error("Failed to publish scenario {} of hub {} to {}, the topic is behind the database until reseeded",
+                            name, hubId, scenariosTopic, e.getCause());
+                    return;
+                }
+                log.warn("Failed to publish scenario {} of hub {} to {}, retrying: {}",
+                        name, hubId, scenariosTopic, e.getCause().getMessage());
+            }
+            try {
+                Thread.sleep(properties.getPublishRetryBackoff().toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private synchronized Producer<String, ScenarioDefinitionAvro> producer() {
+        if (producer == null) {
+            Properties config = new Properties();
+            config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, properties.getBootstrapServer());
+            config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+            config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, GeneralAvroSerializer.class);
+            config.put(ProducerConfig.ACKS_CONFIG, "all");
+            config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+            producer = new KafkaProducer<>(config);
+        }
+        return producer;
+    }
+
+    @PreDestroy
+    public void close() {
+        // Снимает повторы отправки, чтобы не ждать lock бесконечно
+        closing = true;
+        synchronized (this) {
+            if (producer != null) {
+                producer.close(Duration.ofSeconds(10));
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ru.yandex.practicum.telemetry.analyzer.service;
+
+import ru.yandex.practicum.telemetry.analyzer.model.ScenarioActionView;
+import ru.yandex.practicum.telemetry.analyzer.service.condition.CompiledCondition;
+
+import java.util.List;
+
+/**
+ * Сценарий хаба в виде, готовом к проверке снапшота: условия скомпилированы, действия загружены.
+ */
+public record ScenarioRule(
+        String hubId,
+        String name,
+        List<CompiledCondition> conditions,
+        List<ScenarioActionView> actions
+) {
+
+    /**
+     * Есть ли у сценария условия, проверяемые по окну показаний. Такой сценарий срабатывает
+     * один раз при выполнении условий, а не на каждом снапшоте, пока они выполняются.
+     */
+    public boolean windowed() {
+        for (int i = 0; i < conditions.size(); i++) {
+            if (conditions.get(i).isWindowed()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,70 @@
+package ru.yandex.practicum.telemetry.analyzer.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.telemetry.analyzer.model.ScenarioActionView;
+import ru.yandex.practicum.telemetry.analyzer.model.ScenarioConditionView;
+import ru.yandex.practicum.telemetry.analyzer.repository.ScenarioActionRepository;
+import ru.yandex.practicum.telemetry.analyzer.repository.ScenarioConditionRepository;
+import ru.yandex.practicum.telemetry.analyzer.service.condition.CompiledCondition;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Загружает сценарии хаба двумя JOIN-запросами (условия и действия) вместо обхода графа сущностей.
+ * Строки приходят DTO-проекциями, поэтому не попадают в контекст персистентности.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ScenarioRuleLoader {
+
+    private final ScenarioConditionRepository scenarioConditionRepository;
+    private final ScenarioActionRepository scenarioActionRepository;
+
+    @Transactional(readOnly = true)
+    public List<ScenarioRule> loadRules(String hubId) {
+        List<ScenarioConditionView> conditions = scenarioConditionRepository.findViewsByHubId(hubId);
+        if (conditions.isEmpty()) {
+            return List.of();
+        }
+        List<ScenarioActionView> actions = scenarioActionRepository.findViewsByHubId(hubId);
+
+        Map<Long, RuleBuilder> builders = new LinkedHashMap<>();
+        for (ScenarioConditionView condition : conditions) {
+            builders.computeIfAbsent(condition.scenarioId(), id -> new RuleBuilder(condition.scenarioName()))
+                    .conditions.add(CompiledCondition.compile(
+                            condition.sensorId(), condition.type(), condition.operation(), condition.value(),
+                            condition.windowSeconds()));
+        }
+        for (ScenarioActionView action : actions) {
+            RuleBuilder builder = builders.get(action.scenarioId());
+            if (builder != null) {
+                builder.actions.add(action);
+            }
+        }
+
+        List<ScenarioRule> rules = new ArrayList<>(builders.size());
+        for (RuleBuilder builder : builders.values()) {
+            rules.add(new ScenarioRule(hubId, builder.name, List.copyOf(builder.conditions), List.copyOf(builder.actions)));
+        }
+        log.debug("Loaded {} scenarios ({} conditions, {} actions) for hub {}",
+                rules.size(), conditions.size(), actions.size(), hubId);
+        return rules;
+    }
+
+    private static final class RuleBuilder {
+        private final String name;
+        private final List<CompiledCondition> conditions = new ArrayList<>();
+        private final List<ScenarioActionView> actions = new ArrayList<>();
+
+        private RuleBuilder(String name) {
+            this.name = name;
+        }
+    }
+}
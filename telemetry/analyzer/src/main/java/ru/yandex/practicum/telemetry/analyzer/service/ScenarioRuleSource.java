@@ -0,0 +1,36 @@
+package ru.yandex.practicum.telemetry.analyzer.service;
+
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Источник правил хаба для проверки снапшотов.
+ */
+public interface ScenarioRuleSource {
+
+    List<ScenarioRule> rulesFor(String hubId);
+
+    /**
+     * Вызывается обработчиками событий хаба, изменившими его сценарии или датчики, внутри их транзакции.
+     */
+    default void onScenariosChanged(String hubId) {
+    }
+
+    /**
+     * Вызывается из потока poll, когда экземпляру назначены партиции топика снапшотов.
+     * Партиции стоят на паузе, пока возвращённый future не завершится: к этому моменту правила
+     * их хабов должны быть загружены. Метод не должен блокировать поток poll.
+     */
+    default CompletableFuture<Void> onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Вызывается, когда партиции топика снапшотов отобраны у экземпляра или потеряны им.
+     */
+    default void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+    }
+}
@@ -3,12 +3,11 @@ package ru.yandex.practicum.telemetry.analyzer.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import ru.yandex.practicum.kafka.telemetry.event.*;
-import ru.yandex.practicum.telemetry.analyzer.model.*;
-import ru.yandex.practicum.telemetry.analyzer.repository.ScenarioRepository;
-import ru.yandex.practicum.telemetry.analyzer.repository.ScenarioConditionRepository;
-import ru.yandex.practicum.telemetry.analyzer.repository.ScenarioActionRepository;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorsSnapshotAvro;
+import ru.yandex.practicum.telemetry.analyzer.model.ScenarioActionView;
+import ru.yandex.practicum.telemetry.analyzer.service.condition.CompiledCondition;
+import ru.yandex.practicum.telemetry.analyzer.service.condition.ConditionHistory;
 
 import java.util.List;
 import java.util.Map;
@@ -18,243 +17,95 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class SnapshotHandler {
 
-    private final ScenarioRepository scenarioRepository;
-    private final ScenarioConditionRepository scenarioConditionRepository;
-    private final ScenarioActionRepository scenarioActionRepository;
+    private final ScenarioRuleSource scenarioRuleSource;
     private final HubRouterClient hubRouterClient;
+    private final ConditionHistory conditionHistory;
 
-    @Transactional(readOnly = true)
     public void handle(SensorsSnapshotAvro snapshot) {
         String hubId = snapshot.getHubId();
         Map<String, SensorStateAvro> sensorStates = snapshot.getSensorsState();
 
-        log.info("=== PROCESSING SNAPSHOT FOR HUB: {} ===", hubId);
-        log.info("Sensors in snapshot: {}", sensorStates.size());
+        log.debug("=== PROCESSING SNAPSHOT FOR HUB: {}, sensors: {} ===", hubId, sensorStates.size());
 
-        // ДОБАВЛЕНО: логирование всех сенсоров в снапшоте
-        log.info("Available sensors in snapshot: {}", sensorStates.keySet());
-
-        // 1. Получаем все сценарии для хаба
-        List<Scenario> scenarios = scenarioRepository.findByHubId(hubId);
-        log.info("Found {} scenarios for hub {}", scenarios.size(), hubId);
-
-        // ДОБАВЛЕНО: логирование найденных сценариев
-        for (Scenario scenario : scenarios) {
-            log.info("Scenario: '{}' (ID: {})", scenario.getName(), scenario.getId());
-        }
+        // 1. Получаем все сценарии хаба вместе с условиями и действиями
+        List<ScenarioRule> scenarios = scenarioRuleSource.rulesFor(hubId);
 
         if (scenarios.isEmpty()) {
-            log.info("No scenarios found for hub {}", hubId);
+            log.debug("No scenarios found for hub {}", hubId);
             return;
         }
 
-        for (Scenario scenario : scenarios) {
-            log.info("=== CHECKING SCENARIO: '{}' (ID: {}) ===",
-                    scenario.getName(), scenario.getId());
-
-            // 2. Проверяем все условия сценария
-            List<ScenarioCondition> conditions = scenarioConditionRepository.findByScenario(scenario);
-
-            if (conditions.isEmpty()) {
-                log.warn("Scenario '{}' has no conditions", scenario.getName());
-                continue;
-            }
+        // 2. Дописываем показания датчиков оконных условий в историю хаба
+        ConditionHistory.HubHistory history = recordHistory(hubId, scenarios, sensorStates);
+        long nowMillis = snapshot.getTimestamp().toEpochMilli();
 
-            log.info("Scenario '{}' has {} conditions", scenario.getName(), conditions.size());
+        for (int i = 0; i < scenarios.size(); i++) {
+            ScenarioRule scenario = scenarios.get(i);
 
-            // ДОБАВЛЕНО: подробное логирование каждого условия
-            for (ScenarioCondition condition : conditions) {
-                log.info("Condition details: sensorId={}, type={}, operation={}, value={}",
-                        condition.getSensor().getId(),
-                        condition.getCondition().getType(),
-                        condition.getCondition().getOperation(),
-                        condition.getCondition().getValue());
+            // 3. Проверяем все условия сценария; оконный сценарий срабатывает только на переходе к выполненным
+            boolean satisfied = checkAllConditions(scenario.conditions(), sensorStates, history, nowMillis);
+            if (scenario.windowed()) {
+                satisfied = history.rising(scenario.name(), scenario, satisfied);
             }
-
-            boolean allConditionsMet = checkAllConditions(conditions, sensorStates);
-
-            if (allConditionsMet) {
-                log.info("✅ ALL CONDITIONS MET for scenario '{}'", scenario.getName());
-                // 3. Выполняем действия сценария
+            if (satisfied) {
+                log.info("✅ ALL CONDITIONS MET for scenario '{}'", scenario.name());
+                // 4. Выполняем действия сценария
                 executeActions(scenario);
-            } else {
-                log.info("❌ Some conditions NOT met for scenario '{}'", scenario.getName());
-            }
-        }
-
-        log.info("=== SNAPSHOT PROCESSING COMPLETE ===");
-    }
-
-    private boolean checkAllConditions(List<ScenarioCondition> conditions,
-                                       Map<String, SensorStateAvro> sensorStates) {
-        for (ScenarioCondition scenarioCondition : conditions) {
-            String sensorId = scenarioCondition.getSensor().getId();
-            Condition condition = scenarioCondition.getCondition();
-
-            log.info("Checking condition: sensor={}, type={}, operation={}, target_value={}",
-                    sensorId, condition.getType(), condition.getOperation(), condition.getValue());
-
-            // Получаем состояние сенсора из снапшота
-            SensorStateAvro sensorState = sensorStates.get(sensorId);
-            if (sensorState == null) {
-                log.error("❌ Sensor {} not found in snapshot!", sensorId);
-                log.info("Available sensors: {}", sensorStates.keySet());
-                return false;
-            }
-
-            // Получаем значение сенсора
-            Integer sensorValue = extractSensorValue(sensorState.getData(), condition.getType());
-            log.info("Sensor {} current value: {} (data class: {})",
-                    sensorId, sensorValue, sensorState.getData().getClass().getSimpleName());
-
-            if (sensorValue == null) {
-                log.error("❌ Cannot extract value for sensor {} type {}", sensorId, condition.getType());
-                log.info("Sensor data class: {}", sensorState.getData().getClass().getSimpleName());
-                return false;
-            }
-
-            // Проверяем условие
-            boolean conditionMet = checkCondition(condition, sensorValue);
-            log.info("Condition check: {} {} {} = {}",
-                    sensorValue, condition.getOperation(), condition.getValue(), conditionMet);
-
-            if (!conditionMet) {
-                log.info("❌ Condition NOT met for sensor {}", sensorId);
-                return false;
             }
-
-            log.info("✅ Condition met for sensor {}", sensorId);
         }
-
-        log.info("✅ ALL CONDITIONS MET");
-        return true;
     }
 
-    private Integer extractSensorValue(Object sensorData, ConditionTypeAvro type) {
-        if (sensorData == null) {
-            log.error("Sensor data is null for type {}", type);
-            return null;
-        }
-
-        try {
-            switch (type) {
-                case TEMPERATURE:
-                    if (sensorData instanceof ClimateSensorAvro climateSensor) {
-                        int temp = climateSensor.getTemperatureC();
-                        log.debug("Climate sensor temperature: {}°C", temp);
-                        return temp;
-                    } else if (sensorData instanceof TemperatureSensorAvro tempSensor) {
-                        int temp = tempSensor.getTemperatureC();
-                        log.debug("Temperature sensor: {}°C", temp);
-                        return temp;
-                    }
-                    log.warn("Temperature expected but got: {}", sensorData.getClass().getSimpleName());
-                    break;
-
-                case HUMIDITY:
-                    if (sensorData instanceof ClimateSensorAvro climateSensor) {
-                        int humidity = climateSensor.getHumidity();
-                        log.debug("Climate sensor humidity: {}%", humidity);
-                        return humidity;
-                    }
-                    break;
-
-                case CO2LEVEL:
-                    if (sensorData instanceof ClimateSensorAvro climateSensor) {
-                        int co2 = climateSensor.getCo2Level();
-                        log.debug("Climate sensor CO2: {} ppm", co2);
-                        return co2;
-                    }
-                    break;
-
-                case LUMINOSITY:
-                    if (sensorData instanceof LightSensorAvro lightSensor) {
-                        int luminosity = lightSensor.getLuminosity();
-                        log.debug("Light sensor luminosity: {}", luminosity);
-                        return luminosity;
-                    }
-                    break;
-
-                case MOTION:
-                    if (sensorData instanceof MotionSensorAvro motionSensor) {
-                        boolean motion = motionSensor.getMotion();
-                        int value = motion ? 1 : 0;
-                        log.debug("Motion sensor: {} -> {}", motion, value);
-                        return value;
-                    }
-                    break;
-
-                case SWITCH:
-                    if (sensorData instanceof SwitchSensorAvro switchSensor) {
-                        boolean state = switchSensor.getState();
-                        int value = state ? 1 : 0;
-                        log.debug("Switch sensor: {} -> {}", state, value);
-                        return value;
+    /**
+     * Возвращает историю хаба или null, если у его сценариев нет оконных условий.
+     * Показание, на которое ссылаются несколько условий, добавляется один раз.
+     */
+    private ConditionHistory.HubHistory recordHistory(String hubId,
+                                                      List<ScenarioRule> scenarios,
+                                                      Map<String, SensorStateAvro> sensorStates) {
+        ConditionHistory.HubHistory history = null;
+        for (int i = 0; i < scenarios.size(); i++) {
+            List<CompiledCondition> conditions = scenarios.get(i).conditions();
+            for (int j = 0; j < conditions.size(); j++) {
+                CompiledCondition condition = conditions.get(j);
+                if (condition.isWindowed()) {
+                    if (history == null) {
+                        history = conditionHistory.hub(hubId);
                     }
-                    break;
+                    condition.record(sensorStates, history);
+                }
             }
-        } catch (Exception e) {
-            log.error("Error extracting sensor value for type {}: {}", type, e.getMessage(), e);
         }
-
-        log.error("Cannot extract {} value from {}", type, sensorData.getClass().getSimpleName());
-        return null;
+        return history;
     }
 
-    private boolean checkCondition(Condition condition, Integer sensorValue) {
-        if (sensorValue == null) {
-            log.error("Sensor value is null");
-            return false;
-        }
-
-        // Обработка null значения в условии
-        if (condition.getValue() == null) {
-            // Для boolean типов (MOTION, SWITCH) null может означать "проверка на наличие любого значения"
-            if (condition.getType() == ConditionTypeAvro.MOTION ||
-                    condition.getType() == ConditionTypeAvro.SWITCH) {
-                log.info("Condition value is null for boolean type {}, sensor value: {}",
-                        condition.getType(), sensorValue);
-                // Если значение null, а сенсор показывает 0 или 1 - условие выполняется
-                // (например, "есть движение" без уточнения true/false)
-                return sensorValue == 0 || sensorValue == 1;
-            }
-            // Для числовых типов null в условии - ошибка
-            log.error("Condition target value is null for non-boolean type {}", condition.getType());
-            return false;
-        }
-
-        log.debug("Checking: {} {} {}", sensorValue, condition.getOperation(), condition.getValue());
-
-        switch (condition.getOperation()) {
-            case EQUALS:
-                return sensorValue.equals(condition.getValue());
-            case GREATER_THAN:
-                return sensorValue > condition.getValue();
-            case LOWER_THAN:
-                return sensorValue < condition.getValue();
-            default:
-                log.error("Unknown operation: {}", condition.getOperation());
+    private boolean checkAllConditions(List<CompiledCondition> conditions,
+                                       Map<String, SensorStateAvro> sensorStates,
+                                       ConditionHistory.HubHistory history,
+                                       long nowMillis) {
+        // Горячий путь: без логирования и боксинга на каждое условие
+        for (int i = 0; i < conditions.size(); i++) {
+            if (!conditions.get(i).test(sensorStates, history, nowMillis)) {
                 return false;
+            }
         }
+        return true;
     }
 
-    private void executeActions(Scenario scenario) {
-        List<ScenarioAction> actions = scenarioActionRepository.findByScenario(scenario);
-        log.info("Executing {} actions for scenario '{}'", actions.size(), scenario.getName());
+    private void executeActions(ScenarioRule scenario) {
+        List<ScenarioActionView> actions = scenario.actions();
+        log.info("Executing {} actions for scenario '{}'", actions.size(), scenario.name());
 
         if (actions.isEmpty()) {
-            log.error("❌ NO ACTIONS FOUND for scenario '{}'!", scenario.getName());
+            log.error("❌ NO ACTIONS FOUND for scenario '{}'!", scenario.name());
             return;
         }
 
-        for (ScenarioAction action : actions) {
+        for (ScenarioActionView action : actions) {
             try {
-                log.info("=== SENDING ACTION ===");
-                log.info("Sensor: {}", action.getSensor().getId());
-                log.info("Action type: {}", action.getAction().getType());
-                log.info("Action value: {}", action.getAction().getValue());
+                log.debug("Sending action: sensor={}, type={}, value={}",
+                        action.sensorId(), action.type(), action.value());
 
-                hubRouterClient.sendDeviceRequest(action);
+                hubRouterClient.sendDeviceRequest(scenario.hubId(), scenario.name(), action);
                 log.info("✅ Action sent successfully");
 
             } catch (Exception e) {
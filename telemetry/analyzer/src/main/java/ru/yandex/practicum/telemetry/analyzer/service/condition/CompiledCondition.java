@@ -0,0 +1,210 @@
+package ru.yandex.practicum.telemetry.analyzer.service.condition;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.kafka.serializer.dictionary.IdDictionary;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionOperationAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+
+/**
+ * Условие сценария, заранее скомпилированное в экстракторы значения и int-сравнение.
+ * Проверка снапшота не создаёт объектов: значение датчика не боксится,
+ * а сравнение с порогом выполняется над примитивами.
+ * Оконные условия (*_FOR, AVERAGE_*) проверяются по истории показаний датчика
+ * из {@link ConditionHistory}, а не по одному значению из снапшота.
+ */
+@Slf4j
+public final class CompiledCondition {
+
+    private static final IntPredicate NEVER = value -> false;
+
+    @Getter
+    private final String sensorId;
+    @Getter
+    private final ConditionTypeAvro type;
+    @Getter
+    private final ConditionOperationAvro operation;
+    @Getter
+    private final Integer value;
+    @Getter
+    private final Integer windowSeconds;
+    private final SensorValueExtractors.Extractor[] extractors;
+    private final Mode mode;
+    private final IntPredicate predicate;
+    private final long windowMillis;
+
+    private CompiledCondition(String sensorId,
+                              ConditionTypeAvro type,
+                              ConditionOperationAvro operation,
+                              Integer value,
+                              Integer windowSeconds,
+                              IntPredicate predicate) {
+        this.sensorId = sensorId;
+        this.type = type;
+        this.operation = operation;
+        this.value = value;
+        this.windowSeconds = windowSeconds;
+        this.extractors = SensorValueExtractors.forType(type);
+        this.mode = modeOf(operation);
+        this.predicate = predicate;
+        this.windowMillis = windowSeconds == null ? 0 : windowSeconds * 1000L;
+    }
+
+    public static CompiledCondition compile(String sensorId,
+                                            ConditionTypeAvro type,
+                                            ConditionOperationAvro operation,
+                                            Integer value,
+                                            Integer windowSeconds) {
+        // При intern-ids это тот же экземпляр строки, что и ключи снапшота из десериализатора:
+        // поиск в карте сравнивает ссылки
+        return new CompiledCondition(IdDictionary.shared().intern(sensorId), type, operation, value, windowSeconds,
+                predicateOf(type, operation, value, windowSeconds));
+    }
+
+    private static IntPredicate predicateOf(ConditionTypeAvro type,
+                                            ConditionOperationAvro operation,
+                                            Integer value,
+                                            Integer windowSeconds) {
+        if (modeOf(operation) != Mode.LATEST && (windowSeconds == null || windowSeconds <= 0)) {
+            log.error("Condition {} needs a positive window, got {}", operation, windowSeconds);
+            return NEVER;
+        }
+
+        // Обработка null значения в условии
+        if (value == null) {
+            // Для boolean типов (MOTION, SWITCH) null означает "любое значение датчика"
+            if (modeOf(operation) != Mode.AVERAGE
+                    && (type == ConditionTypeAvro.MOTION || type == ConditionTypeAvro.SWITCH)) {
+                return sensorValue -> sensorValue == 0 || sensorValue == 1;
+            }
+            // Для числовых типов и средних null в условии - ошибка
+            log.error("Condition target value is null for {} {}", type, operation);
+            return NEVER;
+        }
+
+        int target = value;
+        return switch (operation) {
+            case EQUALS, EQUALS_FOR -> sensorValue -> sensorValue == target;
+            case GREATER_THAN, GREATER_THAN_FOR, AVERAGE_GREATER_THAN -> sensorValue -> sensorValue > target;
+            case LOWER_THAN, LOWER_THAN_FOR, AVERAGE_LOWER_THAN -> sensorValue -> sensorValue < target;
+        };
+    }
+
+    private static Mode modeOf(ConditionOperationAvro operation) {
+        return switch (operation) {
+            case EQUALS, GREATER_THAN, LOWER_THAN -> Mode.LATEST;
+            case EQUALS_FOR, GREATER_THAN_FOR, LOWER_THAN_FOR -> Mode.HOLDS_FOR;
+            case AVERAGE_GREATER_THAN, AVERAGE_LOWER_THAN -> Mode.AVERAGE;
+        };
+    }
+
+    /**
+     * Условие проверяется по истории показаний и требует {@link #record}.
+     */
+    public boolean isWindowed() {
+        return mode != Mode.LATEST;
+    }
+
+    /**
+     * Добавляет текущее показание датчика из снапшота в историю хаба.
+     */
+    public void record(Map<String, SensorStateAvro> sensorStates, ConditionHistory.HubHistory history) {
+        SensorStateAvro sensorState = sensorStates.get(sensorId);
+        if (sensorState == null || sensorState.getData() == null) {
+            return;
+        }
+        SensorValueExtractors.Extractor extractor = extractorFor(sensorState.getData());
+        if (extractor != null) {
+            history.sensor(sensorId, type).append(sensorState.getTimestamp().toEpochMilli(),
+                    extractor.function().applyAsInt(sensorState.getData()));
+        }
+    }
+
+    /**
+     * Проверяет условие на состоянии датчиков из снапшота, оконное — на истории хаба к моменту nowMillis.
+     * Возвращает false, если датчика нет в снапшоте (или в истории) или его тип не подходит к условию.
+     */
+    public boolean test(Map<String, SensorStateAvro> sensorStates, ConditionHistory.HubHistory history, long nowMillis) {
+        if (mode != Mode.LATEST) {
+            SensorHistory sensorHistory = history == null ? null : history.find(sensorId, type);
+            if (sensorHistory == null) {
+                return false;
+            }
+            if (mode == Mode.HOLDS_FOR) {
+                return sensorHistory.holdsFor(predicate, nowMillis, windowMillis);
+            }
+            return testAverage(sensorHistory.timeWeightedAverage(nowMillis, windowMillis));
+        }
+
+        SensorStateAvro sensorState = sensorStates.get(sensorId);
+        if (sensorState == null) {
+            return false;
+        }
+        Object data = sensorState.getData();
+        if (data == null) {
+            return false;
+        }
+        SensorValueExtractors.Extractor extractor = extractorFor(data);
+        return extractor != null && predicate.test(extractor.function().applyAsInt(data));
+    }
+
+    private boolean testAverage(double average) {
+        if (predicate == NEVER || Double.isNaN(average)) {
+            return false;
+        }
+        return operation == ConditionOperationAvro.AVERAGE_GREATER_THAN ? average > value : average < value;
+    }
+
+    private SensorValueExtractors.Extractor extractorFor(Object data) {
+        Class<?> payloadClass = data.getClass();
+        for (SensorValueExtractors.Extractor extractor : extractors) {
+            if (extractor.payloadClass() == payloadClass) {
+                return extractor;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Условия равны, если равны их определения; так сценарий, заново загруженный без изменений,
+     * равен прежнему.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CompiledCondition that)) {
+            return false;
+        }
+        return Objects.equals(sensorId, that.sensorId)
+                && type == that.type
+                && operation == that.operation
+                && Objects.equals(value, that.value)
+                && Objects.equals(windowSeconds, that.windowSeconds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sensorId, type, operation, value, windowSeconds);
+    }
+
+    @Override
+    public String toString() {
+        return sensorId + " " + type + " " + operation + " " + value + (windowSeconds == null ? "" : " " + windowSeconds + "s");
+    }
+
+    private enum Mode {
+        // Последнее значение из снапшота
+        LATEST,
+        // Сравнение выполняется непрерывно всё окно
+        HOLDS_FOR,
+        // Сравнивается среднее по времени за окно
+        AVERAGE
+    }
+}
@@ -0,0 +1,106 @@
+package ru.yandex.practicum.telemetry.analyzer.service.condition;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionTypeAvro;
+import ru.yandex.practicum.telemetry.analyzer.config.ConditionHistoryProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * История показаний датчиков для оконных условий. Хранится только для пар (датчик, тип условия),
+ * на которые ссылаются оконные условия сценариев хаба, и то, какие оконные сценарии уже сработали.
+ * Истории хабов, не получавших снапшотов дольше idle-ttl, удаляются.
+ */
+@Slf4j
+@Component
+public class ConditionHistory {
+
+    private static final int CONDITION_TYPES = ConditionTypeAvro.values().length;
+
+    private final ConditionHistoryProperties properties;
+    private final Map<String, HubHistory> hubs = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweepMillis = new AtomicLong();
+
+    public ConditionHistory(ConditionHistoryProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        Gauge.builder("analyzer.history.hubs", hubs, Map::size)
+                .description("Hubs with sensor history for windowed conditions")
+                .register(meterRegistry);
+    }
+
+    /**
+     * История хаба; создаётся при первом обращении. Вызывается из воркера, обрабатывающего снапшоты хаба.
+     */
+    public HubHistory hub(String hubId) {
+        long now = System.currentTimeMillis();
+        sweepIdle(now);
+        HubHistory history = hubs.computeIfAbsent(hubId, id -> new HubHistory(properties.getCapacity()));
+        history.lastAccessMillis = now;
+        return history;
+    }
+
+    private void sweepIdle(long now) {
+        long next = nextSweepMillis.get();
+        if (now < next || !nextSweepMillis.compareAndSet(next, now + properties.getSweepInterval().toMillis())) {
+            return;
+        }
+        long idleBefore = now - properties.getIdleTtl().toMillis();
+        int before = hubs.size();
+        hubs.values().removeIf(history -> history.lastAccessMillis < idleBefore);
+        if (hubs.size() < before) {
+            log.debug("Dropped sensor history of {} idle hubs", before - hubs.size());
+        }
+    }
+
+    /**
+     * Истории значений датчиков одного хаба. Не потокобезопасна: снапшоты хаба обрабатываются одним воркером.
+     */
+    public static final class HubHistory {
+
+        private final int capacity;
+        // Для каждого датчика — по буферу на тип условия, индекс — ordinal типа
+        private final Map<String, SensorHistory[]> sensors = new HashMap<>();
+        // Оконные сценарии, условия которых выполнялись на предыдущем снапшоте: имя -> правило
+        private final Map<String, Object> satisfiedRules = new HashMap<>();
+        private volatile long lastAccessMillis;
+
+        private HubHistory(int capacity) {
+            this.capacity = capacity;
+        }
+
+        SensorHistory sensor(String sensorId, ConditionTypeAvro type) {
+            SensorHistory[] histories = sensors.computeIfAbsent(sensorId, id -> new SensorHistory[CONDITION_TYPES]);
+            SensorHistory history = histories[type.ordinal()];
+            if (history == null) {
+                history = new SensorHistory(capacity);
+                histories[type.ordinal()] = history;
+            }
+            return history;
+        }
+
+        SensorHistory find(String sensorId, ConditionTypeAvro type) {
+            SensorHistory[] histories = sensors.get(sensorId);
+            return histories == null ? null : histories[type.ordinal()];
+        }
+
+        /**
+         * Запоминает результат проверки оконного сценария и возвращает true только при переходе
+         * от невыполненных условий к выполненным: пока окно остаётся выполненным, действия не повторяются.
+         * Сценарий, пересозданный с тем же именем и другими условиями или действиями, — другое правило,
+         * и для него отсчёт начинается заново; правило, заново загруженное без изменений, — то же самое.
+         */
+        public boolean rising(String scenarioName, Object rule, boolean satisfied) {
+            if (!satisfied) {
+                satisfiedRules.remove(scenarioName);
+                return false;
+            }
+            return !rule.equals(satisfiedRules.put(scenarioName, rule));
+        }
+    }
+}
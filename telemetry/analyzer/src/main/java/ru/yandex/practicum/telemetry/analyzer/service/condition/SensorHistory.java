@@ -0,0 +1,93 @@
+package ru.yandex.practicum.telemetry.analyzer.service.condition;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Последние показания одного значения датчика в кольцевом буфере из двух примитивных массивов.
+ * Добавление — O(1), память фиксирована ёмкостью. Показание действует до следующего,
+ * поэтому проверки за окно учитывают и показание, полученное раньше начала окна.
+ * Не потокобезопасен: снапшоты хаба обрабатываются одним воркером.
+ */
+final class SensorHistory {
+
+    private final long[] timestamps;
+    private final int[] values;
+    // Индекс следующей записи и число заполненных ячеек
+    private int head;
+    private int size;
+
+    SensorHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Sensor history capacity must be positive: " + capacity);
+        }
+        this.timestamps = new long[capacity];
+        this.values = new int[capacity];
+    }
+
+    /**
+     * Добавляет показание. Повторы и показания старше последнего пропускаются:
+     * один и тот же показатель приходит в каждом снапшоте хаба, пока не сменится.
+     */
+    void append(long timestampMillis, int value) {
+        if (size > 0 && timestampMillis <= timestamps[newest()]) {
+            return;
+        }
+        timestamps[head] = timestampMillis;
+        values[head] = value;
+        head = (head + 1) % timestamps.length;
+        if (size < timestamps.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Истинно, если значение удовлетворяет условию непрерывно не меньше windowMillis к моменту nowMillis.
+     * Если буфер не покрывает окно, а все сохранённые показания удовлетворяют условию, ответ — false:
+     * что было до самого старого показания, неизвестно.
+     */
+    boolean holdsFor(IntPredicate predicate, long nowMillis, long windowMillis) {
+        long since = -1;
+        for (int i = 0, index = newest(); i < size; i++, index = previous(index)) {
+            if (!predicate.test(values[index])) {
+                break;
+            }
+            since = timestamps[index];
+            if (nowMillis - since >= windowMillis) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Среднее по времени значение за [nowMillis - windowMillis, nowMillis]: каждое показание
+     * весит столько, сколько действовало внутри окна. Если история короче окна, среднее
+     * считается по покрытой части. NaN, если показаний нет.
+     */
+    double timeWeightedAverage(long nowMillis, long windowMillis) {
+        if (size == 0) {
+            return Double.NaN;
+        }
+        long from = nowMillis - windowMillis;
+        long end = nowMillis;
+        double weighted = 0;
+        long total = 0;
+        for (int i = 0, index = newest(); i < size && end > from; i++, index = previous(index)) {
+            long start = Math.max(timestamps[index], from);
+            if (end > start) {
+                weighted += (double) values[index] * (end - start);
+                total += end - start;
+            }
+            end = Math.min(end, timestamps[index]);
+        }
+        return total == 0 ? values[newest()] : weighted / total;
+    }
+
+    private int newest() {
+        return previous(head);
+    }
+
+    private int previous(int index) {
+        return index == 0 ? timestamps.length - 1 : index - 1;
+    }
+}
@@ -0,0 +1,55 @@
+package ru.yandex.practicum.telemetry.analyzer.service.condition;
+
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.LightSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SwitchSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.TemperatureSensorAvro;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Таблица извлечения значения датчика по паре (тип условия, класс payload'а).
+ * Экстракторы возвращают примитивный int, булевы показания переводятся в 0/1.
+ */
+final class SensorValueExtractors {
+
+    private static final Map<ConditionTypeAvro, Extractor[]> EXTRACTORS = new EnumMap<>(ConditionTypeAvro.class);
+
+    static {
+        register(ConditionTypeAvro.TEMPERATURE,
+                new Extractor(ClimateSensorAvro.class, data -> ((ClimateSensorAvro) data).getTemperatureC()),
+                new Extractor(TemperatureSensorAvro.class, data -> ((TemperatureSensorAvro) data).getTemperatureC()));
+        register(ConditionTypeAvro.HUMIDITY,
+                new Extractor(ClimateSensorAvro.class, data -> ((ClimateSensorAvro) data).getHumidity()));
+        register(ConditionTypeAvro.CO2LEVEL,
+                new Extractor(ClimateSensorAvro.class, data -> ((ClimateSensorAvro) data).getCo2Level()));
+        register(ConditionTypeAvro.LUMINOSITY,
+                new Extractor(LightSensorAvro.class, data -> ((LightSensorAvro) data).getLuminosity()));
+        register(ConditionTypeAvro.MOTION,
+                new Extractor(MotionSensorAvro.class, data -> ((MotionSensorAvro) data).getMotion() ? 1 : 0));
+        register(ConditionTypeAvro.SWITCH,
+                new Extractor(SwitchSensorAvro.class, data -> ((SwitchSensorAvro) data).getState() ? 1 : 0));
+    }
+
+    private SensorValueExtractors() {
+    }
+
+    static Extractor[] forType(ConditionTypeAvro type) {
+        Extractor[] extractors = EXTRACTORS.get(type);
+        if (extractors == null) {
+            throw new IllegalArgumentException("No value extractor for condition type " + type);
+        }
+        return extractors;
+    }
+
+    private static void register(ConditionTypeAvro type, Extractor... extractors) {
+        EXTRACTORS.put(type, extractors);
+    }
+
+    record Extractor(Class<?> payloadClass, ToIntFunction<Object> function) {
+    }
+}
@@ -1,6 +1,12 @@
+-- создаём последовательности для идентификаторов; шаг совпадает с allocationSize в сущностях,
+-- чтобы Hibernate выдавал id пачками и мог группировать вставки в JDBC batch
+CREATE SEQUENCE IF NOT EXISTS scenarios_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS conditions_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS actions_seq INCREMENT BY 50;
+
 -- создаём таблицу scenarios
 CREATE TABLE IF NOT EXISTS scenarios (
-    id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    id BIGINT PRIMARY KEY,
     hub_id VARCHAR,
     name VARCHAR,
     UNIQUE(hub_id, name)
@@ -14,7 +20,7 @@ CREATE TABLE IF NOT EXISTS sensors (
 
 -- создаём таблицу conditions
 CREATE TABLE IF NOT EXISTS conditions (
-    id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    id BIGINT PRIMARY KEY,
     type VARCHAR,
     operation VARCHAR,
     value INTEGER
@@ -22,7 +28,7 @@ CREATE TABLE IF NOT EXISTS conditions (
 
 -- создаём таблицу actions
 CREATE TABLE IF NOT EXISTS actions (
-    id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    id BIGINT PRIMARY KEY,
     type VARCHAR,
     value INTEGER
 );
@@ -66,4 +72,10 @@ EXECUTE FUNCTION check_hub_id();
 CREATE OR REPLACE TRIGGER tr_bi_scenario_actions_hub_id_check
 BEFORE INSERT ON scenario_actions
 FOR EACH ROW
-EXECUTE FUNCTION check_hub_id();
\ No newline at end of file
+EXECUTE FUNCTION check_hub_id();
+
+-- сдвигаем последовательности за уже существующие id (для баз, созданных через ddl-auto);
+-- последовательность, уже сдвинутую seed-sequences.sql, назад не откатываем
+SELECT setval('scenarios_seq', GREATEST((SELECT last_value FROM scenarios_seq), (SELECT COALESCE(MAX(id), 0) FROM scenarios) + 50));
+SELECT setval('conditions_seq', GREATEST((SELECT last_value FROM conditions_seq), (SELECT COALESCE(MAX(id), 0) FROM conditions) + 50));
+SELECT setval('actions_seq', GREATEST((SELECT last_value FROM actions_seq), (SELECT COALESCE(MAX(id), 0) FROM actions) + 50));
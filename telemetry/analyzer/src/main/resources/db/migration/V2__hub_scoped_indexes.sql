@@ -0,0 +1,50 @@
+-- покрывающий индекс для выборки сценариев хаба: id и name читаются прямо из индекса
+CREATE INDEX IF NOT EXISTS ix_scenarios_hub_id ON scenarios (hub_id) INCLUDE (id, name);
+
+-- findByIdAndHubId, deleteByIdAndHubId и findAllByIdInAndHubId фильтруют датчики по хабу
+CREATE INDEX IF NOT EXISTS ix_sensors_hub_id ON sensors (hub_id, id);
+
+-- первичные ключи связующих таблиц начинаются со scenario_id; при удалении датчика
+-- связи ищутся по sensor_id, поэтому без этих индексов каждое удаление — полный скан
+CREATE INDEX IF NOT EXISTS ix_scenario_conditions_sensor_id ON scenario_conditions (sensor_id);
+CREATE INDEX IF NOT EXISTS ix_scenario_actions_sensor_id ON scenario_actions (sensor_id);
+
+-- проверка хаба теперь выполняется один раз на INSERT-запрос по всем вставленным строкам
+-- (через transition table) вместо двух подзапросов на каждую строку;
+-- вместе с reWriteBatchedInserts JDBC batch превращается в один многострочный INSERT
+CREATE OR REPLACE FUNCTION check_hub_id_batch()
+RETURNS TRIGGER AS
+'
+DECLARE
+    mismatch RECORD;
+BEGIN
+    SELECT n.scenario_id, n.sensor_id INTO mismatch
+    FROM inserted n
+    JOIN scenarios s ON s.id = n.scenario_id
+    JOIN sensors se ON se.id = n.sensor_id
+    WHERE s.hub_id <> se.hub_id
+    LIMIT 1;
+
+    IF FOUND THEN
+        RAISE EXCEPTION ''Hub IDs do not match for scenario_id % and sensor_id %'', mismatch.scenario_id, mismatch.sensor_id;
+    END IF;
+    RETURN NULL;
+END;
+'
+LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS tr_bi_scenario_conditions_hub_id_check ON scenario_conditions;
+DROP TRIGGER IF EXISTS tr_bi_scenario_actions_hub_id_check ON scenario_actions;
+DROP FUNCTION IF EXISTS check_hub_id();
+
+CREATE TRIGGER tr_ai_scenario_conditions_hub_id_check
+AFTER INSERT ON scenario_conditions
+REFERENCING NEW TABLE AS inserted
+FOR EACH STATEMENT
+EXECUTE FUNCTION check_hub_id_batch();
+
+CREATE TRIGGER tr_ai_scenario_actions_hub_id_check
+AFTER INSERT ON scenario_actions
+REFERENCING NEW TABLE AS inserted
+FOR EACH STATEMENT
+EXECUTE FUNCTION check_hub_id_batch();
@@ -0,0 +1,2 @@
+-- окно в секундах для операций *_FOR и AVERAGE_*; у мгновенных условий остаётся NULL
+ALTER TABLE conditions ADD COLUMN IF NOT EXISTS window_seconds INTEGER;
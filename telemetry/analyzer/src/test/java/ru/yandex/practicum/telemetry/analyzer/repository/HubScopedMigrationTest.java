@@ -0,0 +1,156 @@
+package ru.yandex.practicum.telemetry.analyzer.repository;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+/**
+ * Миграции на настоящем PostgreSQL: индексы V2 и statement-триггер check_hub_id_batch,
+ * через который проходит JDBC batch связей сценария с датчиками (reWriteBatchedInserts, как в application.yaml).
+ */
+class HubScopedMigrationTest {
+
+    private static EmbeddedPostgres postgres;
+    private static String url;
+
+    @BeforeAll
+    static void startDatabase() throws IOException {
+        // initdb и postgres отказываются запускаться от root
+        assumeFalse("root".equals(System.getProperty("user.name")), "PostgreSQL cannot run as root");
+        postgres = EmbeddedPostgres.start();
+        url = postgres.getJdbcUrl("postgres", "postgres") + "&reWriteBatchedInserts=true";
+        Flyway.configure()
+                .dataSource(postgres.getPostgresDatabase())
+                .locations("classpath:db/migration")
+                .load()
+                .migrate();
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @BeforeEach
+    void seed() throws SQLException {
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            statement.execute("TRUNCATE scenario_conditions, scenario_actions, conditions, actions, scenarios, sensors");
+            statement.execute("INSERT INTO sensors (id, hub_id) VALUES "
+                    + "('motion-1', 'hub-1'), ('light-1', 'hub-1'), ('switch-1', 'hub-1'), ('motion-2', 'hub-2')");
+            statement.execute("INSERT INTO scenarios (id, hub_id, name) VALUES (1, 'hub-1', 'lights')");
+            statement.execute("INSERT INTO conditions (id, type, operation, value) VALUES "
+                    + "(1, 'MOTION', 'EQUALS', 1), (2, 'LUMINOSITY', 'LOWER_THAN', 100)");
+            statement.execute("INSERT INTO actions (id, type, value) VALUES (1, 'ACTIVATE', NULL), (2, 'SET_VALUE', 50)");
+        }
+    }
+
+    @Test
+    void createsHubScopedIndexesAndStatementLevelTriggers() throws SQLException {
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            Set<String> indexes = new HashSet<>();
+            try (ResultSet rs = statement.executeQuery("SELECT indexname FROM pg_indexes WHERE schemaname = 'public'")) {
+                while (rs.next()) {
+                    indexes.add(rs.getString(1));
+                }
+            }
+            assertTrue(indexes.containsAll(Set.of("ix_scenarios_hub_id", "ix_sensors_hub_id",
+                    "ix_scenario_conditions_sensor_id", "ix_scenario_actions_sensor_id")), indexes::toString);
+
+            Set<String> triggers = new HashSet<>();
+            // бит 0 в tgtype — FOR EACH ROW; у statement-триггеров он сброшен
+            try (ResultSet rs = statement.executeQuery(
+                    "SELECT tgname FROM pg_trigger WHERE NOT tgisinternal AND tgtype & 1 = 0")) {
+                while (rs.next()) {
+                    triggers.add(rs.getString(1));
+                }
+            }
+            assertEquals(Set.of("tr_ai_scenario_conditions_hub_id_check", "tr_ai_scenario_actions_hub_id_check"),
+                    triggers);
+        }
+    }
+
+    @Test
+    void acceptsBatchOfLinksWithinOneHub() throws SQLException {
+        try (Connection connection = connect()) {
+            insertLinks(connection, "scenario_conditions", "condition_id",
+                    new Object[][]{{"motion-1", 1L}, {"light-1", 2L}});
+            insertLinks(connection, "scenario_actions", "action_id",
+                    new Object[][]{{"light-1", 1L}, {"switch-1", 2L}});
+
+            assertEquals(2, count(connection, "scenario_conditions"));
+            assertEquals(2, count(connection, "scenario_actions"));
+        }
+    }
+
+    @Test
+    void rejectsWholeConditionBatchWhenOneSensorBelongsToAnotherHub() throws SQLException {
+        try (Connection connection = connect()) {
+            BatchUpdateException e = assertThrows(BatchUpdateException.class, () ->
+                    insertLinks(connection, "scenario_conditions", "condition_id",
+                            new Object[][]{{"motion-1", 1L}, {"motion-2", 2L}}));
+
+            assertTrue(e.getMessage().contains("Hub IDs do not match for scenario_id 1 and sensor_id motion-2"),
+                    e::getMessage);
+            assertEquals(0, count(connection, "scenario_conditions"));
+        }
+    }
+
+    @Test
+    void rejectsWholeActionBatchWhenOneSensorBelongsToAnotherHub() throws SQLException {
+        try (Connection connection = connect()) {
+            BatchUpdateException e = assertThrows(BatchUpdateException.class, () ->
+                    insertLinks(connection, "scenario_actions", "action_id",
+                            new Object[][]{{"motion-2", 1L}, {"switch-1", 2L}}));
+
+            assertTrue(e.getMessage().contains("Hub IDs do not match for scenario_id 1 and sensor_id motion-2"),
+                    e::getMessage);
+            assertEquals(0, count(connection, "scenario_actions"));
+        }
+    }
+
+    private static void insertLinks(Connection connection, String table, String idColumn, Object[][] links)
+            throws SQLException {
+        String sql = "INSERT INTO " + table + " (scenario_id, sensor_id, " + idColumn + ") VALUES (1, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (Object[] link : links) {
+                statement.setString(1, (String) link[0]);
+                statement.setLong(2, (Long) link[1]);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static long count(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT count(*) FROM " + table)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static Connection connect() throws SQLException {
+        return DriverManager.getConnection(url);
+    }
+}
@@ -0,0 +1,108 @@
+package ru.yandex.practicum.telemetry.analyzer.service.condition;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.kafka.telemetry.event.ClimateSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionOperationAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.MotionSensorAvro;
+import ru.yandex.practicum.kafka.telemetry.event.SensorStateAvro;
+import ru.yandex.practicum.telemetry.analyzer.config.ConditionHistoryProperties;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверка условия на снапшоте не должна создавать объектов. Аллокации считаются счётчиком потока
+ * из com.sun.management.ThreadMXBean: даже 16 байт на вызов дали бы мегабайты на всю серию.
+ */
+class CompiledConditionAllocationTest {
+
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 200_000;
+    private static final long NOW = 1_700_000_060_000L;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Map<String, SensorStateAvro> states;
+    private ConditionHistory.HubHistory history;
+
+    @BeforeEach
+    void setUp() {
+        states = new HashMap<>();
+        states.put("climate-1", state(NOW, ClimateSensorAvro.newBuilder()
+                .setTemperatureC(30).setHumidity(40).setCo2Level(600).build()));
+        states.put("motion-1", state(NOW, MotionSensorAvro.newBuilder()
+                .setLinkQuality(90).setMotion(true).setVoltage(220).build()));
+
+        ConditionHistory conditionHistory = new ConditionHistory(new ConditionHistoryProperties(), new SimpleMeterRegistry());
+        history = conditionHistory.hub("hub-1");
+        CompiledCondition recorder = CompiledCondition.compile("climate-1", ConditionTypeAvro.TEMPERATURE,
+                ConditionOperationAvro.GREATER_THAN_FOR, 25, 60);
+        for (long millis = NOW - 120_000; millis <= NOW; millis += 10_000) {
+            recorder.record(Map.of("climate-1", state(millis, ClimateSensorAvro.newBuilder()
+                    .setTemperatureC(30).setHumidity(40).setCo2Level(600).build())), history);
+        }
+    }
+
+    @Test
+    void latestValueCheckDoesNotAllocate() {
+        assertNoAllocation(CompiledCondition.compile("climate-1", ConditionTypeAvro.TEMPERATURE,
+                ConditionOperationAvro.GREATER_THAN, 25, null));
+    }
+
+    @Test
+    void booleanSensorCheckDoesNotAllocate() {
+        assertNoAllocation(CompiledCondition.compile("motion-1", ConditionTypeAvro.MOTION,
+                ConditionOperationAvro.EQUALS, 1, null));
+    }
+
+    @Test
+    void holdsForCheckDoesNotAllocate() {
+        assertNoAllocation(CompiledCondition.compile("climate-1", ConditionTypeAvro.TEMPERATURE,
+                ConditionOperationAvro.GREATER_THAN_FOR, 25, 60));
+    }
+
+    @Test
+    void averageCheckDoesNotAllocate() {
+        assertNoAllocation(CompiledCondition.compile("climate-1", ConditionTypeAvro.TEMPERATURE,
+                ConditionOperationAvro.AVERAGE_GREATER_THAN, 25, 60));
+    }
+
+    private void assertNoAllocation(CompiledCondition condition) {
+        assertEquals(WARMUP, run(condition, WARMUP), "condition must hold on the prepared snapshot");
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        int satisfied = run(condition, ITERATIONS);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertEquals(ITERATIONS, satisfied);
+        // Небольшой запас на служебные аллокации JVM в потоке; объект на вызов в него не укладывается
+        assertTrue(allocated < ITERATIONS, () -> condition + " allocated " + allocated + " bytes in "
+                + ITERATIONS + " checks");
+    }
+
+    private int run(CompiledCondition condition, int iterations) {
+        int satisfied = 0;
+        for (int i = 0; i < iterations; i++) {
+            if (condition.test(states, history, NOW)) {
+                satisfied++;
+            }
+        }
+        return satisfied;
+    }
+
+    private static SensorStateAvro state(long millis, Object data) {
+        return SensorStateAvro.newBuilder()
+                .setTimestamp(Instant.ofEpochMilli(millis))
+                .setData(data)
+                .build();
+    }
+}
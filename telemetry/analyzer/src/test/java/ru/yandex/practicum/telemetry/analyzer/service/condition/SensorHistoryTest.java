@@ -0,0 +1,110 @@
+package ru.yandex.practicum.telemetry.analyzer.service.condition;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверки за окно по кольцевому буферу показаний: покрытие окна, вытеснение старых показаний
+ * и показание, полученное до начала окна.
+ */
+class SensorHistoryTest {
+
+    private static final IntPredicate ABOVE_25 = value -> value > 25;
+
+    @Test
+    void holdsForWhenReadingsCoverWholeWindow() {
+        SensorHistory history = new SensorHistory(8);
+        history.append(0, 30);
+        history.append(10_000, 30);
+
+        assertTrue(history.holdsFor(ABOVE_25, 60_000, 60_000));
+    }
+
+    @Test
+    void doesNotHoldWhenHistoryIsShorterThanWindow() {
+        SensorHistory history = new SensorHistory(8);
+        history.append(0, 30);
+        history.append(10_000, 30);
+
+        assertFalse(history.holdsFor(ABOVE_25, 60_000, 70_000));
+    }
+
+    @Test
+    void holdsOnlySinceLastFailingReading() {
+        SensorHistory history = new SensorHistory(8);
+        history.append(0, 20);
+        history.append(30_000, 30);
+        history.append(50_000, 30);
+
+        assertFalse(history.holdsFor(ABOVE_25, 60_000, 60_000));
+        assertTrue(history.holdsFor(ABOVE_25, 60_000, 30_000));
+    }
+
+    @Test
+    void overflowForgetsOldestReading() {
+        SensorHistory history = new SensorHistory(2);
+        history.append(0, 30);
+        history.append(10_000, 30);
+        history.append(20_000, 30);
+
+        assertFalse(history.holdsFor(ABOVE_25, 60_000, 60_000));
+        assertTrue(history.holdsFor(ABOVE_25, 60_000, 50_000));
+    }
+
+    @Test
+    void skipsRepeatedAndOlderReadings() {
+        SensorHistory history = new SensorHistory(8);
+        history.append(10_000, 30);
+        history.append(10_000, 20);
+        history.append(5_000, 20);
+
+        assertTrue(history.holdsFor(ABOVE_25, 20_000, 10_000));
+        assertEquals(30.0, history.timeWeightedAverage(20_000, 10_000));
+    }
+
+    @Test
+    void averageWeighsReadingStartedBeforeWindowByItsPartInsideWindow() {
+        SensorHistory history = new SensorHistory(8);
+        history.append(0, 10);
+        history.append(50_000, 20);
+
+        // [40с, 50с] — 10, [50с, 60с] — 20
+        assertEquals(15.0, history.timeWeightedAverage(60_000, 20_000));
+    }
+
+    @Test
+    void averageUsesCoveredPartWhenHistoryIsShorterThanWindow() {
+        SensorHistory history = new SensorHistory(8);
+        history.append(50_000, 20);
+
+        assertEquals(20.0, history.timeWeightedAverage(60_000, 60_000));
+    }
+
+    @Test
+    void averageAfterOverflowIgnoresEvictedReading() {
+        SensorHistory history = new SensorHistory(2);
+        history.append(0, 100);
+        history.append(10_000, 10);
+        history.append(20_000, 20);
+
+        assertEquals(15.0, history.timeWeightedAverage(30_000, 30_000));
+    }
+
+    @Test
+    void averageOfReadingTakenAtEvaluationTimeIsThatReading() {
+        SensorHistory history = new SensorHistory(8);
+        history.append(60_000, 5);
+
+        assertEquals(5.0, history.timeWeightedAverage(60_000, 60_000));
+    }
+
+    @Test
+    void averageOfEmptyHistoryIsNaN() {
+        assertTrue(Double.isNaN(new SensorHistory(8).timeWeightedAverage(60_000, 60_000)));
+    }
+}
\ No newline at end of file
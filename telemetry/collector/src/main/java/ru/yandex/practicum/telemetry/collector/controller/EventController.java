@@ -1,33 +1,73 @@
 package ru.yandex.practicum.telemetry.collector.controller;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.extern.slf4j.Slf4j;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
+import ru.yandex.practicum.grpc.telemetry.event.HubEventProto;
+import ru.yandex.practicum.grpc.telemetry.event.SensorEventProto;
 import ru.yandex.practicum.telemetry.collector.dto.hub.HubEvent;
 import ru.yandex.practicum.telemetry.collector.dto.hub.HubEventType;
 import ru.yandex.practicum.telemetry.collector.dto.sensor.SensorEvent;
 import ru.yandex.practicum.telemetry.collector.dto.sensor.SensorEventType;
+import ru.yandex.practicum.telemetry.collector.mapper.ProtoEventMapper;
+import ru.yandex.practicum.telemetry.collector.ratelimit.HubRateLimiter;
+import ru.yandex.practicum.telemetry.collector.ratelimit.RateLimitExceededException;
 import ru.yandex.practicum.telemetry.collector.service.hub.HubEventHandler;
 import ru.yandex.practicum.telemetry.collector.service.sensor.SensorEventHandler;
 
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
 @RestController
-@RequestMapping(path = "/events", consumes = MediaType.APPLICATION_JSON_VALUE)
+@RequestMapping(path = "/events")
 public class EventController {
+    public static final String APPLICATION_PROTOBUF_VALUE = "application/x-protobuf";
+
+    // Сколько ошибок по строкам NDJSON возвращать в ответе
+    private static final int MAX_REPORTED_ERRORS = 100;
+
     private final Map<SensorEventType, SensorEventHandler> sensorEventHandlers;
     private final Map<HubEventType, HubEventHandler> hubEventHandlers;
+    private final HubRateLimiter rateLimiter;
+    private final ProtoEventMapper protoEventMapper;
+    private final Validator validator;
+    private final ObjectReader sensorEventReader;
+    private final ObjectReader hubEventReader;
 
-    public EventController(List<SensorEventHandler> sensorEventHandlerList, List<HubEventHandler> hubEventHandlerList) {
+    public EventController(List<SensorEventHandler> sensorEventHandlerList,
+                           List<HubEventHandler> hubEventHandlerList,
+                           HubRateLimiter rateLimiter,
+                           ProtoEventMapper protoEventMapper,
+                           Validator validator,
+                           ObjectMapper objectMapper) {
+        this.rateLimiter = rateLimiter;
+        this.protoEventMapper = protoEventMapper;
+        this.validator = validator;
+        this.sensorEventReader = objectMapper.readerFor(SensorEvent.class);
+        this.hubEventReader = objectMapper.readerFor(HubEvent.class);
         // Добавлена проверка на дубликаты
         this.sensorEventHandlers = sensorEventHandlerList.stream()
                 .collect(Collectors.toMap(
@@ -51,8 +91,104 @@ public class EventController {
                 ));
     }
 
-    @PostMapping("/sensors")
+    @PostMapping(path = "/sensors", consumes = MediaType.APPLICATION_JSON_VALUE)
     public void collectSensorEvent(@Valid @RequestBody SensorEvent request) {
+        handleSensorEvent(request);
+    }
+
+    @PostMapping(path = "/hubs", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void collectHubEvent(@Valid @RequestBody HubEvent request) {
+        handleHubEvent(request);
+    }
+
+    @PostMapping(path = "/sensors", consumes = APPLICATION_PROTOBUF_VALUE)
+    public void collectSensorEventProto(InputStream body) throws IOException {
+        SensorEvent event = protoEventMapper.toSensorEvent(parse(() -> SensorEventProto.parseFrom(body)));
+        validate(event);
+        handleSensorEvent(event);
+    }
+
+    @PostMapping(path = "/hubs", consumes = APPLICATION_PROTOBUF_VALUE)
+    public void collectHubEventProto(InputStream body) throws IOException {
+        HubEvent event = protoEventMapper.toHubEvent(parse(() -> HubEventProto.parseFrom(body)));
+        validate(event);
+        handleHubEvent(event);
+    }
+
+    /**
+     * Пакетная загрузка: по одному JSON-событию на строку. Тело читается потоково, событие за событием,
+     * поэтому размер пакета не ограничен памятью. Ошибка в одной строке не прерывает остальные.
+     */
+    @PostMapping(path = "/sensors", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public BulkIngestResult collectSensorEvents(InputStream body) throws IOException {
+        return ingest(sensorEventReader.readValues(body), this::handleSensorEvent);
+    }
+
+    @PostMapping(path = "/hubs", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public BulkIngestResult collectHubEvents(InputStream body) throws IOException {
+        return ingest(hubEventReader.readValues(body), this::handleHubEvent);
+    }
+
+    private <T> BulkIngestResult ingest(MappingIterator<T> events, Consumer<T> handler) throws IOException {
+        int accepted = 0;
+        int rejected = 0;
+        List<String> errors = new ArrayList<>();
+        try (events) {
+            int line = 0;
+            while (true) {
+                try {
+                    if (!events.hasNextValue()) {
+                        break;
+                    }
+                    line = events.getParser().currentTokenLocation().getLineNr();
+                    T event = events.nextValue();
+                    validate(event);
+                    handler.accept(event);
+                    accepted++;
+                } catch (IOException | RuntimeException e) {
+                    rejected++;
+                    if (e instanceof JsonParseException parseException && parseException.getLocation() != null) {
+                        line = parseException.getLocation().getLineNr();
+                    }
+                    if (errors.size() < MAX_REPORTED_ERRORS) {
+                        String reason = e instanceof ResponseStatusException statusException
+                                ? statusException.getReason()
+                                : e.getMessage();
+                        errors.add("line " + line + ": " + reason);
+                    }
+                    // Событие, не подошедшее по структуре, итератор пропускает целиком и читает следующее.
+                    // После синтаксической ошибки JSON или ошибки чтения тела позиция в потоке не определена
+                    if (e instanceof IOException && !(e instanceof JsonMappingException)) {
+                        break;
+                    }
+                }
+            }
+        }
+        return new BulkIngestResult(accepted, rejected, errors);
+    }
+
+    private <T> T parse(ProtoParser<T> parser) throws IOException {
+        try {
+            return parser.parse();
+        } catch (InvalidProtocolBufferException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Некорректное protobuf-сообщение: " + e.getMessage(), e);
+        }
+    }
+
+    // Тело, прочитанное не через @Valid @RequestBody, проверяем тем же валидатором вручную
+    private void validate(Object event) {
+        Set<ConstraintViolation<Object>> violations = validator.validate(event);
+        if (!violations.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, violations.stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .collect(Collectors.joining(", ")));
+        }
+    }
+
+    private void handleSensorEvent(SensorEvent request) {
+        if (!rateLimiter.tryAcquire(request.getHubId())) {
+            throw new RateLimitExceededException(request.getHubId());
+        }
         if (sensorEventHandlers.containsKey(request.getType())) {
             sensorEventHandlers.get(request.getType()).handle(request);
         } else {
@@ -60,12 +196,22 @@ public class EventController {
         }
     }
 
-    @PostMapping("/hubs")
-    public void collectHubEvent(@Valid @RequestBody HubEvent request) {
+    private void handleHubEvent(HubEvent request) {
+        if (!rateLimiter.tryAcquire(request.getHubId())) {
+            throw new RateLimitExceededException(request.getHubId());
+        }
         if (hubEventHandlers.containsKey(request.getType())) {
             hubEventHandlers.get(request.getType()).handle(request);
         } else {
             throw new IllegalArgumentException("Не найден обработчик для события " + request.getType());
         }
     }
-}
\ No newline at end of file
+
+    @FunctionalInterface
+    private interface ProtoParser<T> {
+        T parse() throws IOException;
+    }
+
+    public record BulkIngestResult(int accepted, int rejected, List<String> errors) {
+    }
+}
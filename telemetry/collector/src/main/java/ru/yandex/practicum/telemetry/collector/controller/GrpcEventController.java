@@ -14,11 +14,11 @@ import ru.yandex.practicum.telemetry.collector.dto.hub.*;
 import ru.yandex.practicum.telemetry.collector.dto.hub.HubEvent;
 import ru.yandex.practicum.telemetry.collector.dto.sensor.*;
 import ru.yandex.practicum.telemetry.collector.dto.sensor.SensorEvent;
+import ru.yandex.practicum.telemetry.collector.mapper.ProtoEventMapper;
+import ru.yandex.practicum.telemetry.collector.ratelimit.HubRateLimiter;
 import ru.yandex.practicum.telemetry.collector.service.hub.HubEventHandler;
 import ru.yandex.practicum.telemetry.collector.service.sensor.SensorEventHandler;
 
-import java.time.Instant;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
@@ -30,11 +30,17 @@ public class GrpcEventController extends CollectorControllerGrpc.CollectorContro
 
     private final Map<SensorEventProto.PayloadCase, SensorEventHandler> sensorEventHandlers;
     private final Map<HubEventProto.PayloadCase, HubEventHandler> hubEventHandlers;
+    private final HubRateLimiter rateLimiter;
+    private final ProtoEventMapper eventMapper;
 
     @Autowired
     public GrpcEventController(
             List<SensorEventHandler> sensorEventHandlerList,
-            List<HubEventHandler> hubEventHandlerList) {
+            List<HubEventHandler> hubEventHandlerList,
+            HubRateLimiter rateLimiter,
+            ProtoEventMapper eventMapper) {
+        this.rateLimiter = rateLimiter;
+        this.eventMapper = eventMapper;
 
         this.sensorEventHandlers = sensorEventHandlerList.stream()
                 .collect(Collectors.toMap(
@@ -76,6 +82,10 @@ public class GrpcEventController extends CollectorControllerGrpc.CollectorContro
 
     @Override
     public void collectSensorEvent(SensorEventProto request, StreamObserver<Empty> responseObserver) {
+        if (!rateLimiter.tryAcquire(request.getHubId())) {
+            rejectOverQuota(request.getHubId(), responseObserver);
+            return;
+        }
         try {
             log.info("Получен gRPC запрос от сенсора: sensorId={}, hubId={}, type={}",
                     request.getId(), request.getHubId(), request.getPayloadCase());
@@ -83,7 +93,7 @@ public class GrpcEventController extends CollectorControllerGrpc.CollectorContro
             SensorEventProto.PayloadCase payloadCase = request.getPayloadCase();
 
             if (sensorEventHandlers.containsKey(payloadCase)) {
-                SensorEvent dto = convertToSensorEventDto(request);
+                SensorEvent dto = eventMapper.toSensorEvent(request);
                 sensorEventHandlers.get(payloadCase).handle(dto);
             } else {
                 throw new IllegalArgumentException("Не найден обработчик для события " + payloadCase);
@@ -100,6 +110,10 @@ public class GrpcEventController extends CollectorControllerGrpc.CollectorContro
 
     @Override
     public void collectHubEvent(HubEventProto request, StreamObserver<Empty> responseObserver) {
+        if (!rateLimiter.tryAcquire(request.getHubId())) {
+            rejectOverQuota(request.getHubId(), responseObserver);
+            return;
+        }
         try {
             log.info("Получен gRPC запрос от хаба: hubId={}, type={}",
                     request.getHubId(), request.getPayloadCase());
@@ -107,12 +121,12 @@ public class GrpcEventController extends CollectorControllerGrpc.CollectorContro
             HubEventProto.PayloadCase payloadCase = request.getPayloadCase();
 
             if (hubEventHandlers.containsKey(payloadCase)) {
-                HubEvent dto = convertToHubEventDto(request);
+                HubEvent dto = eventMapper.toHubEvent(request);
                 hubEventHandlers.get(payloadCase).handle(dto);
             } else {
                 // Для SCENARIO событий может не быть обработчиков - это нормально
                 log.info("Обработчик для события {} не найден, создаем DTO", payloadCase);
-                HubEvent dto = convertToHubEventDto(request);
+                HubEvent dto = eventMapper.toHubEvent(request);
                 log.info("Создан DTO для события: {}", dto);
             }
 
@@ -125,192 +139,10 @@ public class GrpcEventController extends CollectorControllerGrpc.CollectorContro
         }
     }
 
-    private SensorEvent convertToSensorEventDto(SensorEventProto proto) {
-        Instant timestamp = Instant.ofEpochSecond(
-                proto.getTimestamp().getSeconds(),
-                proto.getTimestamp().getNanos()
-        );
-
-        SensorEventProto.PayloadCase payloadCase = proto.getPayloadCase();
-        SensorEvent event = createSensorEventByType(payloadCase);
-
-        event.setId(proto.getId());
-        event.setHubId(proto.getHubId());
-        event.setTimestamp(timestamp);
-
-        fillSensorEventData(event, proto);
-
-        return event;
-    }
-
-    private SensorEvent createSensorEventByType(SensorEventProto.PayloadCase payloadCase) {
-        switch (payloadCase) {
-            case MOTION_SENSOR:
-                return new MotionSensorEvent();
-            case TEMPERATURE_SENSOR:
-                return new TemperatureSensorEvent();
-            case LIGHT_SENSOR:
-                return new LightSensorEvent();
-            case CLIMATE_SENSOR:
-                return new ClimateSensorEvent();
-            case SWITCH_SENSOR:
-                return new SwitchSensorEvent();
-            default:
-                throw new IllegalArgumentException("Неизвестный тип сенсора: " + payloadCase);
-        }
-    }
-
-    private void fillSensorEventData(SensorEvent event, SensorEventProto proto) {
-        SensorEventProto.PayloadCase payloadCase = proto.getPayloadCase();
-
-        switch (payloadCase) {
-            case MOTION_SENSOR:
-                MotionSensorProto motionProto = proto.getMotionSensor();
-                MotionSensorEvent motionEvent = (MotionSensorEvent) event;
-                motionEvent.setLinkQuality(motionProto.getLinkQuality());
-                motionEvent.setMotion(motionProto.getMotion());
-                motionEvent.setVoltage(motionProto.getVoltage());
-                break;
-
-            case TEMPERATURE_SENSOR:
-                TemperatureSensorProto tempProto = proto.getTemperatureSensor();
-                TemperatureSensorEvent tempEvent = (TemperatureSensorEvent) event;
-                tempEvent.setTemperatureC(tempProto.getTemperatureC());
-                tempEvent.setTemperatureF(tempProto.getTemperatureF());
-                break;
-
-            case LIGHT_SENSOR:
-                LightSensorProto lightProto = proto.getLightSensor();
-                LightSensorEvent lightEvent = (LightSensorEvent) event;
-                lightEvent.setLinkQuality(lightProto.getLinkQuality());
-                lightEvent.setLuminosity(lightProto.getLuminosity());
-                break;
-
-            case CLIMATE_SENSOR:
-                ClimateSensorProto climateProto = proto.getClimateSensor();
-                ClimateSensorEvent climateEvent = (ClimateSensorEvent) event;
-                climateEvent.setTemperatureC(climateProto.getTemperatureC());
-                climateEvent.setHumidity(climateProto.getHumidity());
-                climateEvent.setCo2Level(climateProto.getCo2Level());
-                break;
-
-            case SWITCH_SENSOR:
-                SwitchSensorProto switchProto = proto.getSwitchSensor();
-                SwitchSensorEvent switchEvent = (SwitchSensorEvent) event;
-                switchEvent.setState(switchProto.getState());
-                break;
-
-            default:
-                throw new IllegalArgumentException("Неизвестный тип сенсора: " + payloadCase);
-        }
-    }
-
-    private HubEvent convertToHubEventDto(HubEventProto proto) {
-        Instant timestamp = Instant.ofEpochSecond(
-                proto.getTimestamp().getSeconds(),
-                proto.getTimestamp().getNanos()
-        );
-
-        HubEventProto.PayloadCase payloadCase = proto.getPayloadCase();
-        HubEvent event = createHubEventByType(payloadCase);
-
-        event.setHubId(proto.getHubId());
-        event.setTimestamp(timestamp);
-
-        fillHubEventData(event, proto);
-
-        return event;
-    }
-
-    private HubEvent createHubEventByType(HubEventProto.PayloadCase payloadCase) {
-        switch (payloadCase) {
-            case DEVICE_ADDED:
-                return new DeviceAddedEvent();
-            case DEVICE_REMOVED:
-                return new DeviceRemovedEvent();
-            case SCENARIO_ADDED:
-                return new ScenarioAddedEvent();
-            case SCENARIO_REMOVED:
-                return new ScenarioRemovedEvent();
-            default:
-                throw new IllegalArgumentException("Неизвестный тип события хаба: " + payloadCase);
-        }
-    }
-
-    private void fillHubEventData(HubEvent event, HubEventProto proto) {
-        HubEventProto.PayloadCase payloadCase = proto.getPayloadCase();
-
-        switch (payloadCase) {
-            case DEVICE_ADDED:
-                DeviceAddedEventProto deviceAddedProto = proto.getDeviceAdded();
-                DeviceAddedEvent deviceAddedEvent = (DeviceAddedEvent) event;
-                deviceAddedEvent.setId(deviceAddedProto.getId());
-                deviceAddedEvent.setDeviceType(mapDeviceTypeProto(deviceAddedProto.getType()));
-                break;
-
-            case DEVICE_REMOVED:
-                DeviceRemovedEventProto deviceRemovedProto = proto.getDeviceRemoved();
-                DeviceRemovedEvent deviceRemovedEvent = (DeviceRemovedEvent) event;
-                deviceRemovedEvent.setId(deviceRemovedProto.getId());
-                break;
-
-            case SCENARIO_ADDED:
-                ScenarioAddedEventProto scenarioAddedProto = proto.getScenarioAdded();
-                ScenarioAddedEvent scenarioAddedEvent = (ScenarioAddedEvent) event;
-                scenarioAddedEvent.setName(scenarioAddedProto.getName());
-
-                // Преобразуем conditions
-                List<ScenarioCondition> conditions = new ArrayList<>();
-                for (ScenarioConditionProto conditionProto : scenarioAddedProto.getConditionList()) {
-                    ScenarioCondition condition = new ScenarioCondition();
-                    condition.setSensorId(conditionProto.getSensorId());
-                    condition.setType(mapConditionTypeProto(conditionProto.getType()));
-                    condition.setOperation(mapConditionOperationProto(conditionProto.getOperation()));
-
-                    // Заполняем значение
-                    switch (conditionProto.getValueCase()) {
-                        case BOOL_VALUE:
-                            condition.setValue(conditionProto.getBoolValue() ? 1 : 0);
-                            break;
-                        case INT_VALUE:
-                            condition.setValue(conditionProto.getIntValue());
-                            break;
-                        case VALUE_NOT_SET:
-                        default:
-                            condition.setValue(0);
-                            break;
-                    }
-                    conditions.add(condition);
-                }
-                scenarioAddedEvent.setConditions(conditions);
-
-                // Преобразуем actions
-                List<DeviceAction> actions = new ArrayList<>();
-                for (DeviceActionProto actionProto : scenarioAddedProto.getActionList()) {
-                    DeviceAction action = new DeviceAction();
-                    action.setSensorId(actionProto.getSensorId());
-                    action.setType(mapActionTypeProto(actionProto.getType()));
-
-                    // Проверяем, есть ли значение
-                    if (actionProto.hasValue()) {
-                        action.setValue(actionProto.getValue());
-                    } else {
-                        action.setValue(null); // или оставить null
-                    }
-
-                    actions.add(action);
-                }
-                scenarioAddedEvent.setActions(actions);
-
-                log.info("Создан ScenarioAddedEvent: name={}, conditions={}, actions={}",
-                        scenarioAddedEvent.getName(),
-                        scenarioAddedEvent.getConditions().size(),
-                        scenarioAddedEvent.getActions().size());
-                break;
-
-            default:
-                throw new IllegalArgumentException("Неизвестный тип события хаба: " + payloadCase);
-        }
+    private void rejectOverQuota(String hubId, StreamObserver<Empty> responseObserver) {
+        responseObserver.onError(Status.RESOURCE_EXHAUSTED
+                .withDescription("Превышена квота событий для хаба " + hubId)
+                .asRuntimeException());
     }
 
     // Вспомогательные методы для преобразования enum
@@ -335,46 +167,4 @@ public class GrpcEventController extends CollectorControllerGrpc.CollectorContro
             default: throw new IllegalArgumentException("Неизвестный HubEventType: " + type);
         }
     }
-
-    private ActionType mapActionTypeProto(ActionTypeProto protoType) {
-        switch (protoType) {
-            case ACTIVATE: return ActionType.ACTIVATE;
-            case DEACTIVATE: return ActionType.DEACTIVATE;
-            case INVERSE: return ActionType.INVERSE;
-            case SET_VALUE: return ActionType.SET_VALUE;
-            default: throw new IllegalArgumentException("Неизвестный ActionTypeProto: " + protoType);
-        }
-    }
-    
-    private DeviceType mapDeviceTypeProto(DeviceTypeProto protoType) {
-        switch (protoType) {
-            case MOTION_SENSOR: return DeviceType.MOTION_SENSOR;
-            case TEMPERATURE_SENSOR: return DeviceType.TEMPERATURE_SENSOR;
-            case LIGHT_SENSOR: return DeviceType.LIGHT_SENSOR;
-            case CLIMATE_SENSOR: return DeviceType.CLIMATE_SENSOR;
-            case SWITCH_SENSOR: return DeviceType.SWITCH_SENSOR;
-            default: throw new IllegalArgumentException("Неизвестный DeviceTypeProto: " + protoType);
-        }
-    }
-
-    private ConditionType mapConditionTypeProto(ConditionTypeProto protoType) {
-        switch (protoType) {
-            case MOTION: return ConditionType.MOTION;
-            case LUMINOSITY: return ConditionType.LUMINOSITY;
-            case SWITCH: return ConditionType.SWITCH;
-            case TEMPERATURE: return ConditionType.TEMPERATURE;
-            case CO2LEVEL: return ConditionType.CO2LEVEL;
-            case HUMIDITY: return ConditionType.HUMIDITY;
-            default: throw new IllegalArgumentException("Неизвестный ConditionTypeProto: " + protoType);
-        }
-    }
-
-    private ConditionOperation mapConditionOperationProto(ConditionOperationProto protoOperation) {
-        switch (protoOperation) {
-            case EQUALS: return ConditionOperation.EQUALS;
-            case GREATER_THAN: return ConditionOperation.GREATER_THAN;
-            case LOWER_THAN: return ConditionOperation.LOWER_THAN;
-            default: throw new IllegalArgumentException("Неизвестный ConditionOperationProto: " + protoOperation);
-        }
-    }
 }
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.telemetry.collector.dedup;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Фильтр Блума над 64-битными ключами. Биты ставятся атомарно, поэтому фильтр можно
+ * заполнять из нескольких потоков без блокировок; k позиций получаются двойным хешированием.
+ */
+final class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final LongAdder setBits = new LongAdder();
+
+    BloomFilter(int expectedInsertions, double falsePositiveRate) {
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.max(1, (bits + 63) >>> 6);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+    }
+
+    boolean mightContain(long key) {
+        long h1 = key;
+        long h2 = Long.rotateLeft(key, 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ставит биты ключа. Возвращает true, если хотя бы один бит был снят, то есть ключа в фильтре не было.
+     */
+    boolean put(long key) {
+        boolean added = false;
+        long h1 = key;
+        long h2 = Long.rotateLeft(key, 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            long mask = 1L << bit;
+            int index = (int) (bit >>> 6);
+            if ((words.getAndUpdate(index, word -> word | mask) & mask) == 0) {
+                setBits.increment();
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Текущая вероятность ложного срабатывания по доле установленных битов.
+     */
+    double falsePositiveRate() {
+        return Math.pow((double) setBits.sum() / bitCount, hashCount);
+    }
+
+    long sizeInBytes() {
+        return bitCount >>> 3;
+    }
+
+    void clear() {
+        for (int i = 0; i < words.length(); i++) {
+            words.set(i, 0);
+        }
+        setBits.reset();
+    }
+}
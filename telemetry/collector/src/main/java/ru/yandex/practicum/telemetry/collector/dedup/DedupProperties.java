@@ -0,0 +1,25 @@
+package ru.yandex.practicum.telemetry.collector.dedup;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("collector.dedup")
+public class DedupProperties {
+    // Отбрасывать повторные отправки одного и того же показания датчика
+    private boolean enabled = false;
+    // Сколько времени помнить событие: повтор после этого окна пройдёт в Kafka
+    private Duration window = Duration.ofMinutes(5);
+    // На сколько срезов делится окно; самый старый срез сбрасывается целиком
+    private int slices = 4;
+    // Ожидаемое число событий за один срез окна
+    private int expectedEventsPerSlice = 500_000;
+    // Целевая доля ложных срабатываний по всему окну — уникальных событий, принятых за повтор
+    private double falsePositiveRate = 0.001;
+}
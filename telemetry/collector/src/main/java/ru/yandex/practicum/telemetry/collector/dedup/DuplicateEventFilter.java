@@ -0,0 +1,169 @@
+package ru.yandex.practicum.telemetry.collector.dedup;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * Распознаёт повторные отправки показаний датчиков, которые хабы делают при таймаутах.
+ * Окно памяти разбито на срезы, у каждого свой фильтр Блума: событие ищется во всех срезах,
+ * а запоминается в текущем. Когда срез устаревает, самый старый фильтр очищается и становится текущим,
+ * поэтому память ограничена и не зависит от числа хабов.
+ * Возможны ложные срабатывания с долей не выше false-positive-rate — такие события будут отброшены.
+ */
+@Slf4j
+@Component
+public class DuplicateEventFilter {
+
+    private final DedupProperties properties;
+    private final BloomFilter[] slices;
+    private final long sliceMillis;
+    private final Counter duplicates;
+    private final Counter racedDuplicates;
+    // Полосы блокировок по ключу: проверка и запоминание одного ключа не перемежаются
+    private final Object[] keyLocks = new Object[64];
+    private volatile int current;
+    private volatile long currentSliceEndsAt;
+
+    public DuplicateEventFilter(DedupProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        int sliceCount = properties.isEnabled() ? Math.max(1, properties.getSlices()) : 0;
+        this.slices = new BloomFilter[sliceCount];
+        for (int i = 0; i < sliceCount; i++) {
+            // Событие проверяется во всех срезах, поэтому каждому достаётся своя доля общей вероятности
+            slices[i] = new BloomFilter(properties.getExpectedEventsPerSlice(),
+                    properties.getFalsePositiveRate() / sliceCount);
+        }
+        this.sliceMillis = sliceCount == 0 ? 0 : properties.getWindow().toMillis() / sliceCount;
+        this.currentSliceEndsAt = System.currentTimeMillis() + sliceMillis;
+
+        for (int i = 0; i < keyLocks.length; i++) {
+            keyLocks[i] = new Object();
+        }
+
+        this.duplicates = Counter.builder("collector.dedup.duplicates")
+                .description("Sensor events dropped as retries of an already accepted event")
+                .register(meterRegistry);
+        this.racedDuplicates = Counter.builder("collector.dedup.raced")
+                .description("Retries accepted concurrently with the original event and sent twice")
+                .register(meterRegistry);
+        Gauge.builder("collector.dedup.false.positive.rate", this, DuplicateEventFilter::falsePositiveRate)
+                .description("Estimated probability that a new event is mistaken for a duplicate")
+                .register(meterRegistry);
+        Gauge.builder("collector.dedup.memory", this, DuplicateEventFilter::sizeInBytes)
+                .description("Memory held by the duplicate filters")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ключ события: хаб, датчик и время показания. Повтор отправки даёт тот же ключ.
+     */
+    public static long keyOf(String hubId, String sensorId, Instant timestamp) {
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, hubId);
+        hash = mix(hash, sensorId);
+        hash = (hash ^ timestamp.getEpochSecond()) * 0x100000001b3L;
+        hash = (hash ^ timestamp.getNano()) * 0x100000001b3L;
+        // Финальное перемешивание, чтобы старшие и младшие биты ключа были независимы
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    public boolean isEnabled() {
+        return slices.length > 0;
+    }
+
+    /**
+     * Проверяет, встречалось ли событие с таким ключом за окно. Считает найденные повторы.
+     */
+    public boolean isDuplicate(long key) {
+        if (!isEnabled()) {
+            return false;
+        }
+        rotateIfDue(System.currentTimeMillis());
+        for (BloomFilter slice : slices) {
+            if (slice.mightContain(key)) {
+                duplicates.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Запоминает событие, если его ещё нет ни в одном срезе. Вызывается, когда событие подтверждено
+     * Kafka или сохранено в спул, чтобы повтор события, которое не удалось отправить, не был отброшен.
+     * Возвращает false, если тот же ключ уже запомнил параллельный повтор — событие ушло дважды.
+     */
+    public boolean rememberIfAbsent(long key) {
+        if (!isEnabled()) {
+            return true;
+        }
+        synchronized (keyLocks[(int) (key & (keyLocks.length - 1))]) {
+            for (BloomFilter slice : slices) {
+                if (slice.mightContain(key)) {
+                    racedDuplicates.increment();
+                    return false;
+                }
+            }
+            slices[current].put(key);
+            return true;
+        }
+    }
+
+    private void rotateIfDue(long nowMillis) {
+        if (nowMillis < currentSliceEndsAt) {
+            return;
+        }
+        synchronized (this) {
+            if (nowMillis < currentSliceEndsAt) {
+                return;
+            }
+            // После долгой паузы все срезы устарели — очищаем столько, сколько прошло, но не больше всех
+            long elapsedSlices = Math.min(slices.length, (nowMillis - currentSliceEndsAt) / sliceMillis + 1);
+            int next = current;
+            for (long i = 0; i < elapsedSlices; i++) {
+                next = (next + 1) % slices.length;
+                slices[next].clear();
+            }
+            current = next;
+            currentSliceEndsAt = nowMillis + sliceMillis;
+            log.debug("Rotated duplicate filter slice, window {}", properties.getWindow());
+        }
+    }
+
+    private double falsePositiveRate() {
+        double notFalsePositive = 1;
+        for (BloomFilter slice : slices) {
+            notFalsePositive *= 1 - slice.falsePositiveRate();
+        }
+        return 1 - notFalsePositive;
+    }
+
+    private long sizeInBytes() {
+        long bytes = 0;
+        for (BloomFilter slice : slices) {
+            bytes += slice.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    private static long mix(long hash, String value) {
+        if (value == null) {
+            return hash * 0x100000001b3L;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        // Разделитель, чтобы ("ab", "c") и ("a", "bc") давали разные ключи
+        return (hash ^ 0xff) * 0x100000001b3L;
+    }
+}
@@ -1,7 +1,25 @@
 package ru.yandex.practicum.telemetry.collector.dto.hub;
 
 public enum ConditionOperation {
-    EQUALS,
-    GREATER_THAN,
-    LOWER_THAN
+    EQUALS(false),
+    GREATER_THAN(false),
+    LOWER_THAN(false),
+    EQUALS_FOR(true),
+    GREATER_THAN_FOR(true),
+    LOWER_THAN_FOR(true),
+    AVERAGE_GREATER_THAN(true),
+    AVERAGE_LOWER_THAN(true);
+
+    private final boolean windowed;
+
+    ConditionOperation(boolean windowed) {
+        this.windowed = windowed;
+    }
+
+    /**
+     * Операции, которые проверяются по истории значений за окно и требуют windowSeconds.
+     */
+    public boolean isWindowed() {
+        return windowed;
+    }
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Size;
@@ -19,7 +20,7 @@ public class ScenarioAddedEvent extends HubEvent {
     private String name;
 
     @NotEmpty
-    private List<ScenarioCondition> conditions;
+    private List<@Valid ScenarioCondition> conditions;
     @NotEmpty
     private List<DeviceAction> actions;
 
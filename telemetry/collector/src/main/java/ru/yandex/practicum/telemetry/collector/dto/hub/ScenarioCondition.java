@@ -4,7 +4,10 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.constraints.AssertTrue;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
 
 @Getter
 @Setter
@@ -15,4 +18,12 @@ public class ScenarioCondition {
     private ConditionType type;
     private ConditionOperation operation;
     private int value;
+    @Positive
+    private Integer windowSeconds;
+
+    @JsonIgnore
+    @AssertTrue(message = "windowSeconds is required for windowed operations")
+    public boolean isWindowSecondsSetForWindowedOperation() {
+        return operation == null || !operation.isWindowed() || windowSeconds != null;
+    }
 }
\ No newline at end of file
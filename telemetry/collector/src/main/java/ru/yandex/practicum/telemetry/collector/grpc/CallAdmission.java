@@ -0,0 +1,58 @@
+package ru.yandex.practicum.telemetry.collector.grpc;
+
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallExecutorSupplier;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Допуск вызовов в пул обработчиков. Решение принимается в потоке ввода-вывода до того, как вызов
+ * займёт место в очереди пула: при заполненной очереди вызов остаётся в потоке ввода-вывода,
+ * и перехватчик сразу закрывает его с RESOURCE_EXHAUSTED. Хаб получает статус, после которого
+ * можно повторить отправку позже, а не RST_STREAM из-за RejectedExecutionException.
+ */
+class CallAdmission implements ServerCallExecutorSupplier, ServerInterceptor {
+
+    // Отметка отклонённого вызова; от клиента заголовок не принимается
+    private static final Metadata.Key<String> SHED = Metadata.Key.of("x-collector-shed", Metadata.ASCII_STRING_MARSHALLER);
+    private static final Executor SAME_THREAD = Runnable::run;
+
+    private final ThreadPoolExecutor pool;
+    private final int reserve;
+    private final Counter shedCalls;
+
+    CallAdmission(ThreadPoolExecutor pool, int reserve, Counter shedCalls) {
+        this.pool = pool;
+        this.reserve = reserve;
+        this.shedCalls = shedCalls;
+    }
+
+    @Override
+    public <ReqT, RespT> Executor getExecutor(ServerCall<ReqT, RespT> call, Metadata headers) {
+        headers.discardAll(SHED);
+        if (pool.getQueue().remainingCapacity() >= reserve) {
+            return pool;
+        }
+        shedCalls.increment();
+        headers.put(SHED, "1");
+        return SAME_THREAD;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                                                                 Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        if (!headers.containsKey(SHED)) {
+            return next.startCall(call, headers);
+        }
+        call.close(Status.RESOURCE_EXHAUSTED.withDescription("Коллектор перегружен, повторите позже"), new Metadata());
+        return new ServerCall.Listener<>() {
+        };
+    }
+}
@@ -0,0 +1,127 @@
+package ru.yandex.practicum.telemetry.collector.grpc;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.buffer.PooledByteBufAllocator;
+import io.grpc.netty.shaded.io.netty.channel.ChannelOption;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.Epoll;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.util.concurrent.DefaultThreadFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.devh.boot.grpc.server.serverfactory.GrpcServerConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Профиль транспорта gRPC-сервера коллектора: нативный epoll, пул direct-буферов, размеры
+ * event loop'ов, лимиты HTTP/2, keepalive и максимальный возраст соединения, а также
+ * отдельный ограниченный пул для обработчиков вызовов вместо неограниченного пула по умолчанию.
+ * Когда пул заполнен, новые вызовы отклоняются с RESOURCE_EXHAUSTED (см. {@link CallAdmission}).
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "collector.grpc.transport", name = "enabled", havingValue = "true")
+public class GrpcTransportConfig {
+
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private ThreadPoolExecutor callExecutor;
+
+    @Bean
+    public GrpcServerConfigurer grpcTransportConfigurer(GrpcTransportProperties properties, MeterRegistry meterRegistry) {
+        return serverBuilder -> {
+            if (!(serverBuilder instanceof NettyServerBuilder builder)) {
+                log.warn("gRPC server builder {} is not Netty, transport profile skipped",
+                        serverBuilder.getClass().getSimpleName());
+                return;
+            }
+
+            boolean epoll = properties.isNativeTransport() && Epoll.isAvailable();
+            if (epoll) {
+                bossGroup = new EpollEventLoopGroup(properties.getBossThreads(), new DefaultThreadFactory("grpc-boss", true));
+                workerGroup = new EpollEventLoopGroup(properties.getWorkerThreads(), new DefaultThreadFactory("grpc-worker", true));
+                builder.channelType(EpollServerSocketChannel.class);
+            } else {
+                if (properties.isNativeTransport()) {
+                    log.info("Epoll is not available, using NIO transport: {}", Epoll.unavailabilityCause().getMessage());
+                }
+                bossGroup = new NioEventLoopGroup(properties.getBossThreads(), new DefaultThreadFactory("grpc-boss", true));
+                workerGroup = new NioEventLoopGroup(properties.getWorkerThreads(), new DefaultThreadFactory("grpc-worker", true));
+                builder.channelType(NioServerSocketChannel.class);
+            }
+            builder.bossEventLoopGroup(bossGroup).workerEventLoopGroup(workerGroup);
+
+            if (properties.isPooledDirectBuffers()) {
+                builder.withChildOption(ChannelOption.ALLOCATOR, new PooledByteBufAllocator(true));
+            }
+            builder.withChildOption(ChannelOption.TCP_NODELAY, true);
+
+            builder.maxConcurrentCallsPerConnection(properties.getMaxConcurrentCallsPerConnection())
+                    .flowControlWindow((int) properties.getFlowControlWindow().toBytes());
+
+            GrpcTransportProperties.Keepalive keepalive = properties.getKeepalive();
+            builder.keepAliveTime(keepalive.getTime().toMillis(), TimeUnit.MILLISECONDS)
+                    .keepAliveTimeout(keepalive.getTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                    .permitKeepAliveTime(keepalive.getPermitTime().toMillis(), TimeUnit.MILLISECONDS)
+                    .permitKeepAliveWithoutCalls(keepalive.isPermitWithoutCalls());
+
+            GrpcTransportProperties.ConnectionAge connectionAge = properties.getConnectionAge();
+            builder.maxConnectionAge(connectionAge.getMax().toMillis(), TimeUnit.MILLISECONDS)
+                    .maxConnectionAgeGrace(connectionAge.getGrace().toMillis(), TimeUnit.MILLISECONDS)
+                    .maxConnectionIdle(connectionAge.getMaxIdle().toMillis(), TimeUnit.MILLISECONDS);
+
+            GrpcTransportProperties.Executor executor = properties.getExecutor();
+            Counter rejected = Counter.builder("collector.grpc.executor.rejected")
+                    .description("Tasks of already admitted calls rejected by the full call executor")
+                    .register(meterRegistry);
+            callExecutor = new ThreadPoolExecutor(executor.getThreads(), executor.getThreads(),
+                    60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(executor.getQueueCapacity()),
+                    new DefaultThreadFactory("grpc-call", true),
+                    (task, pool) -> {
+                        rejected.increment();
+                        log.warn("gRPC call executor is full ({} queued), task rejected", pool.getQueue().size());
+                        throw new RejectedExecutionException("gRPC call executor is full");
+                    });
+            // Поиск метода выполняется в потоке ввода-вывода, а пул для вызова выбирает CallAdmission:
+            // при заполненной очереди вызов закрывается с RESOURCE_EXHAUSTED, не попадая в пул
+            CallAdmission admission = new CallAdmission(callExecutor, executor.getAdmissionReserve(),
+                    Counter.builder("collector.grpc.calls.shed")
+                            .description("Calls rejected with RESOURCE_EXHAUSTED because the call executor was full")
+                            .register(meterRegistry));
+            builder.executor(MoreExecutors.directExecutor())
+                    .callExecutor(admission)
+                    .intercept(admission);
+
+            log.info("gRPC transport profile applied: {} transport, {} call threads, max connection age {}",
+                    epoll ? "epoll" : "nio", executor.getThreads(), connectionAge.getMax());
+        };
+    }
+
+    // Сервер к этому моменту уже остановлен жизненным циклом grpc-spring-boot-starter
+    @PreDestroy
+    public void shutdown() {
+        if (callExecutor != null) {
+            callExecutor.shutdown();
+        }
+        if (workerGroup != null) {
+            workerGroup.shutdownGracefully();
+        }
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully();
+        }
+    }
+}
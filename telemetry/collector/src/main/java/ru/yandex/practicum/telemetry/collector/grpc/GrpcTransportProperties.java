@@ -0,0 +1,70 @@
+package ru.yandex.practicum.telemetry.collector.grpc;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("collector.grpc.transport")
+public class GrpcTransportProperties {
+    // Применять профиль; если выключен, сервер работает с настройками grpc-spring-boot-starter по умолчанию
+    private boolean enabled = false;
+    // Использовать epoll вместо NIO, если нативная библиотека доступна на платформе
+    private boolean nativeTransport = true;
+    // Пул direct-буферов Netty вместо выделения на каждое сообщение
+    private boolean pooledDirectBuffers = true;
+    // Потоки, принимающие соединения
+    private int bossThreads = 1;
+    // Потоки ввода-вывода; 0 — по умолчанию Netty (два на ядро)
+    private int workerThreads = 0;
+    // Сколько одновременных вызовов разрешено в одном HTTP/2 соединении
+    private int maxConcurrentCallsPerConnection = 256;
+    // Окно управления потоком HTTP/2 на поток
+    private DataSize flowControlWindow = DataSize.ofMegabytes(1);
+    private Keepalive keepalive = new Keepalive();
+    private ConnectionAge connectionAge = new ConnectionAge();
+    private Executor executor = new Executor();
+
+    @Getter
+    @Setter
+    public static class Keepalive {
+        // Как часто сервер пингует молчащее соединение
+        private Duration time = Duration.ofSeconds(30);
+        // Сколько ждать ответа на пинг, прежде чем закрыть соединение
+        private Duration timeout = Duration.ofSeconds(10);
+        // Минимальный интервал пингов от клиента; частые пинги считаются злоупотреблением
+        private Duration permitTime = Duration.ofSeconds(10);
+        // Разрешать клиенту пинговать соединение без активных вызовов
+        private boolean permitWithoutCalls = true;
+    }
+
+    @Getter
+    @Setter
+    public static class ConnectionAge {
+        // Соединение старше этого возраста закрывается через GOAWAY, и хаб переподключается —
+        // так нагрузка перераспределяется по репликам после масштабирования
+        private Duration max = Duration.ofMinutes(10);
+        // Сколько ждать завершения активных вызовов после GOAWAY
+        private Duration grace = Duration.ofSeconds(30);
+        // Закрывать соединения без вызовов дольше этого времени
+        private Duration maxIdle = Duration.ofMinutes(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Executor {
+        // Потоки, выполняющие обработчики вызовов
+        private int threads = 16;
+        // Очередь задач вызовов, ожидающих поток
+        private int queueCapacity = 10_000;
+        // Новый вызов отклоняется с RESOURCE_EXHAUSTED, когда в очереди остаётся меньше этого места:
+        // запас нужен уже принятым вызовам, чьи сообщения и завершение тоже проходят через очередь
+        private int admissionReserve = 100;
+    }
+}
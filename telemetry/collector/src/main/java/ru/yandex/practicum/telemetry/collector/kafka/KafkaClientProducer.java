@@ -2,8 +2,24 @@ package ru.yandex.practicum.telemetry.collector.kafka;
 
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
 
 public interface KafkaClientProducer {
     Producer<String, SpecificRecordBase> getProducer();
+
+    /**
+     * Отправляет запись в Kafka, а при недоступности Kafka — в дисковый спул, если он включён.
+     */
+    default void send(ProducerRecord<String, SpecificRecordBase> record) {
+        send(record, () -> {
+        });
+    }
+
+    /**
+     * То же, что {@link #send(ProducerRecord)}, но вызывает onAccepted, когда запись подтверждена Kafka
+     * или сохранена в спул. Может вызываться из потока ввода-вывода producer'а.
+     */
+    void send(ProducerRecord<String, SpecificRecordBase> record, Runnable onAccepted);
+
     void stop();
 }
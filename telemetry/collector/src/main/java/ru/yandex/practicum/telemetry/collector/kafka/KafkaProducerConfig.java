@@ -1,14 +1,16 @@
 package ru.yandex.practicum.telemetry.collector.kafka;
 
-import jakarta.annotation.PreDestroy;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import ru.yandex.practicum.telemetry.collector.spool.EventSpool;
 
 import java.time.Duration;
 import java.util.Properties;
@@ -19,8 +21,8 @@ public class KafkaProducerConfig {
     @Value("${collector.kafka.bootstrap-servers}")
     private String bootstrapServer;
 
-    @Bean
-    public KafkaClientProducer getProducer() {
+    @Bean(destroyMethod = "stop")
+    public KafkaClientProducer getProducer(EventSpool eventSpool) {
         return new KafkaClientProducer() {
             private Producer<String, SpecificRecordBase> producer;
 
@@ -29,6 +31,10 @@ public class KafkaProducerConfig {
                 config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServer);
                 config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
                 config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, GeneralAvroSerializer.class);
+                if (eventSpool.isEnabled()) {
+                    // Не держим запросы хабов, пока Kafka недоступна: событие уйдёт в спул
+                    config.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, eventSpool.getMaxBlock().toMillis());
+                }
 
                 producer = new KafkaProducer<>(config);
             }
@@ -41,6 +47,28 @@ public class KafkaProducerConfig {
                 return producer;
             }
 
+            @Override
+            public void send(ProducerRecord<String, SpecificRecordBase> record, Runnable onAccepted) {
+                if (eventSpool.appendIfSpooling(record, onAccepted)) {
+                    return;
+                }
+                try {
+                    getProducer().send(record, (metadata, exception) -> {
+                        boolean spooled = eventSpool.onSendComplete(record, exception);
+                        if (exception == null || spooled) {
+                            onAccepted.run();
+                        }
+                    });
+                } catch (KafkaException e) {
+                    if (!eventSpool.isEnabled()) {
+                        throw e;
+                    }
+                    if (eventSpool.onSendComplete(record, e)) {
+                        onAccepted.run();
+                    }
+                }
+            }
+
             @Override
             public void stop() {
                 if (producer != null) {
@@ -50,9 +78,4 @@ public class KafkaProducerConfig {
             }
         };
     }
-
-    @PreDestroy
-    public void onDestroy() {
-        getProducer().stop();
-    }
 }
@@ -0,0 +1,21 @@
+package ru.yandex.practicum.telemetry.collector.kafka;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.telemetry.collector.dto.sensor.SensorEventType;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("collector.lanes")
+public class LaneProperties {
+    // Отправлять события быстрых типов в отдельный топик collector.kafka.topics.sensors-fast
+    private boolean enabled = false;
+    // Типы событий быстрой полосы: от них зависят сценарии, заметные пользователю
+    private Set<SensorEventType> fastTypes = EnumSet.of(SensorEventType.MOTION_SENSOR_EVENT, SensorEventType.SWITCH_SENSOR_EVENT);
+}
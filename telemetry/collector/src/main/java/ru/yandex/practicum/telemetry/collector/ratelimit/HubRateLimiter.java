@@ -0,0 +1,170 @@
+package ru.yandex.practicum.telemetry.collector.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ограничивает поток событий от каждого хаба корзиной токенов, чтобы один хаб
+ * с неисправной прошивкой не вытеснял остальных. Общий для gRPC и REST контроллеров.
+ */
+@Slf4j
+@Component
+public class HubRateLimiter {
+
+    // Значение тега hub для событий хабов, не попавших в отслеживаемые и делящих общие корзины
+    static final String OVERFLOW_HUB = "_overflow";
+
+    private final RateLimitProperties properties;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final long startNanos = System.nanoTime();
+    private final TokenBucket[] overflowBuckets;
+    private final Counter rejected;
+    private final MultiGauge topTalkers;
+    private volatile long lastSweepMillis;
+    private volatile long lastEvictionMillis;
+
+    public HubRateLimiter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        RateLimitProperties.Quota quota = properties.getDefaultQuota();
+        int overflowCount = Integer.highestOneBit(Math.max(1, properties.getOverflowBuckets()));
+        this.overflowBuckets = new TokenBucket[overflowCount];
+        for (int i = 0; i < overflowCount; i++) {
+            overflowBuckets[i] = new TokenBucket(quota.getEventsPerSecond(), quota.getBurst(), 0);
+        }
+        this.rejected = Counter.builder("collector.ratelimit.rejected")
+                .description("Events rejected because the hub exceeded its quota")
+                .register(meterRegistry);
+        this.topTalkers = MultiGauge.builder("collector.ratelimit.top")
+                .description("Events per second from the most active hubs over the last sweep interval")
+                .baseUnit("events")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Забирает токен из корзины хаба. Возвращает false, если хаб превысил квоту и событие нужно отклонить.
+     */
+    public boolean tryAcquire(String hubId) {
+        if (!properties.isEnabled() || hubId == null) {
+            return true;
+        }
+        long now = nowMillis();
+        if (!bucketOf(hubId, now).tryAcquire(now)) {
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private TokenBucket bucketOf(String hubId, long now) {
+        TokenBucket bucket = buckets.get(hubId);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= properties.getMaxTrackedHubs()
+                && !properties.getHubs().containsKey(hubId)
+                && !evictIdle(now)) {
+            return overflowBuckets[spread(hubId.hashCode()) & (overflowBuckets.length - 1)];
+        }
+        return buckets.computeIfAbsent(hubId, id -> {
+            RateLimitProperties.Quota quota = properties.quotaFor(id);
+            return new TokenBucket(quota.getEventsPerSecond(), quota.getBurst(), now);
+        });
+    }
+
+    /**
+     * Удаляет корзины молчащих хабов, не чаще раза в секунду. Возвращает true, если место освободилось.
+     */
+    private boolean evictIdle(long now) {
+        if (now - lastEvictionMillis < 1000) {
+            return false;
+        }
+        lastEvictionMillis = now;
+        long idleTtl = properties.getIdleTtl().toMillis();
+        buckets.values().removeIf(bucket -> now - bucket.lastSeenMillis > idleTtl);
+        return buckets.size() < properties.getMaxTrackedHubs();
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Публикует самых активных хабов за прошедший интервал и удаляет корзины хабов,
+     * которые давно молчат: новая корзина для такого хаба всё равно была бы полной.
+     */
+    @Scheduled(fixedDelayString = "${collector.rate-limit.sweep-interval:PT10S}")
+    public void sweep() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long now = nowMillis();
+        long idleTtl = properties.getIdleTtl().toMillis();
+        double seconds = Math.max(1, (now - lastSweepMillis) / 1000.0);
+        lastSweepMillis = now;
+
+        List<HubRate> rates = new ArrayList<>();
+        Iterator<Map.Entry<String, TokenBucket>> iterator = buckets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, TokenBucket> entry = iterator.next();
+            TokenBucket bucket = entry.getValue();
+            long accepted = bucket.accepted.sumThenReset();
+            long rejectedEvents = bucket.rejected.sumThenReset();
+            if (accepted + rejectedEvents > 0) {
+                rates.add(new HubRate(entry.getKey(), accepted / seconds, rejectedEvents / seconds));
+            } else if (now - bucket.lastSeenMillis > idleTtl) {
+                iterator.remove();
+            }
+        }
+
+        rates.sort(Comparator.comparingDouble(HubRate::total).reversed());
+        List<HubRate> top = new ArrayList<>(rates.subList(0, Math.min(properties.getTopTalkers(), rates.size())));
+        // Общие корзины показываются всегда: иначе нагрузка от неотслеживаемых хабов не видна совсем
+        HubRate overflow = overflowRate(seconds);
+        if (overflow.total() > 0) {
+            top.add(overflow);
+        }
+
+        List<MultiGauge.Row<?>> rows = new ArrayList<>();
+        for (HubRate rate : top) {
+            rows.add(MultiGauge.Row.of(Tags.of("hub", rate.hubId(), "outcome", "accepted"), rate.accepted()));
+            rows.add(MultiGauge.Row.of(Tags.of("hub", rate.hubId(), "outcome", "rejected"), rate.rejected()));
+            if (rate.rejected() > 0) {
+                log.debug("Hub {} is over quota: {} events/s accepted, {} events/s rejected",
+                        rate.hubId(), rate.accepted(), rate.rejected());
+            }
+        }
+        topTalkers.register(rows, true);
+    }
+
+    private HubRate overflowRate(double seconds) {
+        long accepted = 0;
+        long rejectedEvents = 0;
+        for (TokenBucket bucket : overflowBuckets) {
+            accepted += bucket.accepted.sumThenReset();
+            rejectedEvents += bucket.rejected.sumThenReset();
+        }
+        return new HubRate(OVERFLOW_HUB, accepted / seconds, rejectedEvents / seconds);
+    }
+
+    private long nowMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private record HubRate(String hubId, double accepted, double rejected) {
+        double total() {
+            return accepted + rejected;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ru.yandex.practicum.telemetry.collector.ratelimit;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class RateLimitExceededException extends RuntimeException {
+    public RateLimitExceededException(String hubId) {
+        super("Превышена квота событий для хаба " + hubId);
+    }
+}
@@ -0,0 +1,45 @@
+package ru.yandex.practicum.telemetry.collector.ratelimit;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("collector.rate-limit")
+public class RateLimitProperties {
+    // Ограничивать поток событий от каждого хаба
+    private boolean enabled = false;
+    // Квота по умолчанию для любого хаба
+    private Quota defaultQuota = new Quota();
+    // Отдельные квоты по hubId
+    private Map<String, Quota> hubs = new HashMap<>();
+    // Сколько хабов держать отдельные корзины. Хабы из hubs отслеживаются всегда
+    private int maxTrackedHubs = 100_000;
+    // Сверх лимита хаб получает одну из стольких корзин с квотой по умолчанию (по хешу hubId),
+    // так что общую квоту делят только хабы с одинаковым хешем. Степень двойки
+    private int overflowBuckets = 1024;
+    // Корзины хабов без событий дольше этого времени удаляются
+    private Duration idleTtl = Duration.ofMinutes(5);
+    // Сколько самых активных хабов публиковать в метрике collector.ratelimit.top
+    private int topTalkers = 10;
+
+    public Quota quotaFor(String hubId) {
+        return hubs.getOrDefault(hubId, defaultQuota);
+    }
+
+    @Getter
+    @Setter
+    public static class Quota {
+        // Средняя скорость пополнения корзины, событий в секунду
+        private int eventsPerSecond = 100;
+        // Ёмкость корзины — сколько событий хаб может прислать залпом
+        private int burst = 200;
+    }
+}
@@ -0,0 +1,64 @@
+package ru.yandex.practicum.telemetry.collector.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Корзина токенов одного хаба. Время последнего пополнения и остаток токенов упакованы в один long
+ * и меняются одним CAS, поэтому корзина не берёт блокировок. Счётчики принятых и отклонённых
+ * событий — {@link LongAdder}, чтобы запросы одного хаба из разных потоков не дрались за одну ячейку.
+ */
+final class TokenBucket {
+
+    // Младшие биты — токены в 1/64 долях, старшие — миллисекунды с запуска лимитера
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long SCALE = 64;
+    static final int MAX_BURST = (int) (TOKEN_MASK / SCALE);
+    // Время последнего обращения нужно только для вытеснения молчащих хабов, поэтому хранится с точностью
+    // до секунды: запись в общую ячейку раз в секунду, а не на каждом событии
+    private static final long LAST_SEEN_GRANULARITY_MILLIS = 1000;
+
+    private final long refillPerSecond;
+    private final long capacity;
+    private final AtomicLong state;
+    final LongAdder accepted = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+    volatile long lastSeenMillis;
+
+    TokenBucket(int eventsPerSecond, int burst, long nowMillis) {
+        if (burst < 1 || burst > MAX_BURST) {
+            throw new IllegalArgumentException("Burst must be between 1 and " + MAX_BURST + ": " + burst);
+        }
+        this.refillPerSecond = eventsPerSecond * SCALE;
+        this.capacity = burst * SCALE;
+        this.state = new AtomicLong(nowMillis << TOKEN_BITS | capacity);
+        this.lastSeenMillis = nowMillis;
+    }
+
+    boolean tryAcquire(long nowMillis) {
+        if (nowMillis - lastSeenMillis >= LAST_SEEN_GRANULARITY_MILLIS) {
+            lastSeenMillis = nowMillis;
+        }
+        while (true) {
+            long current = state.get();
+            long last = current >>> TOKEN_BITS;
+            long tokens = current & TOKEN_MASK;
+
+            long elapsed = Math.max(0, nowMillis - last);
+            long refill = Math.min(elapsed, 1_000_000) * refillPerSecond / 1000;
+            // Пока не накопилась целая доля токена, время пополнения не сдвигаем
+            long refilledAt = refill > 0 ? nowMillis : last;
+            long available = Math.min(capacity, tokens + refill);
+
+            if (available < SCALE) {
+                rejected.increment();
+                return false;
+            }
+            if (state.compareAndSet(current, refilledAt << TOKEN_BITS | (available - SCALE))) {
+                accepted.increment();
+                return true;
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.beans.factory.annotation.Value;
+import ru.practicum.kafka.serializer.header.EventHeaders;
 import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
 import ru.yandex.practicum.telemetry.collector.kafka.KafkaClientProducer;
 import ru.yandex.practicum.telemetry.collector.dto.hub.HubEvent;
@@ -38,9 +39,10 @@ public abstract class BaseHubEventHandler<T extends SpecificRecordBase> implemen
                 null,
                 event.getTimestamp().toEpochMilli(),  // Здесь все равно нужны миллисекунды
                 eventAvro.getHubId(),
-                eventAvro);
+                eventAvro,
+                EventHeaders.of(eventAvro, payload, event.getTimestamp()));
 
-        producer.getProducer().send(record);
+        producer.send(record);
 
         log.info("Отправили в Kafka: hubId={}, type={}",
                 event.getHubId(), event.getType());
@@ -36,6 +36,7 @@ public class ScenarioAddedEventHandler extends BaseHubEventHandler<ScenarioAdded
                 .setOperation(ConditionOperationAvro.valueOf(scenarioCondition.getOperation().name()))
                 .setType(ConditionTypeAvro.valueOf(scenarioCondition.getType().name()))
                 .setValue(scenarioCondition.getValue())
+                .setWindowSeconds(scenarioCondition.getWindowSeconds())
                 .build();
     }
 
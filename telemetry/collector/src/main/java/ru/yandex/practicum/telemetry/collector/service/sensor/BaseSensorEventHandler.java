@@ -4,9 +4,13 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.specific.SpecificRecordBase;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import ru.practicum.kafka.serializer.header.EventHeaders;
 import ru.yandex.practicum.kafka.telemetry.event.SensorEventAvro;
+import ru.yandex.practicum.telemetry.collector.dedup.DuplicateEventFilter;
 import ru.yandex.practicum.telemetry.collector.kafka.KafkaClientProducer;
+import ru.yandex.practicum.telemetry.collector.kafka.LaneProperties;
 import ru.yandex.practicum.telemetry.collector.dto.sensor.SensorEvent;
 
 @Slf4j
@@ -17,6 +21,15 @@ public abstract class BaseSensorEventHandler<T extends SpecificRecordBase> imple
     @Value("${collector.kafka.topics.sensors}")
     protected String topic;
 
+    @Value("${collector.kafka.topics.sensors-fast:}")
+    protected String fastTopic;
+
+    @Autowired
+    protected DuplicateEventFilter duplicateFilter;
+
+    @Autowired
+    protected LaneProperties laneProperties;
+
     protected abstract T mapToAvro(SensorEvent event);
 
     @Override
@@ -25,6 +38,14 @@ public abstract class BaseSensorEventHandler<T extends SpecificRecordBase> imple
             throw new IllegalArgumentException("Неизвестный тип события: " + event.getType());
         }
 
+        // Хаб повторил отправку после таймаута — такое показание уже ушло в Kafka
+        long eventKey = DuplicateEventFilter.keyOf(event.getHubId(), event.getId(), event.getTimestamp());
+        if (duplicateFilter.isDuplicate(eventKey)) {
+            log.debug("Пропустили повтор события: hubId={}, sensorId={}, timestamp={}",
+                    event.getHubId(), event.getId(), event.getTimestamp());
+            return;
+        }
+
         try {
             // преобразование события в Avro запись
             T payload = mapToAvro(event);
@@ -37,13 +58,19 @@ public abstract class BaseSensorEventHandler<T extends SpecificRecordBase> imple
                     .build();
 
             ProducerRecord<String, SpecificRecordBase> record = new ProducerRecord<>(
-                    topic,
+                    topicFor(event),
                     null,
                     event.getTimestamp().toEpochMilli(),  // здесь оставить для Kafka timestamp
                     eventAvro.getHubId(),
-                    eventAvro);
+                    eventAvro,
+                    EventHeaders.of(eventAvro, payload, event.getTimestamp()));
 
-            producer.getProducer().send(record);
+            producer.send(record, () -> {
+                if (!duplicateFilter.rememberIfAbsent(eventKey)) {
+                    log.debug("Повтор события отправлен параллельно с исходным: hubId={}, sensorId={}, timestamp={}",
+                            eventAvro.getHubId(), eventAvro.getId(), eventAvro.getTimestamp());
+                }
+            });
 
             log.info("Отправили в Kafka: hubId={}, sensorId={}, timestamp={}, type={}",
                     event.getHubId(), event.getId(), event.getTimestamp(), event.getType());
@@ -53,4 +80,12 @@ public abstract class BaseSensorEventHandler<T extends SpecificRecordBase> imple
             throw e;
         }
     }
-}
\ No newline at end of file
+
+    // События быстрых типов идут отдельным топиком, чтобы их не задерживали всплески медленных
+    private String topicFor(SensorEvent event) {
+        if (laneProperties.isEnabled() && !fastTopic.isBlank() && laneProperties.getFastTypes().contains(event.getType())) {
+            return fastTopic;
+        }
+        return topic;
+    }
+}
@@ -0,0 +1,288 @@
+package ru.yandex.practicum.telemetry.collector.spool;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.telemetry.collector.kafka.GeneralAvroSerializer;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Дисковый спул событий на время недоступности Kafka. Пока спул не пуст, новые события
+ * тоже пишутся в него, чтобы сохранить порядок; фоновый поток отправляет записи из спула
+ * в порядке записи и возвращает отправку напрямую, когда спул опустеет.
+ * <p>
+ * Об ошибке прямой отправки становится известно только в callback'е, когда за упавшей записью
+ * уже могут быть отправлены следующие. Поэтому после первой ошибки прямая отправка прекращается,
+ * а новые события ждут в памяти, пока не завершатся все начатые прямые отправки: упавшие из них
+ * попадают в спул раньше более новых событий. Очередь в памяти ограничена {@code maxDeferred}:
+ * если прямые отправки зависли, следующие события пишутся в спул сразу.
+ */
+@Slf4j
+@Component
+public class EventSpool {
+
+    private static final Duration IDLE_PAUSE = Duration.ofMillis(100);
+
+    private final SpoolProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final StringSerializer keySerializer = new StringSerializer();
+    private final GeneralAvroSerializer valueSerializer = new GeneralAvroSerializer();
+
+    @Value("${collector.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+
+    private SegmentSpool spool;
+    private KafkaProducer<byte[], byte[]> drainProducer;
+    private Thread drainer;
+    private volatile boolean running;
+    private volatile boolean kafkaAvailable = true;
+    // Прямые отправки, результат которых ещё неизвестен
+    private int directInFlight;
+    // События, пришедшие после ошибки, пока прямые отправки не завершились
+    private final Deque<Deferred> deferred = new ArrayDeque<>();
+    private boolean dropping;
+
+    private Counter appended;
+    private Counter drained;
+    private Counter sendFailures;
+    private Counter dropped;
+
+    public EventSpool(SpoolProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        spool = new SegmentSpool(properties.getDirectory(), properties.getSegmentBytes(), properties.getMaxSegments());
+        kafkaAvailable = spool.isEmpty();
+
+        Gauge.builder("collector.spool.pending", spool, SegmentSpool::pendingBytes)
+                .description("Bytes waiting in the spool")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("collector.spool.segments", spool, SegmentSpool::segmentCount)
+                .description("Spool segment files on disk")
+                .register(meterRegistry);
+        appended = Counter.builder("collector.spool.appended")
+                .description("Events written to the spool")
+                .register(meterRegistry);
+        drained = Counter.builder("collector.spool.drained")
+                .description("Events sent to Kafka from the spool")
+                .register(meterRegistry);
+        sendFailures = Counter.builder("collector.spool.send.failures")
+                .description("Direct sends that failed and were spooled")
+                .register(meterRegistry);
+        dropped = Counter.builder("collector.spool.dropped")
+                .description("Failed or deferred events lost because the spool was full")
+                .register(meterRegistry);
+
+        Properties config = new Properties();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        config.put(ProducerConfig.ACKS_CONFIG, "all");
+        drainProducer = new KafkaProducer<>(config);
+
+        running = true;
+        drainer = new Thread(this::drainLoop, "collector-spool-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (drainer == null) {
+            return;
+        }
+        running = false;
+        drainer.interrupt();
+        try {
+            drainer.join(Duration.ofSeconds(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drainProducer.close(Duration.ofSeconds(10));
+    }
+
+    public boolean isEnabled() {
+        return spool != null;
+    }
+
+    public Duration getMaxBlock() {
+        return properties.getMaxBlock();
+    }
+
+    /**
+     * Пишет событие в спул, если Kafka недоступна или в спуле ещё есть неотправленные события.
+     * Возвращает false, если событие нужно отправить напрямую; тогда по завершении отправки
+     * нужно вызвать {@link #onSendComplete}.
+     * <p>
+     * onAccepted вызывается, только когда событие действительно записано в спул. Для события,
+     * ждущего в памяти, это происходит позже, в {@link #onSendComplete}, и не происходит вовсе,
+     * если спул его не принял: повтор от хаба не должен считаться дубликатом потерянного события.
+     */
+    public boolean appendIfSpooling(ProducerRecord<String, SpecificRecordBase> record, Runnable onAccepted) {
+        if (spool == null) {
+            return false;
+        }
+        synchronized (this) {
+            if (kafkaAvailable && spool.isEmpty()) {
+                directInFlight++;
+                return false;
+            }
+            if (directInFlight > 0 && deferred.size() < properties.getMaxDeferred()) {
+                deferred.addLast(new Deferred(record, onAccepted));
+                return true;
+            }
+            append(record);
+        }
+        onAccepted.run();
+        return true;
+    }
+
+    /**
+     * Результат прямой отправки. Упавшее событие сохраняется в спул, и отправка переключается на спул.
+     * Вызывается из потока ввода-вывода producer'а, поэтому ошибки записи в спул не бросаются, а считаются.
+     *
+     * @return true, если упавшее событие сохранено в спул
+     */
+    public boolean onSendComplete(ProducerRecord<String, SpecificRecordBase> record, Exception exception) {
+        if (spool == null) {
+            return false;
+        }
+        boolean spooled = false;
+        List<Runnable> accepted = new ArrayList<>();
+        synchronized (this) {
+            directInFlight--;
+            if (exception != null) {
+                if (kafkaAvailable) {
+                    log.warn("Kafka send failed, spooling events to {}: {}", properties.getDirectory(), exception.getMessage());
+                }
+                kafkaAvailable = false;
+                sendFailures.increment();
+                spooled = appendOrDrop(record);
+            }
+            if (directInFlight == 0) {
+                Deferred next;
+                while ((next = deferred.pollFirst()) != null) {
+                    if (appendOrDrop(next.record())) {
+                        accepted.add(next.onAccepted());
+                    }
+                }
+            }
+        }
+        // Callback'и вызываются без блокировки спула: они не должны задерживать другие отправки
+        accepted.forEach(Runnable::run);
+        return spooled;
+    }
+
+    private void append(ProducerRecord<String, SpecificRecordBase> record) {
+        spool.append(SpoolRecordCodec.encode(
+                record.topic(),
+                keySerializer.serialize(record.topic(), record.key()),
+                record.timestamp(),
+                record.headers(),
+                valueSerializer.serialize(record.topic(), record.value())));
+        appended.increment();
+    }
+
+    private boolean appendOrDrop(ProducerRecord<String, SpecificRecordBase> record) {
+        try {
+            append(record);
+            if (dropping) {
+                dropping = false;
+                log.info("Spool accepts events again");
+            }
+            return true;
+        } catch (RuntimeException e) {
+            dropped.increment();
+            if (!dropping) {
+                dropping = true;
+                log.error("Spool {} cannot take more events, dropping them until it drains: {}",
+                        properties.getDirectory(), e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    private void drainLoop() {
+        while (running) {
+            try {
+                int sent = drainBatch();
+                if (sent == 0) {
+                    synchronized (this) {
+                        if (!kafkaAvailable && spool.isEmpty() && directInFlight == 0) {
+                            kafkaAvailable = true;
+                            log.info("Spool drained, sending events to Kafka directly");
+                        }
+                    }
+                    Thread.sleep(IDLE_PAUSE.toMillis());
+                } else if (sent < 0) {
+                    Thread.sleep(properties.getRetryBackoff().toMillis());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Spool drainer failed", e);
+            }
+        }
+    }
+
+    /**
+     * Отправляет пачку записей из спула. Возвращает число отправленных записей,
+     * 0 — если отправлять нечего, -1 — если пачку нужно повторить.
+     */
+    private int drainBatch() throws InterruptedException {
+        List<Future<RecordMetadata>> futures = new ArrayList<>();
+        byte[] data;
+        while (futures.size() < properties.getDrainBatchSize() && (data = spool.next()) != null) {
+            futures.add(drainProducer.send(SpoolRecordCodec.decode(data)));
+        }
+        if (futures.isEmpty()) {
+            return 0;
+        }
+
+        drainProducer.flush();
+        try {
+            for (Future<RecordMetadata> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            log.warn("Failed to drain spool batch, retrying: {}", e.getCause().getMessage());
+            spool.rewind();
+            return -1;
+        }
+        spool.commit();
+        drained.increment(futures.size());
+        return futures.size();
+    }
+
+    private record Deferred(ProducerRecord<String, SpecificRecordBase> record, Runnable onAccepted) {
+    }
+}
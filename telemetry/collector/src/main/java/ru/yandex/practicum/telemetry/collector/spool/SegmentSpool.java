@@ -0,0 +1,267 @@
+package ru.yandex.practicum.telemetry.collector.spool;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал записей только на добавление, разбитый на отображённые в память файлы-сегменты фиксированного размера.
+ * Формат записи: длина (int), CRC32 данных (int), данные. Длина пишется последней и служит признаком
+ * того, что запись целиком на месте; нулевая длина — конец данных сегмента.
+ * Позиция подтверждённого чтения хранится в файле checkpoint, сегменты до неё удаляются.
+ * <p>
+ * Писать можно из любых потоков, читать и подтверждать — только из одного.
+ */
+@Slf4j
+class SegmentSpool {
+
+    private static final int HEADER_BYTES = 8;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT = "checkpoint";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+
+    // Запись: защищены монитором this, позиция публикуется через volatile
+    private MappedByteBuffer writeBuffer;
+    private volatile long writeSegment;
+    private volatile int writePosition;
+
+    // Чтение: только поток чтения
+    private MappedByteBuffer readBuffer;
+    private long readSegment;
+    private int readPosition;
+    private volatile long committedSegment;
+    private volatile int committedPosition;
+
+    private final CRC32 readCrc = new CRC32();
+    private final CRC32 writeCrc = new CRC32();
+
+    SegmentSpool(Path directory, int segmentBytes, int maxSegments) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open spool at " + directory, e);
+        }
+    }
+
+    /**
+     * Добавляет запись. Бросает {@link IllegalStateException}, если спул заполнен.
+     */
+    synchronized void append(byte[] data) {
+        int size = HEADER_BYTES + data.length;
+        // В конце сегмента должно остаться место под нулевую длину
+        if (size + Integer.BYTES > segmentBytes) {
+            throw new IllegalArgumentException("Record of " + data.length + " bytes does not fit a spool segment");
+        }
+        if (writePosition + size + Integer.BYTES > segmentBytes) {
+            if (writeSegment + 1 - committedSegment >= maxSegments) {
+                throw new IllegalStateException("Spool is full");
+            }
+            writeBuffer = map(writeSegment + 1);
+            writePosition = 0;
+            writeSegment = writeSegment + 1;
+        }
+
+        writeCrc.reset();
+        writeCrc.update(data);
+        int position = writePosition;
+        writeBuffer.putInt(position + Integer.BYTES, (int) writeCrc.getValue());
+        writeBuffer.put(position + HEADER_BYTES, data);
+        writeBuffer.putInt(position, data.length);
+        writePosition = position + size;
+    }
+
+    /**
+     * Следующая непрочитанная запись или null, если новых записей нет.
+     */
+    byte[] next() {
+        while (true) {
+            long segment = writeSegment;
+            int limit = writePosition;
+            if (readSegment == segment && readPosition >= limit) {
+                return null;
+            }
+
+            int length = readPosition + Integer.BYTES <= segmentBytes ? readBuffer.getInt(readPosition) : 0;
+            if (length == 0) {
+                if (readSegment == writeSegment) {
+                    return null;
+                }
+                moveToSegment(readSegment + 1);
+                continue;
+            }
+
+            byte[] data = new byte[length];
+            readBuffer.get(readPosition + HEADER_BYTES, data);
+            int crc = readBuffer.getInt(readPosition + Integer.BYTES);
+            readCrc.reset();
+            readCrc.update(data);
+            if ((int) readCrc.getValue() != crc) {
+                log.error("Corrupted spool record in segment {} at {}, skipping the rest of the segment",
+                        readSegment, readPosition);
+                if (readSegment == writeSegment) {
+                    return null;
+                }
+                moveToSegment(readSegment + 1);
+                continue;
+            }
+            readPosition += HEADER_BYTES + length;
+            return data;
+        }
+    }
+
+    /**
+     * Подтверждает всё прочитанное: после перезапуска чтение продолжится с этой позиции.
+     */
+    void commit() {
+        long previousSegment = committedSegment;
+        writeCheckpoint(readSegment, readPosition);
+        committedSegment = readSegment;
+        committedPosition = readPosition;
+        for (long segment = previousSegment; segment < readSegment; segment++) {
+            deleteSegment(segment);
+        }
+    }
+
+    /**
+     * Возвращает чтение к последней подтверждённой позиции.
+     */
+    void rewind() {
+        if (readSegment != committedSegment) {
+            readBuffer = map(committedSegment);
+            readSegment = committedSegment;
+        }
+        readPosition = committedPosition;
+    }
+
+    boolean isEmpty() {
+        return committedSegment == writeSegment && committedPosition >= writePosition;
+    }
+
+    long pendingBytes() {
+        return (writeSegment - committedSegment) * segmentBytes + writePosition - committedPosition;
+    }
+
+    int segmentCount() {
+        return (int) (writeSegment - committedSegment + 1);
+    }
+
+    private void moveToSegment(long segment) {
+        readBuffer = map(segment);
+        readSegment = segment;
+        readPosition = 0;
+    }
+
+    private void recover() throws IOException {
+        long first = Long.MAX_VALUE;
+        long last = -1;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    long segment = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    first = Math.min(first, segment);
+                    last = Math.max(last, segment);
+                }
+            }
+        }
+        if (last < 0) {
+            first = 0;
+            last = 0;
+        }
+
+        committedSegment = first;
+        committedPosition = 0;
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        if (Files.exists(checkpoint)) {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            if (data.remaining() == Long.BYTES + Integer.BYTES) {
+                long segment = data.getLong();
+                int position = data.getInt();
+                if (segment >= first && segment <= last) {
+                    committedSegment = segment;
+                    committedPosition = position;
+                }
+            }
+        }
+
+        readSegment = committedSegment;
+        readPosition = committedPosition;
+        readBuffer = map(readSegment);
+
+        writeSegment = last;
+        writeBuffer = map(last);
+        writePosition = endOf(writeBuffer, last == committedSegment ? committedPosition : 0);
+        log.info("Spool at {}: segments {}..{}, {} bytes pending", directory, committedSegment, last, pendingBytes());
+    }
+
+    private int endOf(ByteBuffer buffer, int from) {
+        int position = from;
+        CRC32 crc = new CRC32();
+        while (position + HEADER_BYTES <= segmentBytes) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length + Integer.BYTES > segmentBytes) {
+                break;
+            }
+            byte[] data = new byte[length];
+            buffer.get(position + HEADER_BYTES, data);
+            crc.reset();
+            crc.update(data);
+            if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                // Запись оборвалась при сбое: дальше писать поверх неё
+                break;
+            }
+            position += HEADER_BYTES + length;
+        }
+        // Обнуляем длину, чтобы недописанный хвост не приняли за запись
+        buffer.putInt(position, 0);
+        return position;
+    }
+
+    private MappedByteBuffer map(long segment) {
+        try (FileChannel channel = FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map spool segment " + segment, e);
+        }
+    }
+
+    private void writeCheckpoint(long segment, int position) {
+        try {
+            Path tmp = directory.resolve(CHECKPOINT + ".tmp");
+            Files.write(tmp, ByteBuffer.allocate(Long.BYTES + Integer.BYTES).putLong(segment).putInt(position).array());
+            Files.move(tmp, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write spool checkpoint", e);
+        }
+    }
+
+    private void deleteSegment(long segment) {
+        try {
+            Files.deleteIfExists(segmentPath(segment));
+        } catch (IOException e) {
+            log.warn("Failed to delete drained spool segment {}", segment, e);
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%016d%s", segment, SEGMENT_SUFFIX));
+    }
+}
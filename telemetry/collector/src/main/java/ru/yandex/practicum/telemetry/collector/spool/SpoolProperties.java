@@ -0,0 +1,32 @@
+package ru.yandex.practicum.telemetry.collector.spool;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("collector.spool")
+public class SpoolProperties {
+    // Писать события на диск, пока Kafka недоступна или перегружена
+    private boolean enabled = false;
+    private Path directory = Path.of(System.getProperty("java.io.tmpdir"), "collector-spool");
+    // Размер одного файла-сегмента
+    private int segmentBytes = 64 * 1024 * 1024;
+    // Максимум сегментов на диске; при заполнении события снова отклоняются с ошибкой
+    private int maxSegments = 16;
+    // Сколько send может ждать места в буфере producer'а или метаданных, прежде чем событие уйдёт в спул
+    private Duration maxBlock = Duration.ofMillis(200);
+    // Сколько записей отправлять из спула за одну пачку
+    private int drainBatchSize = 500;
+    // Сколько событий держать в памяти, пока завершаются прямые отправки, начатые до ошибки;
+    // сверх этого события пишутся в спул сразу, и порядок относительно упавших отправок не гарантируется
+    private int maxDeferred = 10_000;
+    // Пауза перед повторной отправкой пачки после ошибки
+    private Duration retryBackoff = Duration.ofSeconds(1);
+}
@@ -0,0 +1,82 @@
+package ru.yandex.practicum.telemetry.collector.spool;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Упаковка уже сериализованной записи Kafka в байты спула и обратно:
+ * топик, ключ, время, заголовки и тело записи.
+ */
+final class SpoolRecordCodec {
+
+    private SpoolRecordCodec() {
+    }
+
+    static byte[] encode(String topic, byte[] key, Long timestamp, Iterable<Header> headers, byte[] value) {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        int size = Short.BYTES + topicBytes.length
+                + Integer.BYTES + (key == null ? 0 : key.length)
+                + Long.BYTES
+                + Short.BYTES
+                + Integer.BYTES + (value == null ? 0 : value.length);
+        int headerCount = 0;
+        for (Header header : headers) {
+            size += Short.BYTES + header.key().getBytes(StandardCharsets.UTF_8).length
+                    + Integer.BYTES + (header.value() == null ? 0 : header.value().length);
+            headerCount++;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putShort((short) topicBytes.length).put(topicBytes);
+        putBytes(buffer, key);
+        buffer.putLong(timestamp == null ? -1 : timestamp);
+        buffer.putShort((short) headerCount);
+        for (Header header : headers) {
+            byte[] name = header.key().getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) name.length).put(name);
+            putBytes(buffer, header.value());
+        }
+        putBytes(buffer, value);
+        return buffer.array();
+    }
+
+    static ProducerRecord<byte[], byte[]> decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        byte[] topic = new byte[buffer.getShort()];
+        buffer.get(topic);
+        byte[] key = getBytes(buffer);
+        long timestamp = buffer.getLong();
+        int headerCount = buffer.getShort();
+        RecordHeaders headers = new RecordHeaders();
+        for (int i = 0; i < headerCount; i++) {
+            byte[] name = new byte[buffer.getShort()];
+            buffer.get(name);
+            headers.add(new String(name, StandardCharsets.UTF_8), getBytes(buffer));
+        }
+        byte[] value = getBytes(buffer);
+        return new ProducerRecord<>(new String(topic, StandardCharsets.UTF_8), null,
+                timestamp < 0 ? null : timestamp, key, value, headers);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,141 @@
+package ru.yandex.practicum.telemetry.collector.spool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Восстановление спула после перезапуска: недописанная запись, подтверждённая позиция и сегменты на диске.
+ */
+class SegmentSpoolTest {
+
+    private static final int SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoversAfterTornWriteAndAppendsOverIt() throws IOException {
+        SegmentSpool spool = new SegmentSpool(directory, SEGMENT_BYTES, 4);
+        spool.append(bytes("first"));
+        spool.append(bytes("second"));
+
+        // Сбой посреди записи: длина и CRC на месте, данные записаны наполовину
+        int tornAt = (8 + "first".length()) + (8 + "second".length());
+        try (FileChannel channel = FileChannel.open(directory.resolve(segmentName(0)), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8 + 10).putInt(100).putInt(12345).put(bytes("torn-recor")).flip(), tornAt);
+        }
+
+        SegmentSpool reopened = new SegmentSpool(directory, SEGMENT_BYTES, 4);
+        assertFalse(reopened.isEmpty());
+        assertEquals(tornAt, reopened.pendingBytes());
+        assertEquals("first", string(reopened.next()));
+        assertEquals("second", string(reopened.next()));
+        assertNull(reopened.next());
+
+        reopened.append(bytes("third"));
+        assertEquals("third", string(reopened.next()));
+        assertNull(reopened.next());
+    }
+
+    @Test
+    void redeliversRecordsReadAfterLastCommit() {
+        SegmentSpool spool = new SegmentSpool(directory, SEGMENT_BYTES, 4);
+        spool.append(bytes("first"));
+        spool.append(bytes("second"));
+        spool.append(bytes("third"));
+
+        assertEquals("first", string(spool.next()));
+        spool.commit();
+        assertEquals("second", string(spool.next()));
+
+        SegmentSpool reopened = new SegmentSpool(directory, SEGMENT_BYTES, 4);
+        assertEquals("second", string(reopened.next()));
+        assertEquals("third", string(reopened.next()));
+        assertNull(reopened.next());
+    }
+
+    @Test
+    void rewindReturnsToCommittedPosition() {
+        SegmentSpool spool = new SegmentSpool(directory, SEGMENT_BYTES, 4);
+        spool.append(bytes("first"));
+        spool.append(bytes("second"));
+
+        assertEquals("first", string(spool.next()));
+        assertEquals("second", string(spool.next()));
+        spool.rewind();
+
+        assertEquals("first", string(spool.next()));
+    }
+
+    @Test
+    void drainsAcrossSegmentsAndDeletesCommittedOnes() throws IOException {
+        // Запись из 20 байт занимает 28: в сегмент из 64 байт помещаются две и нулевая длина в конце
+        SegmentSpool spool = new SegmentSpool(directory, 64, 4);
+        for (int i = 0; i < 5; i++) {
+            spool.append(bytes("record-%013d".formatted(i)));
+        }
+        assertEquals(3, spool.segmentCount());
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("record-%013d".formatted(i), string(spool.next()));
+        }
+        assertNull(spool.next());
+        spool.commit();
+
+        assertTrue(spool.isEmpty());
+        assertEquals(1, segmentFiles());
+
+        SegmentSpool reopened = new SegmentSpool(directory, 64, 4);
+        assertTrue(reopened.isEmpty());
+        assertNull(reopened.next());
+    }
+
+    @Test
+    void rejectsAppendWhenAllSegmentsArePending() {
+        SegmentSpool spool = new SegmentSpool(directory, 64, 2);
+        for (int i = 0; i < 4; i++) {
+            spool.append(bytes("record-%013d".formatted(i)));
+        }
+
+        assertThrows(IllegalStateException.class, () -> spool.append(bytes("record-overflow-xxxx")));
+
+        spool.next();
+        spool.next();
+        spool.next();
+        spool.commit();
+        spool.append(bytes("record-overflow-xxxx"));
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".seg")).count();
+        }
+    }
+
+    private static String segmentName(long segment) {
+        return String.format("%016d.seg", segment);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] data) {
+        return data == null ? null : new String(data, StandardCharsets.UTF_8);
+    }
+}
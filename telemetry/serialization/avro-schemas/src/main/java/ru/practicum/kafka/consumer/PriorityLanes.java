@@ -0,0 +1,89 @@
+package ru.practicum.kafka.consumer;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Приоритетное чтение двух топиков одним consumer'ом: записи быстрой полосы обрабатываются
+ * первыми, а пока быстрая полоса возвращает данные, партиции медленной ставятся на паузу.
+ * Чтобы медленная полоса не голодала, пауза длится не дольше maxSlowPause.
+ * Снимается пауза только с тех партиций, которые поставили на паузу полосы: партиции,
+ * приостановленные по другой причине (например, до загрузки правил), не трогаются.
+ */
+public class PriorityLanes {
+
+    public static final String FAST = "fast";
+    public static final String SLOW = "slow";
+
+    private final String fastTopic;
+    private final long maxSlowPauseMillis;
+    private final Set<TopicPartition> pausedSlow = new HashSet<>();
+    private long slowPausedSince = -1;
+
+    public PriorityLanes(String fastTopic, Duration maxSlowPause) {
+        this.fastTopic = fastTopic;
+        this.maxSlowPauseMillis = maxSlowPause.toMillis();
+    }
+
+    public String laneOf(String topic) {
+        return fastTopic.equals(topic) ? FAST : SLOW;
+    }
+
+    /**
+     * Записи пачки: сначала быстрой полосы, затем остальные.
+     */
+    public <K, V> List<ConsumerRecord<K, V>> ordered(ConsumerRecords<K, V> records) {
+        List<ConsumerRecord<K, V>> ordered = new ArrayList<>(records.count());
+        records.records(fastTopic).forEach(ordered::add);
+        for (ConsumerRecord<K, V> record : records) {
+            if (!fastTopic.equals(record.topic())) {
+                ordered.add(record);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Забывает паузу отозванных партиций, чтобы не снять её при повторном назначении.
+     */
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        pausedSlow.removeAll(partitions);
+    }
+
+    /**
+     * Ставит медленную полосу на паузу, пока быстрая возвращает данные, и снимает паузу,
+     * когда быстрая опустела или медленная простаивает дольше maxSlowPause.
+     */
+    public void afterPoll(Consumer<?, ?> consumer, ConsumerRecords<?, ?> records, long nowMillis) {
+        boolean fastBusy = records.records(fastTopic).iterator().hasNext();
+        boolean starving = slowPausedSince >= 0 && nowMillis - slowPausedSince >= maxSlowPauseMillis;
+
+        if (fastBusy && !starving) {
+            Set<TopicPartition> paused = consumer.paused();
+            List<TopicPartition> slow = new ArrayList<>();
+            for (TopicPartition partition : consumer.assignment()) {
+                if (!fastTopic.equals(partition.topic()) && !paused.contains(partition)) {
+                    slow.add(partition);
+                }
+            }
+            consumer.pause(slow);
+            pausedSlow.addAll(slow);
+            if (slowPausedSince < 0) {
+                slowPausedSince = nowMillis;
+            }
+        } else if (slowPausedSince >= 0) {
+            consumer.resume(pausedSlow);
+            pausedSlow.clear();
+            slowPausedSince = -1;
+        }
+    }
+}
@@ -6,13 +6,44 @@ import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.specific.SpecificDatumReader;
 import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.kafka.common.header.Headers;
 import org.apache.kafka.common.serialization.Deserializer;
+import ru.practicum.kafka.serializer.dictionary.IdDictionary;
 import ru.practicum.kafka.serializer.exception.DeserializationException;
+import ru.practicum.kafka.serializer.header.EventHeaders;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Десериализатор Avro-записей в сгенерированные классы. Тело читается схемой, которой оно записано:
+ * её отпечаток берётся из заголовка schema-fingerprint, а прежние версии схем — из {@link WriterSchemas}.
+ * Записи без заголовка читаются текущей схемой, а если она не подходит — прежними версиями по очереди.
+ */
 public class BaseAvroDeserializer<T extends SpecificRecordBase> implements Deserializer<T> {
 
+    // Свойство конфигурации consumer'а: true включает интернирование строк через IdDictionary
+    public static final String INTERN_IDS_CONFIG = "telemetry.ids.intern";
+    // Свойство конфигурации consumer'а: поля вида ИмяЗаписи.поле через запятую, которые не нужно декодировать
+    public static final String SKIP_FIELDS_CONFIG = "telemetry.avro.skip-fields";
+    // Свойство конфигурации consumer'а: типы событий (заголовок event-type) через запятую, которые нужно декодировать.
+    // Записи других типов десериализуются в null без разбора тела
+    public static final String ACCEPTED_EVENT_TYPES_CONFIG = "telemetry.accepted-event-types";
+
     private final DecoderFactory decoderFactory;
-    private final DatumReader<T> reader;
+    private final Schema schema;
+    private final long fingerprint;
+    private DatumReader<T> reader;
+    // Схема записи -> читатель, приводящий её к схеме сгенерированного класса
+    private Function<Schema, DatumReader<T>> resolvingReaders;
+    private final Map<Schema, DatumReader<T>> readersByWriter = new HashMap<>();
+    private Set<String> acceptedEventTypes = Set.of();
 
     public BaseAvroDeserializer(Schema schema) {
         this(DecoderFactory.get(), schema);
@@ -20,22 +51,115 @@ public class BaseAvroDeserializer<T extends SpecificRecordBase> implements Deser
 
     public BaseAvroDeserializer(DecoderFactory decoderFactory, Schema schema) {
         this.decoderFactory = decoderFactory;
+        this.schema = schema;
+        this.fingerprint = EventHeaders.fingerprint(schema);
         this.reader = new SpecificDatumReader<>(schema);
+        this.resolvingReaders = writer -> new SpecificDatumReader<>(writer, schema);
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object intern = configs.get(INTERN_IDS_CONFIG);
+        IdDictionary dictionary = intern != null && Boolean.parseBoolean(intern.toString())
+                ? IdDictionary.shared()
+                : null;
+
+        acceptedEventTypes = parseList(configs.get(ACCEPTED_EVENT_TYPES_CONFIG));
+
+        Set<String> skipFields = parseList(configs.get(SKIP_FIELDS_CONFIG));
+        if (!skipFields.isEmpty()) {
+            Schema projection = SchemaProjection.without(schema, skipFields);
+            resolvingReaders = writer -> new ProjectingDatumReader<>(writer, projection, dictionary);
+        } else if (dictionary != null) {
+            resolvingReaders = writer -> new InterningDatumReader<>(writer, schema, dictionary);
+        } else {
+            resolvingReaders = writer -> new SpecificDatumReader<>(writer, schema);
+        }
+        reader = resolvingReaders.apply(schema);
+        readersByWriter.clear();
+    }
+
+    private static Set<String> parseList(Object value) {
+        if (value == null) {
+            return Set.of();
+        }
+        if (value instanceof Collection<?> fields) {
+            return fields.stream().map(Object::toString).map(String::trim).collect(Collectors.toSet());
+        }
+        return Arrays.stream(value.toString().split(","))
+                .map(String::trim)
+                .filter(field -> !field.isEmpty())
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public T deserialize(String topic, Headers headers, byte[] data) {
+        if (!acceptedEventTypes.isEmpty()) {
+            String eventType = EventHeaders.eventType(headers);
+            // Записи без заголовка (от старых продюсеров) декодируем как раньше
+            if (eventType != null && !acceptedEventTypes.contains(eventType)) {
+                return null;
+            }
+        }
+        Long writerFingerprint = EventHeaders.schemaFingerprint(headers);
+        if (data == null || writerFingerprint == null) {
+            return deserialize(topic, data);
+        }
+        if (writerFingerprint == fingerprint) {
+            return read(topic, reader, data);
+        }
+        Schema writer = WriterSchemas.byFingerprint(writerFingerprint);
+        if (writer == null) {
+            throw new DeserializationException("Неизвестная схема записи топика " + topic
+                    + " с отпечатком " + Long.toHexString(writerFingerprint), null);
+        }
+        return read(topic, readerFor(writer), data);
     }
 
+    /**
+     * Запись без заголовка schema-fingerprint: от старых продюсеров или из топиков без заголовков.
+     */
     @Override
     public T deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
         try {
-            if (data != null) {
-                BinaryDecoder decoder = decoderFactory.binaryDecoder(data, null);
-                return reader.read(null, decoder);
+            return readWhole(reader, data);
+        } catch (Exception e) {
+            for (Schema writer : WriterSchemas.history(schema.getFullName())) {
+                try {
+                    return readWhole(readerFor(writer), data);
+                } catch (Exception ignored) {
+                    // Не та версия — пробуем следующую
+                }
             }
-            return null;
+            throw new DeserializationException("Ошибка десереализации данных топика " + topic, e);
+        }
+    }
+
+    private T read(String topic, DatumReader<T> datumReader, byte[] data) {
+        try {
+            return datumReader.read(null, decoderFactory.binaryDecoder(data, null));
         } catch (Exception e) {
             throw new DeserializationException("Ошибка десереализации данных топика " + topic, e);
         }
     }
 
+    // Чужая схема может прочитать данные без ошибки, но не до конца: такое чтение не считается успешным
+    private T readWhole(DatumReader<T> datumReader, byte[] data) throws IOException {
+        BinaryDecoder decoder = decoderFactory.binaryDecoder(data, null);
+        T result = datumReader.read(null, decoder);
+        if (!decoder.isEnd()) {
+            throw new IOException("Record has trailing bytes after decoding");
+        }
+        return result;
+    }
+
+    private DatumReader<T> readerFor(Schema writer) {
+        return readersByWriter.computeIfAbsent(writer, resolvingReaders);
+    }
+
     @Override
     public void close() {
         Deserializer.super.close();
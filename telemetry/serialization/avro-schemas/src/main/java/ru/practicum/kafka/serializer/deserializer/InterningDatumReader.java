@@ -0,0 +1,42 @@
+package ru.practicum.kafka.serializer.deserializer;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.util.Utf8;
+import ru.practicum.kafka.serializer.dictionary.IdDictionary;
+
+import java.io.IOException;
+
+/**
+ * Читает строки через {@link IdDictionary}: байты читаются в переиспользуемый буфер,
+ * а известные идентификаторы возвращаются без создания новых строк.
+ * Экземпляр не потокобезопасен, как и сам десериализатор Kafka.
+ */
+public class InterningDatumReader<T> extends SpecificDatumReader<T> {
+
+    private final IdDictionary dictionary;
+    private Utf8 buffer = new Utf8();
+
+    public InterningDatumReader(Schema schema, IdDictionary dictionary) {
+        super(schema);
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @param dictionary словарь или null, если строки интернировать не нужно
+     */
+    public InterningDatumReader(Schema writer, Schema reader, IdDictionary dictionary) {
+        super(writer, reader);
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    protected Object readString(Object old, Schema expected, Decoder in) throws IOException {
+        if (dictionary == null || findStringClass(expected) != String.class) {
+            return super.readString(old, expected, in);
+        }
+        buffer = in.readString(buffer);
+        return dictionary.intern(buffer);
+    }
+}
@@ -0,0 +1,46 @@
+package ru.practicum.kafka.serializer.deserializer;
+
+import org.apache.avro.Conversion;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.io.ResolvingDecoder;
+import org.apache.avro.specific.SpecificRecordBase;
+import ru.practicum.kafka.serializer.dictionary.IdDictionary;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Читает данные по урезанной схеме ({@link SchemaProjection}) в полные сгенерированные классы.
+ * Позиции полей в урезанной схеме не совпадают с позициями в классе, поэтому значение
+ * записывается по позиции одноимённого поля класса. Пропущенные поля остаются значениями по умолчанию.
+ */
+public class ProjectingDatumReader<T> extends InterningDatumReader<T> {
+
+    // Поле схемы чтения -> позиция поля в схеме сгенерированного класса
+    private final Map<Schema.Field, Integer> classPositions = new IdentityHashMap<>();
+
+    public ProjectingDatumReader(Schema writer, Schema reader, IdDictionary dictionary) {
+        super(writer, reader, dictionary);
+    }
+
+    @Override
+    protected void readField(Object record, Schema.Field field, Object oldDatum,
+                             ResolvingDecoder in, Object state) throws IOException {
+        IndexedRecord indexedRecord = (IndexedRecord) record;
+        Integer position = classPositions.get(field);
+        if (position == null) {
+            position = indexedRecord.getSchema().getField(field.name()).pos();
+            classPositions.put(field, position);
+        }
+
+        Conversion<?> conversion = record instanceof SpecificRecordBase specificRecord
+                ? specificRecord.getConversion(position)
+                : null;
+        Object value = conversion != null
+                ? readWithConversion(oldDatum, field.schema(), field.schema().getLogicalType(), conversion, in)
+                : readWithoutConversion(oldDatum, field.schema(), in);
+        indexedRecord.put(position, value);
+    }
+}
@@ -0,0 +1,9 @@
+package ru.practicum.kafka.serializer.deserializer;
+
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioDefinitionAvro;
+
+public class ScenarioDefinitionDeserializer extends BaseAvroDeserializer<ScenarioDefinitionAvro> {
+    public ScenarioDefinitionDeserializer() {
+        super(ScenarioDefinitionAvro.getClassSchema());
+    }
+}
@@ -0,0 +1,72 @@
+package ru.practicum.kafka.serializer.deserializer;
+
+import org.apache.avro.Schema;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Строит схему чтения без указанных полей. Такую схему Avro разрешает против схемы записи:
+ * отсутствующие в ней поля пропускаются в потоке и не декодируются.
+ * Поля задаются как ИмяЗаписи.поле, например MotionSensorAvro.voltage.
+ */
+public final class SchemaProjection {
+
+    private SchemaProjection() {
+    }
+
+    public static Schema without(Schema schema, Set<String> excludedFields) {
+        if (excludedFields.isEmpty()) {
+            return schema;
+        }
+        return project(schema, excludedFields, new HashMap<>());
+    }
+
+    private static Schema project(Schema schema, Set<String> excludedFields, Map<String, Schema> projected) {
+        return switch (schema.getType()) {
+            case RECORD -> projectRecord(schema, excludedFields, projected);
+            case UNION -> {
+                List<Schema> branches = new ArrayList<>();
+                for (Schema branch : schema.getTypes()) {
+                    branches.add(project(branch, excludedFields, projected));
+                }
+                yield Schema.createUnion(branches);
+            }
+            case ARRAY -> copyProps(schema, Schema.createArray(project(schema.getElementType(), excludedFields, projected)));
+            case MAP -> copyProps(schema, Schema.createMap(project(schema.getValueType(), excludedFields, projected)));
+            default -> schema;
+        };
+    }
+
+    private static Schema projectRecord(Schema schema, Set<String> excludedFields, Map<String, Schema> projected) {
+        Schema existing = projected.get(schema.getFullName());
+        if (existing != null) {
+            return existing;
+        }
+
+        Schema record = Schema.createRecord(schema.getName(), schema.getDoc(), schema.getNamespace(), schema.isError());
+        projected.put(schema.getFullName(), record);
+
+        List<Schema.Field> fields = new ArrayList<>();
+        for (Schema.Field field : schema.getFields()) {
+            if (excludedFields.contains(schema.getName() + "." + field.name())) {
+                continue;
+            }
+            Schema.Field copy = new Schema.Field(field, project(field.schema(), excludedFields, projected));
+            fields.add(copy);
+        }
+        record.setFields(fields);
+        return copyProps(schema, record);
+    }
+
+    private static Schema copyProps(Schema source, Schema target) {
+        source.getObjectProps().forEach(target::addProp);
+        if (source.getLogicalType() != null) {
+            source.getLogicalType().addToSchema(target);
+        }
+        return target;
+    }
+}
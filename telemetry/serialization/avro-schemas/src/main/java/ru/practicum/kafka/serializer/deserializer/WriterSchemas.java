@@ -0,0 +1,63 @@
+package ru.practicum.kafka.serializer.deserializer;
+
+import org.apache.avro.Schema;
+import ru.practicum.kafka.serializer.header.EventHeaders;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Прежние версии схем записей, которыми ещё могут быть записаны данные в топиках.
+ * Каждая версия лежит в resources/avro/history как ИмяЗаписи-N.avsc. При несовместимом
+ * по байтам изменении .avdl прежняя схема записи добавляется сюда следующим номером.
+ */
+final class WriterSchemas {
+
+    private static final List<String> HISTORY = List.of(
+            "HubEventAvro-1.avsc",
+            "ScenarioDefinitionAvro-1.avsc"
+    );
+
+    private static final Map<Long, Schema> BY_FINGERPRINT = new HashMap<>();
+    // Полное имя записи -> прежние схемы, от новой к старой
+    private static final Map<String, List<Schema>> BY_NAME = new HashMap<>();
+
+    static {
+        for (String file : HISTORY) {
+            Schema schema = load(file);
+            BY_FINGERPRINT.put(EventHeaders.fingerprint(schema), schema);
+            BY_NAME.computeIfAbsent(schema.getFullName(), name -> new ArrayList<>()).add(0, schema);
+        }
+    }
+
+    private WriterSchemas() {
+    }
+
+    /**
+     * Прежняя схема по отпечатку или null, если такой нет.
+     */
+    static Schema byFingerprint(long fingerprint) {
+        return BY_FINGERPRINT.get(fingerprint);
+    }
+
+    static List<Schema> history(String fullName) {
+        return BY_NAME.getOrDefault(fullName, List.of());
+    }
+
+    private static Schema load(String file) {
+        try (InputStream in = WriterSchemas.class.getResourceAsStream("/avro/history/" + file)) {
+            if (in == null) {
+                throw new IllegalStateException("Schema " + file + " is missing from avro/history");
+            }
+            // Отдельный парсер на файл: в разных версиях одни и те же имена типов
+            return new Schema.Parser().parse(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read schema " + file, e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package ru.practicum.kafka.serializer.dictionary;
+
+import org.apache.avro.util.Utf8;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Словарь идентификаторов хабов и датчиков: каждому идентификатору выдаётся единственный экземпляр строки.
+ * Одинаковые идентификаторы из разных сообщений становятся одним объектом — меньше памяти,
+ * а сравнение ключей в HashMap сводится к проверке ссылки.
+ * <p>
+ * Словарь хранит два поколения по {@code maxEntries / 2} строк. Когда текущее поколение заполняется,
+ * предыдущее выбрасывается целиком, а найденные в нём строки переносятся в текущее. Так в словаре
+ * остаются используемые идентификаторы, а ушедшие хабы и датчики вытесняются без блокировок на чтении.
+ */
+public class IdDictionary {
+
+    private static final IdDictionary SHARED =
+            new IdDictionary(Integer.getInteger("telemetry.ids.max-entries", 1_000_000));
+
+    private final int generationSize;
+    private volatile Generation current = new Generation();
+    private volatile Generation previous = new Generation();
+
+    public IdDictionary(int maxEntries) {
+        if (maxEntries < 2) {
+            throw new IllegalArgumentException("maxEntries must be at least 2, got " + maxEntries);
+        }
+        this.generationSize = maxEntries / 2;
+    }
+
+    /**
+     * Словарь, общий для всех десериализаторов процесса.
+     */
+    public static IdDictionary shared() {
+        return SHARED;
+    }
+
+    public String intern(String name) {
+        if (name == null) {
+            return null;
+        }
+        String interned = current.byName.get(name);
+        return interned != null ? interned : register(name);
+    }
+
+    /**
+     * Возвращает строку по байтам UTF-8. Для идентификаторов текущего поколения не создаёт объектов,
+     * поэтому переданный буфер можно переиспользовать между вызовами.
+     */
+    public String intern(Utf8 bytes) {
+        String interned = current.byBytes.get(bytes);
+        if (interned != null) {
+            return interned;
+        }
+        interned = previous.byBytes.get(bytes);
+        return register(interned != null ? interned : bytes.toString());
+    }
+
+    public int size() {
+        return current.byName.size() + previous.byName.size();
+    }
+
+    private synchronized String register(String name) {
+        Generation generation = current;
+        String interned = generation.byName.get(name);
+        if (interned != null) {
+            return interned;
+        }
+        String promoted = previous.byName.get(name);
+        if (promoted != null) {
+            name = promoted;
+        }
+
+        if (generation.byName.size() >= generationSize) {
+            previous = generation;
+            generation = new Generation();
+            current = generation;
+        }
+        generation.byName.put(name, name);
+        generation.byBytes.put(new Utf8(name), name);
+        return name;
+    }
+
+    private static final class Generation {
+        private final ConcurrentHashMap<String, String> byName = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Utf8, String> byBytes = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,108 @@
+package ru.practicum.kafka.serializer.header;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Заголовки записей телеметрии. По ним consumer может узнать тип события, схему и время,
+ * не декодируя Avro-тело записи.
+ */
+public final class EventHeaders {
+
+    // Имя схемы payload'а, например ClimateSensorAvro
+    public static final String EVENT_TYPE = "event-type";
+    // 64-битный отпечаток (parsing fingerprint) схемы, которой записано тело
+    public static final String SCHEMA_FINGERPRINT = "schema-fingerprint";
+    // Время события в миллисекундах, 8 байт big-endian
+    public static final String EVENT_TIME = "event-time";
+    // Монотонная версия снапшота хаба, 8 байт big-endian: больше — значит, опубликован позже
+    public static final String SNAPSHOT_VERSION = "snapshot-version";
+
+    private static final Map<Schema, byte[]> FINGERPRINTS = new ConcurrentHashMap<>();
+
+    private EventHeaders() {
+    }
+
+    public static Headers of(SpecificRecord record, SpecificRecord payload, Instant timestamp) {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(EVENT_TYPE, payload.getSchema().getName().getBytes(StandardCharsets.UTF_8));
+        headers.add(SCHEMA_FINGERPRINT, fingerprintBytes(record.getSchema()));
+        headers.add(EVENT_TIME, ByteBuffer.allocate(Long.BYTES).putLong(timestamp.toEpochMilli()).array());
+        return headers;
+    }
+
+    /**
+     * Тип события из заголовков или null, если заголовка нет.
+     */
+    public static String eventType(Headers headers) {
+        Header header = headers == null ? null : headers.lastHeader(EVENT_TYPE);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Время события из заголовков или null, если заголовка нет.
+     */
+    public static Instant eventTime(Headers headers) {
+        Header header = headers == null ? null : headers.lastHeader(EVENT_TIME);
+        if (header == null || header.value().length != Long.BYTES) {
+            return null;
+        }
+        return Instant.ofEpochMilli(ByteBuffer.wrap(header.value()).getLong());
+    }
+
+    /**
+     * Заголовки с отпечатком схемы, которой записано тело, — для записей без типа события и времени.
+     */
+    public static Headers ofSchema(Schema schema) {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(SCHEMA_FINGERPRINT, fingerprintBytes(schema));
+        return headers;
+    }
+
+    /**
+     * Отпечаток схемы тела из заголовков или null, если заголовка нет.
+     */
+    public static Long schemaFingerprint(Headers headers) {
+        Header header = headers == null ? null : headers.lastHeader(SCHEMA_FINGERPRINT);
+        if (header == null || header.value().length != Long.BYTES) {
+            return null;
+        }
+        return ByteBuffer.wrap(header.value()).getLong();
+    }
+
+    public static Headers ofSnapshotVersion(long version) {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(SNAPSHOT_VERSION, ByteBuffer.allocate(Long.BYTES).putLong(version).array());
+        return headers;
+    }
+
+    /**
+     * Версия снапшота из заголовков или -1, если заголовка нет.
+     */
+    public static long snapshotVersion(Headers headers) {
+        Header header = headers == null ? null : headers.lastHeader(SNAPSHOT_VERSION);
+        if (header == null || header.value().length != Long.BYTES) {
+            return -1;
+        }
+        return ByteBuffer.wrap(header.value()).getLong();
+    }
+
+    public static long fingerprint(Schema schema) {
+        return ByteBuffer.wrap(fingerprintBytes(schema)).getLong();
+    }
+
+    private static byte[] fingerprintBytes(Schema schema) {
+        return FINGERPRINTS.computeIfAbsent(schema, s ->
+                ByteBuffer.allocate(Long.BYTES).putLong(SchemaNormalization.parsingFingerprint64(s)).array());
+    }
+}
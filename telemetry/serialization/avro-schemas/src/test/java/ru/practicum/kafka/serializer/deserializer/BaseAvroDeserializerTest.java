@@ -0,0 +1,169 @@
+package ru.practicum.kafka.serializer.deserializer;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import ru.practicum.kafka.serializer.header.EventHeaders;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionOperationAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ConditionTypeAvro;
+import ru.yandex.practicum.kafka.telemetry.event.HubEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioAddedEventAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioConditionAvro;
+import ru.yandex.practicum.kafka.telemetry.event.ScenarioDefinitionAvro;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Записи, сделанные схемой до появления window_seconds, должны читаться текущими классами.
+ */
+class BaseAvroDeserializerTest {
+
+    private static final String TOPIC = "telemetry.hubs.v1";
+
+    @Test
+    void readsHubEventWrittenWithPreviousSchemaByFingerprintHeader() throws IOException {
+        Schema oldSchema = historySchema("HubEventAvro-1.avsc");
+        byte[] data = write(oldSchema, oldScenarioAdded(oldSchema));
+
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(EventHeaders.SCHEMA_FINGERPRINT, EventHeaders.ofSchema(oldSchema)
+                .lastHeader(EventHeaders.SCHEMA_FINGERPRINT).value());
+
+        assertScenarioAdded(deserializer().deserialize(TOPIC, headers, data));
+    }
+
+    @Test
+    void readsHeaderlessHubEventWrittenWithPreviousSchema() throws IOException {
+        Schema oldSchema = historySchema("HubEventAvro-1.avsc");
+        byte[] data = write(oldSchema, oldScenarioAdded(oldSchema));
+
+        assertScenarioAdded(deserializer().deserialize(TOPIC, new RecordHeaders(), data));
+    }
+
+    @Test
+    void readsCurrentHubEventWithFingerprintHeader() throws IOException {
+        HubEventAvro event = HubEventAvro.newBuilder()
+                .setHubId("hub-1")
+                .setTimestamp(Instant.ofEpochMilli(1_700_000_000_000L))
+                .setPayload(ScenarioAddedEventAvro.newBuilder()
+                        .setName("hold")
+                        .setConditions(List.of(ScenarioConditionAvro.newBuilder()
+                                .setSensorId("sensor-1")
+                                .setType(ConditionTypeAvro.TEMPERATURE)
+                                .setOperation(ConditionOperationAvro.GREATER_THAN_FOR)
+                                .setValue(25)
+                                .setWindowSeconds(60)
+                                .build()))
+                        .setActions(List.of())
+                        .build())
+                .build();
+        byte[] data = write(HubEventAvro.getClassSchema(), event);
+
+        HubEventAvro read = deserializer().deserialize(TOPIC, EventHeaders.ofSchema(HubEventAvro.getClassSchema()), data);
+
+        ScenarioConditionAvro condition = ((ScenarioAddedEventAvro) read.getPayload()).getConditions().get(0);
+        assertEquals(ConditionOperationAvro.GREATER_THAN_FOR, condition.getOperation());
+        assertEquals(60, condition.getWindowSeconds());
+    }
+
+    @Test
+    void readsScenarioDefinitionWrittenWithPreviousSchema() throws IOException {
+        Schema oldSchema = historySchema("ScenarioDefinitionAvro-1.avsc");
+        Schema conditionSchema = oldSchema.getField("conditions").schema().getElementType();
+        GenericRecord condition = new GenericData.Record(conditionSchema);
+        condition.put("sensor_id", "sensor-1");
+        condition.put("type", new GenericData.EnumSymbol(conditionSchema.getField("type").schema(), "MOTION"));
+        condition.put("operation", new GenericData.EnumSymbol(conditionSchema.getField("operation").schema(), "EQUALS"));
+        condition.put("value", 1);
+        GenericRecord definition = new GenericData.Record(oldSchema);
+        definition.put("hub_id", "hub-1");
+        definition.put("name", "lights");
+        definition.put("conditions", List.of(condition));
+        definition.put("actions", List.of());
+
+        ScenarioDefinitionDeserializer deserializer = new ScenarioDefinitionDeserializer();
+        deserializer.configure(Map.of(), false);
+        ScenarioDefinitionAvro read = deserializer.deserialize("telemetry.scenarios.v1", new RecordHeaders(),
+                write(oldSchema, definition));
+
+        assertEquals("hub-1", read.getHubId());
+        assertEquals(1, read.getConditions().get(0).getValue());
+        assertNull(read.getConditions().get(0).getWindowSeconds());
+    }
+
+    private static void assertScenarioAdded(HubEventAvro event) {
+        assertEquals("hub-1", event.getHubId());
+        ScenarioAddedEventAvro payload = assertInstanceOf(ScenarioAddedEventAvro.class, event.getPayload());
+        assertEquals("heat", payload.getName());
+        ScenarioConditionAvro condition = payload.getConditions().get(0);
+        assertEquals("sensor-1", condition.getSensorId());
+        assertEquals(ConditionOperationAvro.GREATER_THAN, condition.getOperation());
+        assertEquals(25, condition.getValue());
+        assertNull(condition.getWindowSeconds());
+    }
+
+    private static GenericRecord oldScenarioAdded(Schema hubEventSchema) {
+        Schema payloadSchema = hubEventSchema.getField("payload").schema().getTypes().stream()
+                .filter(type -> type.getName().equals("ScenarioAddedEventAvro"))
+                .findFirst()
+                .orElseThrow();
+        Schema conditionSchema = payloadSchema.getField("conditions").schema().getElementType();
+
+        GenericRecord condition = new GenericData.Record(conditionSchema);
+        condition.put("sensor_id", "sensor-1");
+        condition.put("type", new GenericData.EnumSymbol(conditionSchema.getField("type").schema(), "TEMPERATURE"));
+        condition.put("operation", new GenericData.EnumSymbol(conditionSchema.getField("operation").schema(), "GREATER_THAN"));
+        condition.put("value", 25);
+
+        GenericRecord payload = new GenericData.Record(payloadSchema);
+        payload.put("name", "heat");
+        payload.put("conditions", List.of(condition));
+        payload.put("actions", List.of());
+
+        GenericRecord event = new GenericData.Record(hubEventSchema);
+        event.put("hub_id", "hub-1");
+        event.put("timestamp", 1_700_000_000_000L);
+        event.put("payload", payload);
+        return event;
+    }
+
+    private static HubEventDeserializer deserializer() {
+        HubEventDeserializer deserializer = new HubEventDeserializer();
+        deserializer.configure(Map.of(), false);
+        return deserializer;
+    }
+
+    private static Schema historySchema(String file) throws IOException {
+        try (InputStream in = BaseAvroDeserializerTest.class.getResourceAsStream("/avro/history/" + file)) {
+            return new Schema.Parser().parse(in);
+        }
+    }
+
+    private static byte[] write(Schema schema, Object datum) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+        DatumWriter<Object> writer = datum instanceof SpecificRecord
+                ? new SpecificDatumWriter<>(schema)
+                : new GenericDatumWriter<>(schema);
+        writer.write(datum, encoder);
+        encoder.flush();
+        return out.toByteArray();
+    }
+}